@@ -0,0 +1,32 @@
+#!/bin/sh
+# Downloads the JMH jars the benchmarks (pokePA-bench.srcs) need into lib/bench/ and checks their SHA-1s.
+# KernelParity (pokePA-parity.srcs) doesn't need any of them.
+#
+#   sh bench/fetch-deps.sh
+#   javac -cp "./lib/*:./lib/bench/*:." -d bench-classes @pokePA.srcs @pokePA-bench.srcs
+#   java -cp "./lib/*:./lib/bench/*:bench-classes" bench.pas.pokemon.BenchMain [regex] [results.json]
+set -e
+
+REPO=https://repo1.maven.org/maven2
+DEST="$(dirname "$0")/../lib/bench"
+mkdir -p "$DEST"
+
+fetch() {
+    path="$1"
+    sha1="$2"
+    jar="$DEST/$(basename "$path")"
+    if [ ! -f "$jar" ]; then
+        curl -sSfL -o "$jar.part" "$REPO/$path"
+        mv "$jar.part" "$jar"
+    fi
+    if [ "$(sha1sum "$jar" | cut -d ' ' -f 1)" != "$sha1" ]; then
+        echo "checksum mismatch for $jar" >&2
+        rm -f "$jar"
+        exit 1
+    fi
+}
+
+fetch org/openjdk/jmh/jmh-core/1.37/jmh-core-1.37.jar 896f27e49105b35ea1964319c83d12082e7a79ef
+fetch org/openjdk/jmh/jmh-generator-annprocess/1.37/jmh-generator-annprocess-1.37.jar da93888682df163144edf9b13d2b78e54166063a
+fetch net/sf/jopt-simple/jopt-simple/5.0.4/jopt-simple-5.0.4.jar 4fdac2fbe92dfad86aa6e9301736f6b4342a3f5c
+fetch org/apache/commons/commons-math3/3.6.1/commons-math3-3.6.1.jar e4ba98f1d4b3c80ec46392f25e094a6a2e58fcbf
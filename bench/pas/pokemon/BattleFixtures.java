@@ -0,0 +1,94 @@
+package bench.pas.pokemon;
+
+// SYSTEM IMPORTS
+import net.sourceforge.argparse4j.inf.Namespace;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+// JAVA PROJECT IMPORTS
+import edu.bu.pas.pokemon.Train;
+import edu.bu.pas.pokemon.core.Agent;
+import edu.bu.pas.pokemon.core.Battle;
+import edu.bu.pas.pokemon.core.Battle.BattleView;
+import edu.bu.pas.pokemon.generators.BattleCreator;
+import src.pas.pokemon.agents.PolicyAgent;
+import src.pas.pokemon.training.ParallelTrain;
+
+// Deterministic mid-battle fixtures for the benchmarks.
+// For every seed in SEEDS a 6v6 battle is created with BattleCreator.makeRandomTeams and played out by
+// two RandomAgents (all randomness comes from the seeded battle), recording every view from turn
+// MIN_TURN on. Consecutive views of the same battle form the (s, s') pairs. The same seeds give the
+// same fixtures on every commit, so results stay comparable.
+public class BattleFixtures {
+
+    public static final long[] SEEDS = {1L, 2L, 3L, 5L, 8L, 13L, 21L, 34L};
+    public static final int TEAM_SIZE = 6;
+    public static final int NUM_MOVES_PER_POKEMON = 4;
+    public static final int MIN_TURN = 3;
+    public static final String PLAYOUT_AGENT = "edu.bu.pas.pokemon.agents.RandomAgent";
+
+    private final List<BattleView> states;
+    private final List<BattleView> nextStates;
+
+    private BattleFixtures(List<BattleView> states, List<BattleView> nextStates) {
+        this.states = states;
+        this.nextStates = nextStates;
+    }
+
+    public static Namespace defaultArgs() {
+        return ParallelTrain.makeParser().parseArgsOrFail(new String[0]);
+    }
+
+    public static BattleFixtures create() throws IOException {
+        Namespace args = defaultArgs();
+        List<BattleView> states = new ArrayList<BattleView>();
+        List<BattleView> nextStates = new ArrayList<BattleView>();
+
+        for (long seed : SEEDS) {
+            Agent a = Train.getAgent(PLAYOUT_AGENT);
+            Agent b = Train.getAgent(PLAYOUT_AGENT);
+            a.initialize(args);
+            b.initialize(args);
+            a.registerTeamIdx(0);
+            b.registerTeamIdx(1);
+            Battle battle = BattleCreator.makeRandomTeams(TEAM_SIZE, TEAM_SIZE, NUM_MOVES_PER_POKEMON,
+                    new Random(seed), a, b);
+
+            BattleView state = battle.getView();
+            for (int turn = 0; !battle.isOver(); turn++) {
+                battle.nextTurn();
+                BattleView nextState = battle.getView();
+                if (turn >= MIN_TURN && !state.isOver()) {
+                    states.add(state);
+                    nextStates.add(nextState);
+                }
+                state = nextState;
+            }
+        }
+        return new BattleFixtures(states, nextStates);
+    }
+
+    // A PolicyAgent playing team 1, with the default (untrained) network.
+    public static PolicyAgent makePolicyAgent() {
+        PolicyAgent agent = new PolicyAgent();
+        agent.initialize(defaultArgs());
+        agent.registerTeamIdx(0);
+        agent.eval();
+        return agent;
+    }
+
+    public int size() {
+        return this.states.size();
+    }
+
+    public BattleView getState(int i) {
+        return this.states.get(i);
+    }
+
+    // The view right after getState(i) in the same battle.
+    public BattleView getNextState(int i) {
+        return this.nextStates.get(i);
+    }
+}
@@ -0,0 +1,34 @@
+package bench.pas.pokemon;
+
+// SYSTEM IMPORTS
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+// JAVA PROJECT IMPORTS
+
+// Runs every benchmark in this package with the GC profiler (gc.alloc.rate.norm = bytes allocated per
+// call) and writes the results as JSON so runs from different commits can be diffed.
+//
+// Needs jmh-core, jmh-generator-annprocess, jopt-simple and commons-math3, which bench/fetch-deps.sh puts
+// in lib/bench/:
+//   sh bench/fetch-deps.sh
+//   javac -cp "./lib/*:./lib/bench/*:." -d bench-classes @pokePA.srcs @pokePA-bench.srcs
+//   java -cp "./lib/*:./lib/bench/*:bench-classes" bench.pas.pokemon.BenchMain [regex] [results.json]
+public class BenchMain {
+
+    public static void main(String[] args) throws Exception {
+        String include = (args.length > 0) ? args[0] : "bench\\.pas\\.pokemon\\..*";
+        String resultFile = (args.length > 1) ? args[1] : "bench_output.json";
+
+        Options options = new OptionsBuilder()
+                .include(include)
+                .addProfiler(GCProfiler.class)
+                .resultFormat(ResultFormatType.JSON)
+                .result(resultFile)
+                .build();
+        new Runner(options).run();
+    }
+}
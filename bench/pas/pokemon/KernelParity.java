@@ -0,0 +1,126 @@
+package bench.pas.pokemon;
+
+// SYSTEM IMPORTS
+import java.util.List;
+import java.util.Random;
+
+// JAVA PROJECT IMPORTS
+import edu.bu.pas.pokemon.linalg.Matrix;
+import edu.bu.pas.pokemon.nn.Model;
+import edu.bu.pas.pokemon.nn.Parameter;
+import edu.bu.pas.pokemon.nn.layers.Dense;
+import edu.bu.pas.pokemon.nn.layers.ReLU;
+import edu.bu.pas.pokemon.nn.models.Sequential;
+import src.pas.pokemon.nn.DenseKernels;
+import src.pas.pokemon.nn.FastMLP;
+import src.pas.pokemon.nn.QuantizedMLP;
+import src.pas.pokemon.senses.CustomSensorArray;
+import src.pas.pokemon.utils.ModelUtils;
+
+// Parity check for the network backends: the framework Dense/ReLU/Dense stack is the reference, and the
+// double FastMLP, the scalar float32 kernels and DenseKernels.get() must match its outputs, parameter
+// gradients and dLoss/dX within tolerance (relative, |a - b| / (1 + |a|)). The int8 forward of QuantizedMLP
+// on DenseKernels.get() must match its scalar loop the same way. Inputs are half zeros like the one-hot
+// heavy sensor rows. Exits with status 1 on a mismatch.
+//
+// No JMH needed, it has its own source list:
+//   javac -cp "./lib/*:." -d parity-classes @pokePA.srcs @pokePA-parity.srcs
+//   java -cp "./lib/*:parity-classes" [--add-modules jdk.incubator.vector] bench.pas.pokemon.KernelParity
+public class KernelParity {
+
+    private static final double DOUBLE_TOL = 1e-9;
+    private static final double FLOAT_TOL = 1e-4;
+
+    public static void main(String[] args) throws Exception {
+        boolean ok = true;
+        for (int hidden : new int[] {64, 67, 256}) {
+            for (int n : new int[] {1, 10, 128}) {
+                ok &= check(hidden, n, null, DOUBLE_TOL);
+                ok &= check(hidden, n, DenseKernels.scalar(), FLOAT_TOL);
+                ok &= check(hidden, n, DenseKernels.get(), FLOAT_TOL);
+                ok &= checkQuantized(hidden, n);
+            }
+        }
+        System.out.println(ok ? "parity OK" : "parity FAILED");
+        if (!ok) {
+            System.exit(1);
+        }
+    }
+
+    private static boolean check(int hidden, int n, DenseKernels kernels, double tol) throws Exception {
+        int inSize = CustomSensorArray.NUM_FEATURES;
+        Random rng = new Random(31L * hidden + n);
+
+        Sequential reference = new Sequential();
+        reference.add(new Dense(inSize, hidden, rng));
+        reference.add(new ReLU());
+        reference.add(new Dense(hidden, 1, rng));
+        FastMLP fast = new FastMLP(rng, inSize, hidden, 1);
+        ModelUtils.copyParameters(reference, fast);
+        fast.setKernels(kernels);
+
+        Matrix X = Matrix.zeros(n, inSize);
+        for (int r = 0; r < n; r++) {
+            for (int c = 0; c < inSize; c++) {
+                X.set(r, c, rng.nextBoolean() ? 0.0 : rng.nextGaussian());
+            }
+        }
+        Matrix dLoss = Matrix.randn(n, 1, rng);
+
+        resetGradients(reference);
+        resetGradients(fast);
+        double outErr = maxError(reference.forward(X), fast.forward(X));
+        double dXErr = maxError(reference.backwards(X, dLoss), fast.backwards(X, dLoss));
+        double gradErr = 0.0;
+        List<Parameter> refParams = reference.getParameters();
+        List<Parameter> fastParams = fast.getParameters();
+        for (int p = 0; p < refParams.size(); p++) {
+            gradErr = Math.max(gradErr, maxError(refParams.get(p).getGradient(), fastParams.get(p).getGradient()));
+        }
+
+        boolean ok = outErr <= tol && dXErr <= tol && gradErr <= tol;
+        System.out.println(String.format("%-10s hidden=%-4d n=%-4d out=%.2e dX=%.2e grad=%.2e %s",
+                (kernels == null) ? "double" : kernels.getName(), hidden, n, outErr, dXErr, gradErr,
+                ok ? "ok" : "MISMATCH"));
+        return ok;
+    }
+
+    private static boolean checkQuantized(int hidden, int n) throws Exception {
+        int inSize = CustomSensorArray.NUM_FEATURES;
+        Random rng = new Random(37L * hidden + n);
+        FastMLP fast = new FastMLP(rng, inSize, hidden, 1);
+        QuantizedMLP reference = QuantizedMLP.quantize(fast);
+        reference.setKernels(DenseKernels.scalar());
+        QuantizedMLP quantized = QuantizedMLP.quantize(fast);
+        quantized.setKernels(DenseKernels.get());
+
+        Matrix X = Matrix.zeros(n, inSize);
+        for (int r = 0; r < n; r++) {
+            for (int c = 0; c < inSize; c++) {
+                X.set(r, c, rng.nextBoolean() ? 0.0 : rng.nextGaussian());
+            }
+        }
+        double outErr = maxError(reference.forward(X), quantized.forward(X));
+        boolean ok = outErr <= FLOAT_TOL;
+        System.out.println(String.format("%-10s hidden=%-4d n=%-4d out=%.2e %s",
+                "int8/" + quantized.getKernels().getName(), hidden, n, outErr, ok ? "ok" : "MISMATCH"));
+        return ok;
+    }
+
+    private static void resetGradients(Model model) {
+        for (Parameter p : model.getParameters()) {
+            p.reset();
+        }
+    }
+
+    private static double maxError(Matrix expected, Matrix actual) {
+        double err = 0.0;
+        for (int r = 0; r < expected.getShape().getNumRows(); r++) {
+            for (int c = 0; c < expected.getShape().getNumCols(); c++) {
+                double a = expected.get(r, c);
+                err = Math.max(err, Math.abs(a - actual.get(r, c)) / (1.0 + Math.abs(a)));
+            }
+        }
+        return err;
+    }
+}
@@ -0,0 +1,101 @@
+package bench.pas.pokemon;
+
+// SYSTEM IMPORTS
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+// JAVA PROJECT IMPORTS
+import edu.bu.pas.pokemon.linalg.Matrix;
+import edu.bu.pas.pokemon.nn.Model;
+import edu.bu.pas.pokemon.nn.Optimizer;
+import edu.bu.pas.pokemon.nn.optimizers.AdamOptimizer;
+import src.pas.pokemon.agents.PolicyAgent;
+import src.pas.pokemon.nn.FastMLP;
+import src.pas.pokemon.nn.QuantizedMLP;
+import src.pas.pokemon.senses.CustomSensorArray;
+
+// Forward / backward of the agent's 65 -> 64 -> 1 network. Batch 1 is a single Q lookup, 10 an argmax
+// batch and 128 a training mini-batch. Inputs are seeded gaussians. "fast" is the FastMLP initModel builds by
+// default, "fast32" the same on float32 DenseKernels, "sequential" the framework Dense/ReLU/Dense stack and
+// "quantized" the int8 QuantizedMLP of the fast network (DenseKernels.forwardQuantized). hidden = 256 shows
+// what a wider network costs. quantized is inference-only, so JMH reports its forwardBackward and trainStep
+// runs as failed; pass a regex like "ModelBench.forward$" to BenchMain to skip them.
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ModelBench {
+
+    @Param({"1", "10", "128"})
+    public int batchSize;
+
+    @Param({"fast", "fast32", "sequential", "quantized"})
+    public String impl;
+
+    @Param({"64", "256"})
+    public int hidden;
+
+    private Model model;
+    private Optimizer optim;
+    private Matrix X;
+    private Matrix Y;
+    private Matrix dLoss;
+
+    @Setup
+    public void setup() throws Exception {
+        PolicyAgent.setUseSequentialModel(this.impl.equals("sequential"));
+        PolicyAgent.setUseFloat32Kernels(this.impl.equals("fast32"));
+        PolicyAgent.setHiddenSize(this.hidden);
+        PolicyAgent agent = BattleFixtures.makePolicyAgent();
+        PolicyAgent.setUseSequentialModel(false);
+        PolicyAgent.setUseFloat32Kernels(false);
+        PolicyAgent.setHiddenSize(64);
+        this.model = this.impl.equals("quantized") ? QuantizedMLP.quantize(agent.getModel()) : agent.getModel();
+        if (!(this.model instanceof FastMLP) && !(this.model instanceof QuantizedMLP)) {
+            this.optim = new AdamOptimizer(this.model.getParameters(), 1e-3, 0.9, 0.999);
+        }
+        Random rng = new Random(12345L);
+        this.X = Matrix.randn(this.batchSize, CustomSensorArray.NUM_FEATURES, rng);
+        this.Y = Matrix.randn(this.batchSize, 1, rng);
+        this.dLoss = Matrix.randn(this.batchSize, 1, rng);
+    }
+
+    @Benchmark
+    public Matrix forward() throws Exception {
+        return this.model.forward(this.X);
+    }
+
+    // backwards needs the activations of a forward on the same input, so both are timed together.
+    @Benchmark
+    public Matrix forwardBackward() throws Exception {
+        this.model.forward(this.X);
+        return this.model.backwards(this.X, this.dLoss);
+    }
+
+    // One full training step as ParallelTrain.update takes it: fused for FastMLP, forward / backwards /
+    // AdamOptimizer for the framework layers (dLoss stands in for the MSE gradient).
+    @Benchmark
+    public Object trainStep() throws Exception {
+        if (this.optim == null) {
+            return ((FastMLP) this.model).trainStep(this.X, this.Y);
+        }
+        this.optim.reset();
+        this.model.forward(this.X);
+        this.model.backwards(this.X, this.dLoss);
+        this.optim.step();
+        return this.model;
+    }
+}
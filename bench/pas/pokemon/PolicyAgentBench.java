@@ -0,0 +1,56 @@
+package bench.pas.pokemon;
+
+// SYSTEM IMPORTS
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+// JAVA PROJECT IMPORTS
+import edu.bu.pas.pokemon.core.Move.MoveView;
+import src.pas.pokemon.agents.PolicyAgent;
+
+// PolicyAgent decision paths on the fixture states: argmax over the full legal action set and
+// chooseNextPokemon (which runs calcType for every bench pokemon).
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PolicyAgentBench {
+
+    private PolicyAgent agent;
+    private BattleFixtures fixtures;
+    private int pos;
+
+    @Setup
+    public void setup() throws Exception {
+        this.fixtures = BattleFixtures.create();
+        this.agent = BattleFixtures.makePolicyAgent();
+        this.pos = 0;
+    }
+
+    private int next() {
+        int i = this.pos;
+        this.pos = (i + 1 == this.fixtures.size()) ? 0 : i + 1;
+        return i;
+    }
+
+    @Benchmark
+    public MoveView argmax() {
+        return this.agent.argmax(this.fixtures.getState(this.next()));
+    }
+
+    @Benchmark
+    public Integer chooseNextPokemon() {
+        return this.agent.chooseNextPokemon(this.fixtures.getState(this.next()));
+    }
+}
@@ -0,0 +1,87 @@
+package bench.pas.pokemon;
+
+// SYSTEM IMPORTS
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+// JAVA PROJECT IMPORTS
+import edu.bu.pas.pokemon.core.Move.MoveView;
+import edu.bu.pas.pokemon.training.data.ReplacementType;
+import edu.bu.pas.pokemon.training.data.ReplayBuffer;
+import src.pas.pokemon.agents.PolicyAgent;
+import src.pas.pokemon.rewards.CustomRewardFunction;
+
+// CustomRewardFunction.getStateActionStateReward on consecutive fixture views (s, s'), and the batch
+// getStateActionStateRewards against the per-transition loop over a buffer holding every fixture transition
+// (setup fails if the two disagree on any of them).
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class RewardBench {
+
+    private CustomRewardFunction rewardFunction;
+    private BattleFixtures fixtures;
+    private MoveView[] actions;
+    private int pos;
+    private ReplayBuffer buffer;
+
+    @Setup
+    public void setup() throws Exception {
+        this.fixtures = BattleFixtures.create();
+        this.rewardFunction = new CustomRewardFunction();
+        PolicyAgent agent = BattleFixtures.makePolicyAgent();
+        this.actions = new MoveView[this.fixtures.size()];
+        for (int i = 0; i < this.fixtures.size(); i++) {
+            this.actions[i] = agent.getPotentialMoves(this.fixtures.getState(i)).get(0);
+        }
+        this.pos = 0;
+
+        this.buffer = new ReplayBuffer(ReplacementType.RANDOM, this.fixtures.size(), new Random(12345L));
+        for (int i = 0; i < this.fixtures.size(); i++) {
+            this.buffer.addSample(this.fixtures.getState(i), this.actions[i], this.fixtures.getNextState(i));
+        }
+        double[] batch = this.rewardFunction.getStateActionStateRewards(this.buffer);
+        double[] single = this.perTransitionRewards();
+        for (int i = 0; i < batch.length; i++) {
+            if (Double.doubleToLongBits(batch[i]) != Double.doubleToLongBits(single[i])) {
+                throw new IllegalStateException("batch reward " + batch[i] + " != " + single[i] + " at " + i);
+            }
+        }
+    }
+
+    @Benchmark
+    public double getStateActionStateReward() {
+        int i = this.pos;
+        this.pos = (i + 1 == this.fixtures.size()) ? 0 : i + 1;
+        return this.rewardFunction.getStateActionStateReward(this.fixtures.getState(i), this.actions[i],
+                this.fixtures.getNextState(i));
+    }
+
+    @Benchmark
+    public double[] batchRewards() {
+        return this.rewardFunction.getStateActionStateRewards(this.buffer);
+    }
+
+    @Benchmark
+    public double[] perTransitionRewards() {
+        double[] rewards = new double[this.buffer.size()];
+        for (int i = 0; i < rewards.length; i++) {
+            rewards[i] = this.rewardFunction.getStateActionStateReward(this.buffer.getState(i),
+                    this.buffer.getAction(i), this.buffer.getNextState(i));
+        }
+        return rewards;
+    }
+}
@@ -0,0 +1,73 @@
+package bench.pas.pokemon;
+
+// SYSTEM IMPORTS
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+// JAVA PROJECT IMPORTS
+import edu.bu.pas.pokemon.core.Battle.BattleView;
+import edu.bu.pas.pokemon.core.Move.MoveView;
+import edu.bu.pas.pokemon.linalg.Matrix;
+import src.pas.pokemon.agents.PolicyAgent;
+import src.pas.pokemon.senses.CustomSensorArray;
+
+// CustomSensorArray.getSensorValues over every (state, legal action) pair of the fixtures.
+// nextPair walks the pairs in order, so consecutive calls share a state the way argmax does and the
+// per-state cache behaves like it does in a real game.
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SensorArrayBench {
+
+    private CustomSensorArray sensorArray;
+    private List<BattleView> states;
+    private List<MoveView> actions;
+    private int pos;
+
+    @Setup
+    public void setup() throws Exception {
+        BattleFixtures fixtures = BattleFixtures.create();
+        PolicyAgent agent = BattleFixtures.makePolicyAgent();
+        this.sensorArray = new CustomSensorArray();
+        this.states = new ArrayList<BattleView>();
+        this.actions = new ArrayList<MoveView>();
+        for (int i = 0; i < fixtures.size(); i++) {
+            BattleView state = fixtures.getState(i);
+            for (MoveView action : agent.getPotentialMoves(state)) {
+                this.states.add(state);
+                this.actions.add(action);
+            }
+        }
+        this.pos = 0;
+    }
+
+    @Benchmark
+    public Matrix getSensorValues() {
+        int i = this.pos;
+        this.pos = (i + 1 == this.states.size()) ? 0 : i + 1;
+        return this.sensorArray.getSensorValues(this.states.get(i), this.actions.get(i));
+    }
+
+    // Same pairs but with the state cache dropped every call (cost of a state seen for the first time).
+    @Benchmark
+    public Matrix getSensorValuesColdState() {
+        int i = this.pos;
+        this.pos = (i + 1 == this.states.size()) ? 0 : i + 1;
+        this.sensorArray.invalidateCache();
+        return this.sensorArray.getSensorValues(this.states.get(i), this.actions.get(i));
+    }
+}
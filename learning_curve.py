@@ -1,4 +1,5 @@
 import argparse as ap
+import json
 import matplotlib.pyplot as plt
 import numpy as np
 import os
@@ -29,6 +30,82 @@ def load(path: str) -> np.ndarray:
     return np.array(data)
 
 
+METRICS_PHASES = ["play", "dataset", "update", "eval", "checkpoint"]
+
+def load_metrics(path: str) -> List[dict]:
+    # one JSON object per line, as written by ParallelTrain (CycleMetrics)
+    rows: List[dict] = list()
+    with open(path, "r") as f:
+        for line in f:
+            line = line.strip()
+            if len(line) > 0:
+                try:
+                    rows.append(json.loads(line))
+                except json.JSONDecodeError:
+                    pass  # partially written last line
+    return rows
+
+
+def plot_metrics(rows: List[dict]) -> None:
+    cycles = np.array([r["cycle"] for r in rows])
+
+    fig, axes = plt.subplots(2, 2, figsize=(12, 8))
+
+    # per-phase wall time, stacked
+    ax = axes[0][0]
+    bottom = np.zeros(len(rows))
+    for phase in METRICS_PHASES:
+        secs = np.array([r["phase_ms"].get(phase, 0.0) / 1000.0 for r in rows])
+        ax.bar(cycles, secs, bottom=bottom, label=phase)
+        bottom += secs
+    ax.set_xlabel("cycle")
+    ax.set_ylabel("wall time (s)")
+    ax.set_title("Phase time per cycle")
+    ax.legend(loc="best")
+
+    # self-play throughput
+    ax = axes[0][1]
+    ax.plot(cycles, [r["games_per_sec"] for r in rows], label="games/sec")
+    ax.set_xlabel("cycle")
+    ax.set_ylabel("games/sec")
+    ax2 = ax.twinx()
+    ax2.plot(cycles, [r["transitions_per_sec"] for r in rows], color="tab:orange", label="transitions/sec")
+    ax2.set_ylabel("transitions/sec")
+    ax.set_title("Self-play throughput")
+    lines1, labels1 = ax.get_legend_handles_labels()
+    lines2, labels2 = ax2.get_legend_handles_labels()
+    ax.legend(lines1 + lines2, labels1 + labels2, loc="best")
+
+    # getMove latency
+    ax = axes[1][0]
+    ax.plot(cycles, [r["decision_mean_us"] for r in rows], label="mean")
+    ax.plot(cycles, [r["decision_p99_us"] for r in rows], label="p99")
+    ax.set_xlabel("cycle")
+    ax.set_ylabel("decision latency (us)")
+    ax.set_title("getMove latency")
+    ax.legend(loc="best")
+
+    # memory
+    ax = axes[1][1]
+    ax.plot(cycles, [r["heap_used_mb"] for r in rows], label="heap used (MB)")
+    ax.set_xlabel("cycle")
+    ax.set_ylabel("MB")
+    ax2 = ax.twinx()
+    ax2.plot(cycles, [r["replay_size"] / max(1, r["replay_capacity"]) for r in rows], color="tab:green",
+             label="replay occupancy")
+    ax2.set_ylabel("replay occupancy")
+    ax2.set_ylim(0.0, 1.05)
+    ax.set_title("Memory")
+    lines1, labels1 = ax.get_legend_handles_labels()
+    lines2, labels2 = ax2.get_legend_handles_labels()
+    ax.legend(lines1 + lines2, labels1 + labels2, loc="best")
+
+    for row in axes:
+        for ax in row:
+            ax.grid(True, linestyle='--', alpha=0.4)
+    fig.tight_layout()
+
+
 def main() -> None:
     parser = ap.ArgumentParser()
     # Default to training.log so you can run without args
@@ -36,6 +113,9 @@ def main() -> None:
                         help="path to logfile containing eval outputs (default: training.log)")
     parser.add_argument("--eval-games", "-e", type=int, default=None,
                         help="number of evaluation games per cycle (if provided, plots win rate = avg(num_wins)/eval_games).")
+    parser.add_argument("--metrics", "-m", type=str, default=None,
+                        help="metrics JSONL file written by ParallelTrain (e.g. params/metrics.jsonl); plots phase "
+                             "times, throughput, decision latency and memory in a second window")
     args = parser.parse_args()
 
     if not os.path.exists(args.logfile):
@@ -80,6 +160,15 @@ def main() -> None:
     ax1.grid(True, linestyle='--', alpha=0.4)
     plt.title("Learning Curve: Utility and Wins")
     fig.tight_layout()
+
+    if args.metrics is not None:
+        if not os.path.exists(args.metrics):
+            raise Exception("ERROR: metrics file [%s] does not exist!" % args.metrics)
+        rows: List[dict] = load_metrics(args.metrics)
+        if len(rows) == 0:
+            raise Exception("ERROR: no metrics lines found in [%s]" % args.metrics)
+        plot_metrics(rows)
+
     plt.show()
 
 
@@ -0,0 +1,380 @@
+package src.pas.pokemon.agents;
+
+// SYSTEM IMPORTS
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+// JAVA PROJECT IMPORTS
+import edu.bu.pas.pokemon.agents.rewards.RewardFunction;
+import edu.bu.pas.pokemon.core.Battle.BattleView;
+import edu.bu.pas.pokemon.core.Move.MoveView;
+import edu.bu.pas.pokemon.core.Pokemon.PokemonView;
+import edu.bu.pas.pokemon.core.SwitchMove.SwitchMoveView;
+import edu.bu.pas.pokemon.core.Team.TeamView;
+import edu.bu.pas.pokemon.core.enums.Flag;
+import edu.bu.pas.pokemon.core.enums.NonVolatileStatus;
+import edu.bu.pas.pokemon.core.enums.Stat;
+import edu.bu.pas.pokemon.linalg.Matrix;
+import edu.bu.pas.pokemon.nn.Model;
+import edu.bu.pas.pokemon.training.data.ReplayBuffer;
+import edu.bu.pas.pokemon.utils.Pair;
+import src.pas.pokemon.nn.TargetNetwork;
+import src.pas.pokemon.senses.CustomSensorArray;
+import src.pas.pokemon.utils.BattleHasher;
+import src.pas.pokemon.utils.ModelUtils;
+import src.pas.pokemon.utils.RewardUtils;
+import src.pas.pokemon.utils.TranspositionTable;
+
+// Expected-Bellman TD targets: instead of r + gamma * V(s') for the one s' that was sampled, re-play the turn
+// (s, a) through the transition model and average r(s, a, s~) + gamma * V(s~) over every outcome s~.
+//
+// A turn is expanded as
+//   1. move order: higher move priority first, then higher speed; speed ties go both ways with 1/2 each
+//   2. for each mover: applyPreMoveConditions (sleep / freeze), then the gates the framework leaves to
+//      us: still asleep or frozen -> no move, paralysis -> 25% full paralysis, confusion -> 50% no move
+//      (the self-hit damage isn't modelled), then the move's getPotentialEffects
+//   3. applyPostTurnConditions; fainted replacements are averaged uniformly
+// The opponent's action is the move it actually used that turn: its last move in s', but only if s -> s'
+// shows it acting (the PP of that move on the same active pokemon went down, or a voluntary switch to that
+// slot). The last move in s' is otherwise left over from an earlier turn (asleep, frozen, fully paralysed,
+// fainted, forced replacement, PP-less moves like Struggle), and then only our move is expanded.
+// V is max_a Q_target(s~, a), 0 for finished games.
+//
+// Branches whose probability drops below minProb are cut and the rest renormalized. If a sample can't
+// be expanded (framework error, nothing left after pruning) it keeps the sampled target.
+//
+// Samples are split over a fork-join pool in chunks of CHUNK_SIZE. Every pool thread has its own copy of
+// the target network and its own sensor array; V(s~) is shared through a transposition table that is
+// cleared whenever the target network is refreshed.
+public class ExpectedBellmanTargets {
+
+    private static final int CHUNK_SIZE = 16;
+    private static final double PARALYSIS_SKIP = 0.25;
+    private static final double CONFUSION_SKIP = 0.5;
+
+    private final PolicyAgent agent;
+    private final ForkJoinPool pool;
+    private final double minProb;
+
+    private final TranspositionTable<Double> valueTable;
+    private volatile int tableVersion;
+    private volatile TargetNetwork target;
+    private final ThreadLocal<Evaluator> evaluators;
+
+    public ExpectedBellmanTargets(PolicyAgent agent, double minProb, int parallelism, int tableCapacity) {
+        this.agent = agent;
+        this.pool = new ForkJoinPool(Math.max(1, parallelism));
+        this.minProb = minProb;
+        this.valueTable = new TranspositionTable<Double>(tableCapacity);
+        this.tableVersion = -1;
+        this.evaluators = ThreadLocal.withInitial(() -> new Evaluator());
+    }
+
+    public TranspositionTable<Double> getValueTable() {
+        return this.valueTable;
+    }
+
+    public void shutdown() {
+        this.pool.shutdownNow();
+    }
+
+    // N x 1 targets for every sample of buffer, using target for V (the caller ticks it).
+    public Matrix compute(final ReplayBuffer buffer, final double discountFactor, final RewardFunction rewardFunction,
+            TargetNetwork target) {
+        if (this.tableVersion != target.getVersion()) {
+            this.valueTable.clear();
+            this.tableVersion = target.getVersion();
+        }
+        this.target = target;
+
+        final int n = buffer.size();
+        final double[] targets = new double[n];
+        this.pool.invoke(new Chunk(buffer, discountFactor, rewardFunction, targets, 0, n));
+
+        Matrix YGt = Matrix.zeros(n, 1);
+        for (int i = 0; i < n; i++) {
+            YGt.set(i, 0, targets[i]);
+        }
+        return YGt;
+    }
+
+    private class Chunk extends RecursiveAction {
+        private final ReplayBuffer buffer;
+        private final double gamma;
+        private final RewardFunction rewardFunction;
+        private final double[] targets;
+        private final int from;
+        private final int to;
+
+        private Chunk(ReplayBuffer buffer, double gamma, RewardFunction rewardFunction, double[] targets, int from,
+                int to) {
+            this.buffer = buffer;
+            this.gamma = gamma;
+            this.rewardFunction = rewardFunction;
+            this.targets = targets;
+            this.from = from;
+            this.to = to;
+        }
+
+        protected void compute() {
+            if (this.to - this.from > CHUNK_SIZE) {
+                int mid = (this.from + this.to) >>> 1;
+                invokeAll(new Chunk(this.buffer, this.gamma, this.rewardFunction, this.targets, this.from, mid),
+                        new Chunk(this.buffer, this.gamma, this.rewardFunction, this.targets, mid, this.to));
+                return;
+            }
+            Evaluator evaluator = evaluators.get();
+            for (int i = this.from; i < this.to; i++) {
+                this.targets[i] = evaluator.target(this.buffer.getState(i), this.buffer.getAction(i),
+                        this.buffer.getNextState(i), this.gamma, this.rewardFunction);
+            }
+        }
+    }
+
+    // Per-thread target network copy + encoder.
+    private class Evaluator {
+        private final Model model;
+        private final CustomSensorArray encoder;
+        private Matrix[] batches;
+        private int seenVersion;
+
+        private Evaluator() {
+            this.model = agent.initModel();
+            this.encoder = new CustomSensorArray();
+            this.batches = new Matrix[11];
+            this.seenVersion = -1;
+        }
+
+        private double target(BattleView state, MoveView action, BattleView sampledNext, double gamma,
+                RewardFunction rewardFunction) {
+            List<Pair<Double, BattleView>> outcomes = null;
+            try {
+                outcomes = expandTurn(state, action, sampledNext);
+            } catch (RuntimeException e) {
+                outcomes = null;
+            }
+            if (outcomes == null || outcomes.isEmpty()) {
+                return RewardUtils.getReward(rewardFunction, state, action, sampledNext)
+                        + gamma * this.value(sampledNext);
+            }
+
+            double mass = 0.0;
+            double expected = 0.0;
+            for (Pair<Double, BattleView> o : outcomes) {
+                double y = RewardUtils.getReward(rewardFunction, state, action, o.getSecond())
+                        + gamma * this.value(o.getSecond());
+                expected += o.getFirst() * y;
+                mass += o.getFirst();
+            }
+            return expected / mass;
+        }
+
+        // max_a Q_target(s, a), 0 for finished games.
+        private double value(BattleView state) {
+            if (state == null || state.isOver()) {
+                return 0.0;
+            }
+            long key = BattleHasher.combine(BattleHasher.hash(state), agent.getMyTeamIdx());
+            Double cached = valueTable.get(key);
+            if (cached != null) {
+                return cached;
+            }
+
+            List<MoveView> actions = agent.getPotentialMoves(state);
+            if (actions == null || actions.isEmpty()) {
+                return 0.0;
+            }
+            TargetNetwork t = target;
+            if (this.seenVersion != t.getVersion()) {
+                ModelUtils.copyParameters(t.getModel(), this.model);
+                this.seenVersion = t.getVersion();
+            }
+            if (actions.size() >= this.batches.length) {
+                this.batches = Arrays.copyOf(this.batches, actions.size() + 1);
+            }
+            if (this.batches[actions.size()] == null) {
+                this.batches[actions.size()] = Matrix.zeros(actions.size(), CustomSensorArray.NUM_FEATURES);
+            }
+            Matrix X = this.batches[actions.size()];
+            for (int row = 0; row < actions.size(); row++) {
+                this.encoder.encode(state, actions.get(row), X, row);
+            }
+            Matrix qValues;
+            try {
+                qValues = this.model.forward(X);
+            } catch (Exception e) {
+                throw new RuntimeException("ExpectedBellmanTargets: forward failed", e);
+            }
+            double best = qValues.get(0, 0);
+            for (int row = 1; row < actions.size(); row++) {
+                best = Math.max(best, qValues.get(row, 0));
+            }
+            valueTable.put(key, best);
+            return best;
+        }
+    }
+
+    // Distribution over the states at the end of the turn that started in state with us playing action.
+    private List<Pair<Double, BattleView>> expandTurn(BattleView state, MoveView action, BattleView sampledNext) {
+        int me = this.agent.getMyTeamIdx();
+        int opp = 1 - me;
+        MoveView oppAction = this.opponentAction(state, sampledNext, opp);
+
+        List<Pair<Double, BattleView>> frontier = new ArrayList<Pair<Double, BattleView>>();
+        frontier.add(new Pair<Double, BattleView>(1.0, state));
+        if (oppAction == null) {
+            frontier = this.applyMove(frontier, me, action);
+        } else {
+            double meFirst = this.probMovesFirst(state, me, action, oppAction);
+            List<Pair<Double, BattleView>> result = new ArrayList<Pair<Double, BattleView>>();
+            if (meFirst > 0.0) {
+                result.addAll(this.scale(this.applyMove(this.applyMove(frontier, me, action), opp, oppAction),
+                        meFirst));
+            }
+            if (meFirst < 1.0) {
+                result.addAll(this.scale(this.applyMove(this.applyMove(frontier, opp, oppAction), me, action),
+                        1.0 - meFirst));
+            }
+            frontier = this.prune(result);
+        }
+
+        List<Pair<Double, BattleView>> ends = new ArrayList<Pair<Double, BattleView>>();
+        for (Pair<Double, BattleView> o : frontier) {
+            if (o.getSecond().isOver()) {
+                ends.add(o);
+                continue;
+            }
+            List<BattleView> after = o.getSecond().applyPostTurnConditions();
+            if (after == null || after.isEmpty()) {
+                ends.add(o);
+                continue;
+            }
+            for (BattleView v : after) {
+                ends.add(new Pair<Double, BattleView>(o.getFirst() / after.size(), v));
+            }
+        }
+        return this.prune(ends);
+    }
+
+    // The move team opp played in the turn state -> sampledNext, null if we can't tell that it played one.
+    private MoveView opponentAction(BattleView state, BattleView sampledNext, int opp) {
+        if (sampledNext == null) {
+            return null;
+        }
+        TeamView before = state.getTeamView(opp);
+        TeamView after = sampledNext.getTeamView(opp);
+        MoveView last = after.getLastMoveView();
+        if (last == null) {
+            return null;
+        }
+        int activeBefore = before.getActivePokemonIdx();
+        if (last instanceof SwitchMoveView) {
+            // voluntary: the pokemon it left is still standing (a forced replacement follows a faint)
+            int newIdx = ((SwitchMoveView) last).getNewActiveIdx();
+            PokemonView left = after.getPokemonView(activeBefore);
+            return (newIdx != activeBefore && after.getActivePokemonIdx() == newIdx && left != null
+                    && !left.hasFainted()) ? last : null;
+        }
+        if (after.getActivePokemonIdx() != activeBefore || last.getName() == null) {
+            return null;
+        }
+        Integer ppBefore = this.findPP(before.getActivePokemonView(), last.getName());
+        Integer ppAfter = this.findPP(after.getActivePokemonView(), last.getName());
+        return (ppBefore != null && ppAfter != null && ppAfter < ppBefore) ? last : null;
+    }
+
+    // PP left of pkmn's move called name, null if it has no such move or the move has no PP.
+    private Integer findPP(PokemonView pkmn, String name) {
+        if (pkmn == null || pkmn.getMoveViews() == null) {
+            return null;
+        }
+        for (MoveView m : pkmn.getMoveViews()) {
+            if (m != null && name.equals(m.getName())) {
+                return m.getPP();
+            }
+        }
+        return null;
+    }
+
+    // Probability that team me acts before team opp this turn.
+    private double probMovesFirst(BattleView state, int me, MoveView myMove, MoveView oppMove) {
+        if (myMove.getPriority() != oppMove.getPriority()) {
+            return (myMove.getPriority() > oppMove.getPriority()) ? 1.0 : 0.0;
+        }
+        PokemonView mine = state.getTeamView(me).getActivePokemonView();
+        PokemonView theirs = state.getTeamView(1 - me).getActivePokemonView();
+        if (mine == null || theirs == null) {
+            return 0.5;
+        }
+        int mySpeed = mine.getCurrentStat(Stat.SPD);
+        int oppSpeed = theirs.getCurrentStat(Stat.SPD);
+        return (mySpeed == oppSpeed) ? 0.5 : ((mySpeed > oppSpeed) ? 1.0 : 0.0);
+    }
+
+    // Team caster tries to play move from every state of frontier.
+    private List<Pair<Double, BattleView>> applyMove(List<Pair<Double, BattleView>> frontier, int caster,
+            MoveView move) {
+        List<Pair<Double, BattleView>> next = new ArrayList<Pair<Double, BattleView>>();
+        for (Pair<Double, BattleView> o : frontier) {
+            BattleView view = o.getSecond();
+            PokemonView active = view.getTeamView(caster).getActivePokemonView();
+            if (view.isOver() || active == null || active.hasFainted()) {
+                next.add(o); // fainted pokemon don't get to move
+                continue;
+            }
+            for (Pair<Double, BattleView> pre : view.applyPreMoveConditions(caster)) {
+                double p = o.getFirst() * pre.getFirst();
+                if (p < this.minProb) {
+                    continue;
+                }
+                BattleView gated = pre.getSecond();
+                PokemonView pkmn = gated.getTeamView(caster).getActivePokemonView();
+                double canMove = 1.0;
+                if (pkmn != null) {
+                    NonVolatileStatus status = pkmn.getNonVolatileStatus();
+                    if (status == NonVolatileStatus.SLEEP || status == NonVolatileStatus.FREEZE) {
+                        canMove = 0.0;
+                    } else if (status == NonVolatileStatus.PARALYSIS) {
+                        canMove *= 1.0 - PARALYSIS_SKIP;
+                    }
+                    if (pkmn.getFlag(Flag.CONFUSED)) {
+                        canMove *= 1.0 - CONFUSION_SKIP;
+                    }
+                }
+                if (canMove < 1.0 && p * (1.0 - canMove) >= this.minProb) {
+                    next.add(new Pair<Double, BattleView>(p * (1.0 - canMove), gated));
+                }
+                if (canMove > 0.0) {
+                    for (Pair<Double, BattleView> effect : move.getPotentialEffects(gated, caster, 1 - caster)) {
+                        double q = p * canMove * effect.getFirst();
+                        if (q >= this.minProb) {
+                            next.add(new Pair<Double, BattleView>(q, effect.getSecond()));
+                        }
+                    }
+                }
+            }
+        }
+        return next;
+    }
+
+    private List<Pair<Double, BattleView>> scale(List<Pair<Double, BattleView>> outcomes, double factor) {
+        List<Pair<Double, BattleView>> scaled = new ArrayList<Pair<Double, BattleView>>(outcomes.size());
+        for (Pair<Double, BattleView> o : outcomes) {
+            scaled.add(new Pair<Double, BattleView>(o.getFirst() * factor, o.getSecond()));
+        }
+        return scaled;
+    }
+
+    private List<Pair<Double, BattleView>> prune(List<Pair<Double, BattleView>> outcomes) {
+        List<Pair<Double, BattleView>> kept = new ArrayList<Pair<Double, BattleView>>(outcomes.size());
+        for (Pair<Double, BattleView> o : outcomes) {
+            if (o.getFirst() >= this.minProb) {
+                kept.add(o);
+            }
+        }
+        return kept;
+    }
+}
@@ -0,0 +1,403 @@
+package src.pas.pokemon.agents;
+
+// SYSTEM IMPORTS
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.atomic.AtomicLong;
+
+// JAVA PROJECT IMPORTS
+import edu.bu.pas.pokemon.core.Battle.BattleView;
+import edu.bu.pas.pokemon.core.Move.MoveView;
+import edu.bu.pas.pokemon.core.Pokemon.PokemonView;
+import edu.bu.pas.pokemon.linalg.Matrix;
+import edu.bu.pas.pokemon.nn.Model;
+import edu.bu.pas.pokemon.nn.Parameter;
+import edu.bu.pas.pokemon.utils.Pair;
+import src.pas.pokemon.nn.Checkpoint;
+import src.pas.pokemon.senses.CustomSensorArray;
+import src.pas.pokemon.utils.BattleHasher;
+import src.pas.pokemon.utils.ModelUtils;
+import src.pas.pokemon.utils.TranspositionTable;
+
+// Expectimax-style lookahead over the transition model exposed by MoveView.getPotentialEffects.
+//
+// A candidate move is scored by the probability weighted value of its outcomes. At depth 1 the outcome
+// states are scored with V(s) = max_a Q(s, a) from the agent's network. Deeper plies alternate: after our
+// move the opponent replies with whichever of its available moves is worst for us, then we move again,
+// and so on. Outcomes below minProb are pruned (the kept ones are renormalized; the most likely one is
+// always kept). Terminal states are worth +-WIN_VALUE, the terminal reward of CustomRewardFunction.
+//
+// search() runs iterative deepening under a hard time budget: depth 1, 2, ... up to maxDepth, keeping
+// the answer of the deepest depth that finished before the deadline. Subtrees are expanded as fork-join
+// tasks. Every pool thread has its own copy of the network and its own sensor array (neither is safe to
+// share). The agent's weights are copied once per search on the calling thread, and the pool threads refresh
+// their networks from that copy; they never touch the agent's model, whose getParameters() isn't thread safe.
+//
+// Positions repeat a lot (stall turns, status ticks, the same outcome reached through different moves), so
+// results are cached in two transposition tables keyed by BattleHasher: V(s) per position, which is only
+// valid for the current weights (invalidateValues() drops it), and the pruned outcome list per
+// (position, move, caster), which only depends on the game rules and is kept across searches. An outcome
+// list holds whole BattleViews, so the expansion table is bounded by an estimate of its bytes rather than
+// by entries.
+public class LookaheadSearch {
+
+    public static final double WIN_VALUE = 100.0;
+
+    // 4 moves + 5 switches + struggle.
+    private static final int MAX_ACTIONS = 10;
+
+    // Rough heap size of one outcome (a BattleView: two teams of up to six pokemon with their moves, stats
+    // and flags) and of an expansion table entry without its outcomes.
+    private static final long OUTCOME_BYTES = 8192L;
+    private static final long ENTRY_BYTES = 128L;
+
+    private final PolicyAgent agent;
+    private final ForkJoinPool pool;
+    private final long budgetNanos;
+    private final double minProb;
+    private final int maxDepth;
+
+    // Bumped once per search, evaluators re-copy the weights when they see a new value. weights is the
+    // snapshot of that search, written before generation so an evaluator seeing the new generation sees it.
+    private List<Matrix> weights;
+    private volatile int generation;
+    private volatile long deadline;
+    private final ThreadLocal<Evaluator> evaluators;
+
+    private final TranspositionTable<Double> valueTable;
+    private final TranspositionTable<List<Pair<Double, BattleView>>> expansionTable;
+
+    // Stats of the last search.
+    private final AtomicLong numNodes;
+    private int lastDepth;
+
+    // tableCapacity is in entries (positions), expansionBytes the estimated size bound of the expansion table.
+    public LookaheadSearch(PolicyAgent agent, long budgetMillis, double minProb, int maxDepth, int parallelism,
+            int tableCapacity, long expansionBytes) {
+        this.agent = agent;
+        this.pool = new ForkJoinPool(Math.max(1, parallelism));
+        this.budgetNanos = budgetMillis * 1000000L;
+        this.minProb = minProb;
+        this.maxDepth = Math.max(1, maxDepth);
+        this.weights = null;
+        this.generation = 0;
+        this.evaluators = ThreadLocal.withInitial(() -> new Evaluator());
+        this.valueTable = new TranspositionTable<Double>(tableCapacity);
+        this.expansionTable = new TranspositionTable<List<Pair<Double, BattleView>>>(expansionBytes,
+                outcomes -> ENTRY_BYTES + OUTCOME_BYTES * outcomes.size());
+        this.numNodes = new AtomicLong(0);
+        this.lastDepth = 0;
+    }
+
+    // Call whenever the agent's weights change, cached V(s) values were computed with the old ones.
+    public void invalidateValues() {
+        this.valueTable.clear();
+    }
+
+    public TranspositionTable<Double> getValueTable() {
+        return this.valueTable;
+    }
+
+    public TranspositionTable<List<Pair<Double, BattleView>>> getExpansionTable() {
+        return this.expansionTable;
+    }
+
+    // Best move for root, or null if not even depth 1 finished in time (the caller falls back to argmax).
+    public MoveView search(BattleView root) {
+        this.deadline = System.nanoTime() + this.budgetNanos;
+        this.weights = Checkpoint.copyValues(this.agent.getModel());
+        this.generation++;
+        this.numNodes.set(0);
+        this.lastDepth = 0;
+
+        List<MoveView> moves = this.agent.getPotentialMoves(root);
+        if (moves == null || moves.isEmpty()) {
+            return null;
+        }
+        int me = this.agent.getMyTeamIdx();
+
+        MoveView best = null;
+        for (int depth = 1; depth <= this.maxDepth; depth++) {
+            List<MoveTask> tasks = new ArrayList<MoveTask>(moves.size());
+            for (MoveView move : moves) {
+                tasks.add(new MoveTask(root, move, me, depth));
+            }
+            // a move without a usable transition model is scored by the network (see MoveTask), anything
+            // else that goes wrong in the search is a bug and propagates
+            this.pool.invoke(new RecursiveTask<Void>() {
+                protected Void compute() {
+                    invokeAll(tasks);
+                    return null;
+                }
+            });
+            double[] scores = new double[tasks.size()];
+            for (int i = 0; i < tasks.size(); i++) {
+                scores[i] = tasks.get(i).join();
+            }
+
+            int bestIdx = -1;
+            for (int i = 0; i < scores.length; i++) {
+                if (Double.isNaN(scores[i])) { // ran out of time somewhere in this depth
+                    bestIdx = -1;
+                    break;
+                }
+                if (bestIdx < 0 || scores[i] > scores[bestIdx]) {
+                    bestIdx = i;
+                }
+            }
+            if (bestIdx < 0) {
+                break;
+            }
+            best = moves.get(bestIdx);
+            this.lastDepth = depth;
+            if (this.timedOut()) {
+                break;
+            }
+        }
+        return best;
+    }
+
+    public int getLastDepth() {
+        return this.lastDepth;
+    }
+
+    public long getLastNumNodes() {
+        return this.numNodes.get();
+    }
+
+    public void shutdown() {
+        this.pool.shutdownNow();
+    }
+
+    private boolean timedOut() {
+        return System.nanoTime() - this.deadline > 0;
+    }
+
+    // Outcomes of move with at least minProb probability, renormalized. Never empty for a non-empty input.
+    private List<Pair<Double, BattleView>> prune(List<Pair<Double, BattleView>> outcomes) {
+        List<Pair<Double, BattleView>> kept = new ArrayList<Pair<Double, BattleView>>(outcomes.size());
+        Pair<Double, BattleView> mostLikely = null;
+        double mass = 0.0;
+        for (Pair<Double, BattleView> o : outcomes) {
+            if (mostLikely == null || o.getFirst() > mostLikely.getFirst()) {
+                mostLikely = o;
+            }
+            if (o.getFirst() >= this.minProb) {
+                kept.add(o);
+                mass += o.getFirst();
+            }
+        }
+        if (kept.isEmpty()) {
+            kept.add(new Pair<Double, BattleView>(1.0, mostLikely.getSecond()));
+            return kept;
+        }
+        List<Pair<Double, BattleView>> normalized = new ArrayList<Pair<Double, BattleView>>(kept.size());
+        for (Pair<Double, BattleView> o : kept) {
+            normalized.add(new Pair<Double, BattleView>(o.getFirst() / mass, o.getSecond()));
+        }
+        return normalized;
+    }
+
+    // Expected value of caster playing move in state, with depth plies left (including this one).
+    private class MoveTask extends RecursiveTask<Double> {
+        private final BattleView state;
+        private final MoveView move;
+        private final int caster;
+        private final int depth;
+
+        private MoveTask(BattleView state, MoveView move, int caster, int depth) {
+            this.state = state;
+            this.move = move;
+            this.caster = caster;
+            this.depth = depth;
+        }
+
+        protected Double compute() {
+            if (timedOut()) {
+                return Double.NaN;
+            }
+            numNodes.incrementAndGet();
+
+            long key = BattleHasher.combine(BattleHasher.hash(this.state),
+                    31L * BattleHasher.hashMove(this.move) + this.caster);
+            List<Pair<Double, BattleView>> kept = expansionTable.get(key);
+            if (kept == null) {
+                List<Pair<Double, BattleView>> outcomes;
+                try {
+                    outcomes = this.move.getPotentialEffects(this.state, this.caster, 1 - this.caster);
+                } catch (Exception e) {
+                    outcomes = null;
+                }
+                if (outcomes == null || outcomes.isEmpty()) {
+                    // No transition model for this move: fall back to the network's own estimate.
+                    return (this.caster == agent.getMyTeamIdx())
+                            ? evaluators.get().q(this.state, this.move)
+                            : evaluators.get().value(this.state);
+                }
+                kept = prune(outcomes);
+                expansionTable.put(key, kept);
+            }
+
+            List<ValueTask> children = new ArrayList<ValueTask>(kept.size());
+            for (Pair<Double, BattleView> o : kept) {
+                children.add(new ValueTask(o.getSecond(), 1 - this.caster, this.depth - 1));
+            }
+            invokeAll(children);
+
+            double expected = 0.0;
+            for (int i = 0; i < children.size(); i++) {
+                double v = children.get(i).join();
+                if (Double.isNaN(v)) {
+                    return Double.NaN;
+                }
+                expected += kept.get(i).getFirst() * v;
+            }
+            return expected;
+        }
+    }
+
+    // Value of state with toMove about to act and depth plies left.
+    private class ValueTask extends RecursiveTask<Double> {
+        private final BattleView state;
+        private final int toMove;
+        private final int depth;
+
+        private ValueTask(BattleView state, int toMove, int depth) {
+            this.state = state;
+            this.toMove = toMove;
+            this.depth = depth;
+        }
+
+        protected Double compute() {
+            if (timedOut()) {
+                return Double.NaN;
+            }
+            int me = agent.getMyTeamIdx();
+            if (this.state.isOver() || this.depth <= 0) {
+                return evaluators.get().value(this.state);
+            }
+
+            List<MoveView> moves;
+            if (this.toMove == me) {
+                moves = agent.getPotentialMoves(this.state);
+            } else {
+                PokemonView oppPkmn = this.state.getTeamView(this.toMove).getActivePokemonView();
+                moves = (oppPkmn != null) ? oppPkmn.getAvailableMoves() : null;
+            }
+            if (moves == null || moves.isEmpty()) {
+                return evaluators.get().value(this.state);
+            }
+
+            List<MoveTask> tasks = new ArrayList<MoveTask>(moves.size());
+            for (MoveView move : moves) {
+                tasks.add(new MoveTask(this.state, move, this.toMove, this.depth));
+            }
+            invokeAll(tasks);
+
+            // We maximize, the opponent minimizes.
+            double best = (this.toMove == me) ? Double.NEGATIVE_INFINITY : Double.POSITIVE_INFINITY;
+            for (MoveTask task : tasks) {
+                double v = task.join();
+                if (Double.isNaN(v)) {
+                    return Double.NaN;
+                }
+                best = (this.toMove == me) ? Math.max(best, v) : Math.min(best, v);
+            }
+            return best;
+        }
+    }
+
+    // Per-thread network copy + encoder.
+    private class Evaluator {
+        private final Model model;
+        private final CustomSensorArray encoder;
+        private Matrix[] batches;
+        private int seenGeneration;
+
+        private Evaluator() {
+            this.model = agent.initModel();
+            this.encoder = new CustomSensorArray();
+            this.batches = new Matrix[MAX_ACTIONS + 1];
+            this.seenGeneration = -1;
+        }
+
+        private void sync() {
+            int current = generation;
+            if (this.seenGeneration != current) {
+                List<Parameter> params = this.model.getParameters();
+                for (int p = 0; p < params.size(); p++) {
+                    ModelUtils.copyMatrix(weights.get(p), params.get(p).getValue());
+                }
+                this.seenGeneration = current;
+            }
+        }
+
+        private Matrix batch(int numRows) {
+            if (numRows >= this.batches.length) {
+                this.batches = Arrays.copyOf(this.batches, numRows + 1);
+            }
+            if (this.batches[numRows] == null) {
+                this.batches[numRows] = Matrix.zeros(numRows, CustomSensorArray.NUM_FEATURES);
+            }
+            return this.batches[numRows];
+        }
+
+        // max_a Q(state, a) for our agent, +-WIN_VALUE for finished games.
+        private double value(BattleView state) {
+            long key = BattleHasher.combine(BattleHasher.hash(state), agent.getMyTeamIdx());
+            Double cached = valueTable.get(key);
+            if (cached != null) {
+                return cached;
+            }
+            double v = this.computeValue(state);
+            valueTable.put(key, v);
+            return v;
+        }
+
+        private double computeValue(BattleView state) {
+            if (state.isOver()) {
+                boolean oppDead = true;
+                for (int i = 0; i < agent.getOpponentTeamView(state).size(); i++) {
+                    if (!agent.getOpponentTeamView(state).getPokemonView(i).hasFainted()) {
+                        oppDead = false;
+                        break;
+                    }
+                }
+                return oppDead ? WIN_VALUE : -WIN_VALUE;
+            }
+            List<MoveView> actions = agent.getPotentialMoves(state);
+            if (actions == null || actions.isEmpty()) {
+                return 0.0;
+            }
+            this.sync();
+            Matrix X = this.batch(actions.size());
+            for (int row = 0; row < actions.size(); row++) {
+                this.encoder.encode(state, actions.get(row), X, row);
+            }
+            Matrix qValues = this.forward(X);
+            double best = qValues.get(0, 0);
+            for (int row = 1; row < actions.size(); row++) {
+                best = Math.max(best, qValues.get(row, 0));
+            }
+            return best;
+        }
+
+        private double q(BattleView state, MoveView action) {
+            this.sync();
+            Matrix X = this.batch(1);
+            this.encoder.encode(state, action, X, 0);
+            return this.forward(X).get(0, 0);
+        }
+
+        private Matrix forward(Matrix X) {
+            try {
+                return this.model.forward(X);
+            } catch (Exception e) {
+                throw new RuntimeException("LookaheadSearch: forward failed", e);
+            }
+        }
+    }
+}
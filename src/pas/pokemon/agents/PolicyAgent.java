@@ -2,10 +2,13 @@ package src.pas.pokemon.agents;
 
 // SYSTEM IMPORTS
 import net.sourceforge.argparse4j.inf.Namespace;
+import java.io.IOException;
+import java.util.Arrays;
 import java.util.List;
 
 // JAVA PROJECT IMPORTS
 import edu.bu.pas.pokemon.agents.NeuralQAgent;
+import edu.bu.pas.pokemon.agents.rewards.RewardFunction;
 import edu.bu.pas.pokemon.core.Team;
 import edu.bu.pas.pokemon.core.Team.TeamView;
 import edu.bu.pas.pokemon.core.Battle.BattleView;
@@ -13,12 +16,25 @@ import edu.bu.pas.pokemon.core.Move.MoveView;
 import edu.bu.pas.pokemon.core.Pokemon.PokemonView;
 import edu.bu.pas.pokemon.core.enums.Type;
 import edu.bu.pas.pokemon.nn.Model;
+import edu.bu.pas.pokemon.nn.Parameter;
 import edu.bu.pas.pokemon.nn.models.Sequential;
 import edu.bu.pas.pokemon.nn.layers.Dense;
 import edu.bu.pas.pokemon.nn.layers.ReLU;
 import edu.bu.pas.pokemon.core.Pokemon.PokemonView;
 import edu.bu.pas.pokemon.core.enums.Stat;
+import edu.bu.pas.pokemon.linalg.Matrix;
+import edu.bu.pas.pokemon.training.data.ReplayBuffer;
+import src.pas.pokemon.nn.CheckpointSequential;
+import src.pas.pokemon.nn.DenseKernels;
+import src.pas.pokemon.nn.FastMLP;
+import src.pas.pokemon.nn.QuantizedMLP;
+import src.pas.pokemon.nn.TargetNetwork;
 import src.pas.pokemon.senses.CustomSensorArray;
+import src.pas.pokemon.senses.MoveFeatureCache;
+import src.pas.pokemon.utils.LatencyHistogram;
+import src.pas.pokemon.utils.ModelUtils;
+import src.pas.pokemon.utils.RewardUtils;
+import src.pas.pokemon.utils.TypeChart;
 
 public class PolicyAgent extends NeuralQAgent {
 
@@ -33,13 +49,96 @@ public class PolicyAgent extends NeuralQAgent {
     // Our custom sensor array
     private CustomSensorArray sensorArray = null;
 
+    // Last move returned by getMove (null until we are asked for one).
+    private MoveView lastMove = null;
+
+    // Wall time of every getMove call, read and reset by the training driver.
+    private final LatencyHistogram decisionLatency = new LatencyHistogram();
+
+    // Reusable argmax batches indexed by number of candidate actions (at most 4 moves + 5 switches).
+    private Matrix[] batchBuffers = new Matrix[10];
+
+    // Frozen target network for the TD targets, refreshed from the online network every
+    // targetRefreshEvery updates (1 = targets always use the current weights, like before).
+    private int targetRefreshEvery = 1;
+    private TargetNetwork targetNetwork = null;
+
+    // Optional lookahead search for greedy (eval) decisions, off while lookaheadBudgetMillis is 0.
+    private long lookaheadBudgetMillis = 0;
+    private double lookaheadMinProb = 0.05;
+    private int lookaheadMaxDepth = 3;
+    private int lookaheadParallelism = Runtime.getRuntime().availableProcessors();
+    private int lookaheadTableCapacity = 1 << 16; // entries per transposition table of positions
+    private long lookaheadExpansionBytes = 32L << 20; // estimated size bound of the move expansion table
+    private LookaheadSearch lookahead = null;
+
+    // Expected-Bellman targets over the transition model instead of the sampled next state (off by default).
+    private boolean useExpectedTargets = false;
+    private double expectedTargetMinProb = 0.01;
+    private ExpectedBellmanTargets expectedTargets = null;
+
+    // initModel builds the framework Sequential instead of a FastMLP. Static because the framework builds the
+    // model while constructing the agent, set it before creating any.
+    private static volatile boolean useSequentialModel = false;
+    // FastMLP runs in float32 on DenseKernels.get() (SIMD when available), and the hidden layer width.
+    private static volatile boolean useFloat32Kernels = false;
+    private static volatile int hiddenSize = 64;
+    // the move registry warning is printed once, not by every self-play / eval worker
+    private static volatile boolean warnedMoveCache = false;
+
+    // int8 network used instead of the full one for eval-mode argmax (see QuantizedMLP). eval() loads it from
+    // the pokepa.quantizedModel system property when that is set and nothing was installed with
+    // setQuantizedModel (null included). Training drivers turn the property off, since their evals must score
+    // the weights just trained and not a fixed file.
+    private QuantizedMLP quantizedModel = null;
+    private boolean quantizedModelSet = false;
+    private static volatile boolean useQuantizedModelProperty = true;
+
+    // Faint replacements scored by the network (see ReplacementScorer), off while replacementBudgetMillis is 0.
+    // The type / HP heuristic is used when it is off or runs out of time.
+    private long replacementBudgetMillis = 0;
+    private int replacementParallelism = Runtime.getRuntime().availableProcessors();
+    private ReplacementScorer replacementScorer = null;
+
+    // Rows per forward pass when computing next-state Q-values in makeGroundTruth.
+    private static final int GROUND_TRUTH_BATCH_ROWS = 4096;
+
     public PolicyAgent() {
         super();
     }
 
+    public static void setUseSequentialModel(boolean enabled) {
+        PolicyAgent.useSequentialModel = enabled;
+    }
+
+    public static void setUseFloat32Kernels(boolean enabled) {
+        PolicyAgent.useFloat32Kernels = enabled;
+    }
+
+    public static void setUseQuantizedModelProperty(boolean enabled) {
+        PolicyAgent.useQuantizedModelProperty = enabled;
+    }
+
+    // params files only load into a model with the same width
+    public static void setHiddenSize(int size) {
+        PolicyAgent.hiddenSize = size;
+    }
+
     public void initializeSenses(Namespace args) {
         this.sensorArray = new CustomSensorArray();
         this.setSensorArray(this.sensorArray);
+
+        // Precompute the static move features for every move in the game. If the registry can't be
+        // read the cache just fills up lazily as moves show up.
+        try {
+            MoveFeatureCache.warm();
+        } catch (IOException e) {
+            if (!PolicyAgent.warnedMoveCache) {
+                PolicyAgent.warnedMoveCache = true;
+                System.err.println("PolicyAgent: could not read the move registry, move features are cached "
+                        + "as moves show up: " + e.getMessage());
+            }
+        }
     }
 
     @Override
@@ -53,17 +152,37 @@ public class PolicyAgent extends NeuralQAgent {
     @Override
     public Model initModel() {
         // 65 input features including bias
-        // Network: 65 -> 64 -> 1
-        Sequential qFunction = new Sequential();
-        qFunction.add(new Dense(65, 64));
-        qFunction.add(new ReLU()); // ReLu is much better compare to Tahn
-        qFunction.add(new Dense(64, 1));
-
+        // Network: 65 -> 64 (hiddenSize) -> 1, ReLU in between (ReLu is much better compare to Tahn)
+        // FastMLP is the same Dense/ReLU/Dense stack on flat arrays (and its load() also accepts binary
+        // checkpoints), useSequentialModel switches back to the framework layers.
+        if (PolicyAgent.useSequentialModel) {
+            Sequential qFunction = new CheckpointSequential();
+            qFunction.add(new Dense(65, PolicyAgent.hiddenSize));
+            qFunction.add(new ReLU());
+            qFunction.add(new Dense(PolicyAgent.hiddenSize, 1));
+            return qFunction;
+        }
+        FastMLP qFunction = new FastMLP(65, PolicyAgent.hiddenSize, 1);
+        if (PolicyAgent.useFloat32Kernels) {
+            qFunction.setKernels(DenseKernels.get());
+        }
         return qFunction;
     }
 
     @Override
     public Integer chooseNextPokemon(BattleView view) {
+        if (this.replacementBudgetMillis > 0) {
+            long start = System.nanoTime();
+            if (this.replacementScorer == null) {
+                this.replacementScorer = new ReplacementScorer(this, this.replacementBudgetMillis,
+                        this.replacementParallelism);
+            }
+            Integer choice = this.replacementScorer.choose(view);
+            this.decisionLatency.record(System.nanoTime() - start);
+            if (choice != null) {
+                return choice;
+            }
+        }
 
         TeamView myTeam = this.getMyTeamView(view);
         TeamView oppTeam;
@@ -130,50 +249,16 @@ public class PolicyAgent extends NeuralQAgent {
         Type oppType1 = oppPkmn.getCurrentType1();
         Type oppType2 = oppPkmn.getCurrentType2();
 
-        // Use the actual game's calculation for type advantage. 
-        double offMult1 = 1.0; // Effectiveness of myType1
-        if (myType1 != null) {
-            if (oppType1 != null) {
-                offMult1 *= Type.getEffectivenessModifier(myType1, oppType1);
-            }
-            if (oppType2 != null) {
-                offMult1 *= Type.getEffectivenessModifier(myType1, oppType2);
-            }
-        }
-
-        double offMult2 = 1.0; // Effectiveness of myType2
-        if (myType2 != null) {
-            if (oppType1 != null) {
-                offMult2 *= Type.getEffectivenessModifier(myType2, oppType1);
-            }
-            if (oppType2 != null) {
-                offMult2 *= Type.getEffectivenessModifier(myType2, oppType2);
-            }
-        }
+        // Use the actual game's calculation for type advantage (precomputed in TypeChart). 
+        double offMult1 = TypeChart.modifier(myType1, oppType1, oppType2); // Effectiveness of myType1
+        double offMult2 = TypeChart.modifier(myType2, oppType1, oppType2); // Effectiveness of myType2
 
         // Use best offensive multiplier. 
         double offensiveAdv = Math.max(offMult1, offMult2) - 1.0;
 
         // Defensive disadvantage
-        double defMult1 = 1.0; // How well oppType1 hits me
-        if (oppType1 != null) {
-            if (myType1 != null) {
-                defMult1 *= Type.getEffectivenessModifier(oppType1, myType1);
-            }
-            if (myType2 != null) {
-                defMult1 *= Type.getEffectivenessModifier(oppType1, myType2);
-            }
-        }
-
-        double defMult2 = 1.0; // How well oppType2 hits me
-        if (oppType2 != null) {
-            if (myType1 != null) {
-                defMult2 *= Type.getEffectivenessModifier(oppType2, myType1);
-            }
-            if (myType2 != null) {
-                defMult2 *= Type.getEffectivenessModifier(oppType2, myType2);
-            }
-        }
+        double defMult1 = TypeChart.modifier(oppType1, myType1, myType2); // How well oppType1 hits me
+        double defMult2 = TypeChart.modifier(oppType2, myType1, myType2); // How well oppType2 hits me
 
         // Use worst defensive multiplier 
         double defensiveDisadv = Math.max(defMult1, defMult2) - 1.0;
@@ -184,6 +269,14 @@ public class PolicyAgent extends NeuralQAgent {
 
     @Override
     public MoveView getMove(BattleView view) {
+        long start = System.nanoTime();
+        MoveView move = this.chooseMove(view);
+        this.lastMove = move; // remembered so self-play workers can record the transition
+        this.decisionLatency.record(System.nanoTime() - start);
+        return move;
+    }
+
+    private MoveView chooseMove(BattleView view) {
         TeamView myTeam = this.getMyTeamView(view);
         PokemonView myActPkmn = myTeam.getActivePokemonView();
 
@@ -204,17 +297,335 @@ public class PolicyAgent extends NeuralQAgent {
         }
 
         // argmax. 
+        return this.greedyMove(view);
+    }
+
+    // Lookahead search when it's enabled and we aren't training, the plain argmax otherwise (or when the
+    // search didn't finish a single ply in time).
+    private MoveView greedyMove(BattleView view) {
+        if (!this.isTraining && this.lookaheadBudgetMillis > 0) {
+            if (this.lookahead == null) {
+                this.lookahead = new LookaheadSearch(this, this.lookaheadBudgetMillis, this.lookaheadMinProb,
+                        this.lookaheadMaxDepth, this.lookaheadParallelism, this.lookaheadTableCapacity,
+                        this.lookaheadExpansionBytes);
+            }
+            MoveView move = this.lookahead.search(view);
+            if (move != null) {
+                return move;
+            }
+        }
         return this.argmax(view);
     }
 
+    // budgetMillis = 0 turns the search off. parallelism is the size of the search's fork-join pool.
+    public void setLookahead(long budgetMillis, double minProb, int maxDepth, int parallelism) {
+        if (this.lookahead != null) {
+            this.lookahead.shutdown();
+            this.lookahead = null;
+        }
+        this.lookaheadBudgetMillis = Math.max(0, budgetMillis);
+        this.lookaheadMinProb = minProb;
+        this.lookaheadMaxDepth = maxDepth;
+        this.lookaheadParallelism = parallelism;
+    }
+
+    // null until the first search.
+    public LookaheadSearch getLookahead() {
+        return this.lookahead;
+    }
+
+    // capacity in entries for the position tables, expansionBytes for the table of move outcomes.
+    public void setLookaheadTableCapacity(int capacity, long expansionBytes) {
+        this.lookaheadTableCapacity = capacity;
+        this.lookaheadExpansionBytes = expansionBytes;
+        if (this.lookahead != null) {
+            this.lookahead.shutdown();
+            this.lookahead = null;
+        }
+    }
+
+    // budgetMillis = 0 turns Q-scored replacements off.
+    public void setReplacementBudget(long budgetMillis, int parallelism) {
+        if (this.replacementScorer != null) {
+            this.replacementScorer.shutdown();
+            this.replacementScorer = null;
+        }
+        this.replacementBudgetMillis = Math.max(0, budgetMillis);
+        this.replacementParallelism = parallelism;
+    }
+
+    public long getReplacementBudgetMillis() {
+        return this.replacementBudgetMillis;
+    }
+
+    public long getLookaheadBudgetMillis() {
+        return this.lookaheadBudgetMillis;
+    }
+
+    public double getLookaheadMinProb() {
+        return this.lookaheadMinProb;
+    }
+
+    public int getLookaheadTableCapacity() {
+        return this.lookaheadTableCapacity;
+    }
+
+    public long getLookaheadExpansionBytes() {
+        return this.lookaheadExpansionBytes;
+    }
+
+    public int getLookaheadMaxDepth() {
+        return this.lookaheadMaxDepth;
+    }
+
+    // Evaluate every candidate action with a single forward pass instead of one per action.
+    @Override
+    public MoveView argmax(BattleView view) {
+        List<MoveView> actions = this.getPotentialMoves(view);
+        if (actions == null || actions.isEmpty()) {
+            return super.argmax(view);
+        }
+
+        // Stack all (state, action) rows into one N x 65 batch. The batch matrix is reused across turns
+        // and every row is fully overwritten by the encoder.
+        Matrix batch = this.getBatchBuffer(actions.size());
+        for (int row = 0; row < actions.size(); row++) {
+            this.sensorArray.encode(view, actions.get(row), batch, row);
+        }
+
+        Matrix qValues;
+        try {
+            qValues = this.getInferenceModel().forward(batch);
+        } catch (Exception e) {
+            throw new RuntimeException("PolicyAgent.argmax: forward failed", e);
+        }
+
+        // Pick the row with the highest Q-value.
+        int bestIdx = 0;
+        double bestQ = qValues.get(0, 0);
+        for (int row = 1; row < actions.size(); row++) {
+            double q = qValues.get(row, 0);
+            if (q > bestQ) {
+                bestQ = q;
+                bestIdx = row;
+            }
+        }
+        return actions.get(bestIdx);
+    }
+
+    // The (state, action) rows argmax scores for view, in getPotentialMoves order (a new matrix, null if
+    // there are no actions). Used to build argmax validation sets.
+    public Matrix encodeCandidates(BattleView view) {
+        List<MoveView> actions = this.getPotentialMoves(view);
+        if (actions == null || actions.isEmpty()) {
+            return null;
+        }
+        Matrix rows = Matrix.zeros(actions.size(), CustomSensorArray.NUM_FEATURES);
+        for (int row = 0; row < actions.size(); row++) {
+            this.sensorArray.encode(view, actions.get(row), rows, row);
+        }
+        return rows;
+    }
+
+    // The network greedy decisions are scored with: the quantized net only ever scores eval decisions,
+    // training keeps the full one.
+    public Model getInferenceModel() {
+        return (!this.isTraining && this.quantizedModel != null) ? this.quantizedModel : this.getModel();
+    }
+
+    // null = argmax uses the full network in eval mode too.
+    public void setQuantizedModel(QuantizedMLP model) {
+        this.quantizedModel = model;
+        this.quantizedModelSet = true;
+    }
+
+    public QuantizedMLP getQuantizedModel() {
+        return this.quantizedModel;
+    }
+
+    // Preallocated N x 65 batch for the argmax forward pass, one per action count.
+    private Matrix getBatchBuffer(int numRows) {
+        if (numRows >= this.batchBuffers.length) {
+            this.batchBuffers = Arrays.copyOf(this.batchBuffers, numRows + 1);
+        }
+        if (this.batchBuffers[numRows] == null) {
+            this.batchBuffers[numRows] = Matrix.zeros(numRows, CustomSensorArray.NUM_FEATURES);
+        }
+        return this.batchBuffers[numRows];
+    }
+
+    // TD targets y = r + gamma * max_a' Q_target(s', a') (just r when s' is terminal). All next-state action
+    // rows go through the target network in a few large batches instead of one forward per action, and the
+    // max-Q of a next state is cached until the target network is refreshed.
+    @Override
+    public Matrix makeGroundTruth(ReplayBuffer buffer, double discountFactor, RewardFunction rewardFunction) {
+        TargetNetwork target = this.getTargetNetwork();
+        target.onUpdate();
+        if (this.useExpectedTargets) {
+            if (this.expectedTargets == null) {
+                this.expectedTargets = new ExpectedBellmanTargets(this, this.expectedTargetMinProb,
+                        Runtime.getRuntime().availableProcessors(), this.lookaheadTableCapacity);
+            }
+            return this.expectedTargets.compute(buffer, discountFactor, rewardFunction, target);
+        }
+
+        int n = buffer.size();
+        double[] maxQ = new double[n];
+        Matrix batch = Matrix.zeros(GROUND_TRUTH_BATCH_ROWS, CustomSensorArray.NUM_FEATURES);
+        int[] rowOwner = new int[GROUND_TRUTH_BATCH_ROWS];
+        int numRows = 0;
+
+        for (int i = 0; i < n; i++) {
+            BattleView nextState = buffer.getNextState(i);
+            if (nextState == null || nextState.isOver()) {
+                maxQ[i] = 0.0;
+                continue;
+            }
+            Double cached = target.getCachedMaxQ(nextState);
+            if (cached != null) {
+                maxQ[i] = cached;
+                continue;
+            }
+            List<MoveView> actions = this.getPotentialMoves(nextState);
+            if (actions == null || actions.isEmpty()) {
+                maxQ[i] = 0.0;
+                continue;
+            }
+
+            maxQ[i] = Double.NEGATIVE_INFINITY;
+            if (numRows + actions.size() > GROUND_TRUTH_BATCH_ROWS) {
+                numRows = this.flushTargetBatch(target, batch, rowOwner, numRows, maxQ, buffer);
+            }
+            for (MoveView action : actions) {
+                this.sensorArray.encode(nextState, action, batch, numRows);
+                rowOwner[numRows++] = i;
+            }
+        }
+        this.flushTargetBatch(target, batch, rowOwner, numRows, maxQ, buffer);
+
+        double[] rewards = RewardUtils.getRewards(rewardFunction, buffer);
+        Matrix YGt = Matrix.zeros(n, 1);
+        for (int i = 0; i < n; i++) {
+            YGt.set(i, 0, rewards[i] + discountFactor * maxQ[i]);
+        }
+        return YGt;
+    }
+
+    // Forward the first numRows rows of batch through the target network, fold them into maxQ and cache the
+    // finished next states. Returns the new row count (0).
+    private int flushTargetBatch(TargetNetwork target, Matrix batch, int[] rowOwner, int numRows, double[] maxQ,
+            ReplayBuffer buffer) {
+        if (numRows == 0) {
+            return 0;
+        }
+        Matrix qValues;
+        try {
+            qValues = target.getModel().forward(batch);
+        } catch (Exception e) {
+            throw new RuntimeException("PolicyAgent.makeGroundTruth: target forward failed", e);
+        }
+        // Rows past numRows hold stale data, their outputs are ignored.
+        for (int row = 0; row < numRows; row++) {
+            int i = rowOwner[row];
+            maxQ[i] = Math.max(maxQ[i], qValues.get(row, 0));
+        }
+        for (int row = 0; row < numRows; row++) {
+            if (row == 0 || rowOwner[row] != rowOwner[row - 1]) {
+                target.putCachedMaxQ(buffer.getNextState(rowOwner[row]), maxQ[rowOwner[row]]);
+            }
+        }
+        return 0;
+    }
+
+    // Created on first use so the snapshot starts out equal to whatever weights were loaded.
+    public TargetNetwork getTargetNetwork() {
+        if (this.targetNetwork == null) {
+            this.targetNetwork = new TargetNetwork(this.getModel(), this.initModel(), this.targetRefreshEvery);
+        }
+        return this.targetNetwork;
+    }
+
+    // minProb: turn outcomes less likely than this are cut from the expected targets.
+    public void setExpectedTargets(boolean enabled, double minProb) {
+        if (this.expectedTargets != null) {
+            this.expectedTargets.shutdown();
+            this.expectedTargets = null;
+        }
+        this.useExpectedTargets = enabled;
+        this.expectedTargetMinProb = minProb;
+    }
+
+    public int getTargetRefreshEvery() {
+        return this.targetRefreshEvery;
+    }
+
+    // Takes effect from the next update; the current snapshot is kept.
+    public void setTargetRefreshEvery(int targetRefreshEvery) {
+        this.targetRefreshEvery = Math.max(1, targetRefreshEvery);
+        if (this.targetNetwork != null) {
+            this.targetNetwork = new TargetNetwork(this.getModel(), this.targetNetwork.getModel(),
+                    this.targetRefreshEvery);
+        }
+    }
+
     @Override
     public void afterGameEnds(BattleView view) {
         // After the game is over, decay the epsilon
         if (this.isTraining) {
+            this.decayEpsilon(1);
+        }
+    }
+
+    // Apply the per-game epsilon decay numGames times (used when games were played by worker copies).
+    public void decayEpsilon(int numGames) {
+        for (int i = 0; i < numGames && this.eps > this.minEps; i++) {
             this.eps = Math.max(this.eps * this.epsDecay, this.minEps);
         }
     }
 
+    public double getEpsilon() {
+        return this.eps;
+    }
+
+    public void setEpsilon(double eps) {
+        this.eps = eps;
+    }
+
+    public LatencyHistogram getDecisionLatency() {
+        return this.decisionLatency;
+    }
+
+    public MoveView getLastMove() {
+        return this.lastMove;
+    }
+
+    public void clearLastMove() {
+        this.lastMove = null;
+    }
+
+    // Overwrite our network weights with the ones from another (same architecture) model.
+    public void copyWeightsFrom(Model other) {
+        ModelUtils.copyParameters(other, this.getModel());
+        if (this.lookahead != null) {
+            this.lookahead.invalidateValues();
+        }
+    }
+
+    // Same, from parameter values in getParameters() order (e.g. a snapshot from Checkpoint.copyValues).
+    public void copyWeightsFrom(List<Matrix> values) {
+        List<Parameter> params = this.getModel().getParameters();
+        if (params.size() != values.size()) {
+            throw new IllegalArgumentException("PolicyAgent.copyWeightsFrom: got " + values.size()
+                    + " values for " + params.size() + " parameters");
+        }
+        for (int p = 0; p < params.size(); p++) {
+            ModelUtils.copyMatrix(values.get(p), params.get(p).getValue());
+        }
+        if (this.lookahead != null) {
+            this.lookahead.invalidateValues();
+        }
+    }
+
     @Override
     // Called when the training mode start. 
     public void train() {
@@ -226,6 +637,19 @@ public class PolicyAgent extends NeuralQAgent {
     @Override
     public void eval() {
         this.isTraining = false;
+        String quantizedPath = System.getProperty("pokepa.quantizedModel");
+        if (PolicyAgent.useQuantizedModelProperty && !this.quantizedModelSet && quantizedPath != null) {
+            this.quantizedModelSet = true; // one attempt
+            try {
+                this.quantizedModel = QuantizedMLP.read(quantizedPath);
+            } catch (IOException e) {
+                System.err.println("PolicyAgent.eval: could not load " + quantizedPath + ", using the full model: "
+                        + e.getMessage());
+            }
+        }
+        if (this.lookahead != null) {
+            this.lookahead.invalidateValues(); // weights may have been trained since the last eval
+        }
         super.eval();
     }
 }
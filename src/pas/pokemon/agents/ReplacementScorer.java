@@ -0,0 +1,181 @@
+package src.pas.pokemon.agents;
+
+// SYSTEM IMPORTS
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+// JAVA PROJECT IMPORTS
+import edu.bu.pas.pokemon.core.Battle;
+import edu.bu.pas.pokemon.core.Battle.BattleView;
+import edu.bu.pas.pokemon.core.Move.MoveView;
+import edu.bu.pas.pokemon.core.Pokemon.PokemonView;
+import edu.bu.pas.pokemon.core.Team.TeamView;
+import edu.bu.pas.pokemon.linalg.Matrix;
+import src.pas.pokemon.senses.CustomSensorArray;
+
+// Picks a faint replacement by what the network thinks of the position after the switch.
+//
+// Every living bench pokemon is sent in on a copy of the battle (new Battle(view) + switchActivePokemonTo),
+// and the resulting position is scored with V(s) = max_a Q(s, a) over the moves we would have there. Building
+// the candidate battles and encoding their (state, action) rows runs in parallel (per-thread sensor arrays),
+// then all rows of all candidates go through the network in a single forward pass on the calling thread.
+// choose() returns null when the time budget runs out or the framework refuses a copy, and the agent falls
+// back to its type / HP heuristic.
+public class ReplacementScorer {
+
+    private final PolicyAgent agent;
+    private final ForkJoinPool pool; // null = build candidates on the calling thread
+    private final long budgetNanos;
+    private final ThreadLocal<CustomSensorArray> encoders;
+
+    // batch for the forward pass, reused while the row count stays the same
+    private Matrix batch = null;
+
+    public ReplacementScorer(PolicyAgent agent, long budgetMillis, int parallelism) {
+        this.agent = agent;
+        this.pool = (parallelism > 1) ? new ForkJoinPool(parallelism) : null;
+        this.budgetNanos = budgetMillis * 1000000L;
+        this.encoders = ThreadLocal.withInitial(() -> new CustomSensorArray());
+    }
+
+    public long getBudgetMillis() {
+        return this.budgetNanos / 1000000L;
+    }
+
+    // Team slot of the best replacement for our team in view, or null (timeout / nothing to score).
+    public Integer choose(BattleView view) {
+        long deadline = System.nanoTime() + this.budgetNanos;
+        int me = this.agent.getMyTeamIdx();
+        TeamView myTeam = view.getTeamView(me);
+
+        List<Integer> slots = new ArrayList<Integer>();
+        for (int i = 0; i < myTeam.size(); i++) {
+            PokemonView pkmn = myTeam.getPokemonView(i);
+            if (pkmn != null && !pkmn.hasFainted() && i != myTeam.getActivePokemonIdx()) {
+                slots.add(i);
+            }
+        }
+        if (slots.isEmpty()) {
+            return null;
+        }
+        if (slots.size() == 1) {
+            return slots.get(0); // nothing to compare
+        }
+
+        // Candidate rows, one double[] (numActions x NUM_FEATURES) per slot.
+        double[][] rows = new double[slots.size()][];
+        try {
+            if (this.pool == null) {
+                for (int c = 0; c < slots.size(); c++) {
+                    rows[c] = this.encodeCandidate(view, me, slots.get(c));
+                    if (System.nanoTime() > deadline) {
+                        return null;
+                    }
+                }
+            } else {
+                List<Future<double[]>> futures = new ArrayList<Future<double[]>>(slots.size());
+                for (int slot : slots) {
+                    futures.add(this.pool.submit(() -> this.encodeCandidate(view, me, slot)));
+                }
+                try {
+                    for (int c = 0; c < futures.size(); c++) {
+                        long remaining = deadline - System.nanoTime();
+                        rows[c] = futures.get(c).get(Math.max(0L, remaining), TimeUnit.NANOSECONDS);
+                    }
+                } catch (TimeoutException e) {
+                    for (Future<double[]> future : futures) {
+                        future.cancel(true);
+                    }
+                    return null;
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return null;
+        } catch (ExecutionException | RuntimeException e) {
+            return null; // the framework choked on a copy
+        }
+
+        // One forward pass over every candidate's rows.
+        int numFeatures = CustomSensorArray.NUM_FEATURES;
+        int numRows = 0;
+        for (double[] r : rows) {
+            numRows += r.length / numFeatures;
+        }
+        if (numRows == 0) {
+            return null;
+        }
+        Matrix X = this.getBatch(numRows);
+        int row = 0;
+        for (double[] r : rows) {
+            for (int k = 0; k < r.length / numFeatures; k++) {
+                for (int f = 0; f < numFeatures; f++) {
+                    X.set(row, f, r[k * numFeatures + f]);
+                }
+                row++;
+            }
+        }
+        Matrix qValues;
+        try {
+            qValues = this.agent.getInferenceModel().forward(X);
+        } catch (Exception e) {
+            return null;
+        }
+
+        int best = -1;
+        double bestValue = Double.NEGATIVE_INFINITY;
+        row = 0;
+        for (int c = 0; c < rows.length; c++) {
+            int numActions = rows[c].length / numFeatures;
+            double value = Double.NEGATIVE_INFINITY;
+            for (int k = 0; k < numActions; k++) {
+                value = Math.max(value, qValues.get(row++, 0));
+            }
+            if (numActions > 0 && value > bestValue) {
+                bestValue = value;
+                best = c;
+            }
+        }
+        if (best < 0 || System.nanoTime() > deadline) {
+            return null;
+        }
+        return slots.get(best);
+    }
+
+    public void shutdown() {
+        if (this.pool != null) {
+            this.pool.shutdownNow();
+        }
+    }
+
+    // The encoded (state, action) rows of the position where slot replaced our active pokemon.
+    private double[] encodeCandidate(BattleView view, int me, int slot) {
+        Battle battle = new Battle(view);
+        battle.getTeam(me).switchActivePokemonTo(slot);
+        BattleView candidate = battle.getView();
+
+        List<MoveView> actions = this.agent.getPotentialMoves(candidate);
+        if (actions == null || actions.isEmpty()) {
+            return new double[0];
+        }
+        CustomSensorArray encoder = this.encoders.get();
+        int numFeatures = CustomSensorArray.NUM_FEATURES;
+        double[] rows = new double[actions.size() * numFeatures];
+        for (int k = 0; k < actions.size(); k++) {
+            encoder.encode(candidate, actions.get(k), rows, k * numFeatures);
+        }
+        return rows;
+    }
+
+    private Matrix getBatch(int numRows) {
+        if (this.batch == null || this.batch.getShape().getNumRows() != numRows) {
+            this.batch = Matrix.zeros(numRows, CustomSensorArray.NUM_FEATURES);
+        }
+        return this.batch;
+    }
+}
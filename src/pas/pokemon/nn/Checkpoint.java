@@ -0,0 +1,245 @@
+package src.pas.pokemon.nn;
+
+// SYSTEM IMPORTS
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.CRC32;
+
+// JAVA PROJECT IMPORTS
+import edu.bu.pas.pokemon.linalg.Matrix;
+import edu.bu.pas.pokemon.nn.Model;
+import edu.bu.pas.pokemon.nn.Parameter;
+import src.pas.pokemon.utils.ModelUtils;
+
+// Binary checkpoint: every Parameter value of a model plus (optionally) the Adam moments and step count, the
+// agent's epsilon and the cycle number. Layout (big-endian):
+//
+//   long   MAGIC
+//   int    VERSION
+//   int    cycle
+//   double epsilon
+//   int    numParams
+//   int    hasMoments (0 / 1)
+//   long   adamStep (Adam steps taken so far, -1 = unknown; not in version 1 files)
+//   numParams x { int rows, int cols, rows*cols doubles }          parameter values
+//   if hasMoments: numParams x { rows*cols doubles } m_t, then the same for v_t
+//   long   CRC32 of every byte before it
+//
+// Values are raw doubles, so a save/load round trip is exact (the text format goes through 17 digit decimals).
+// Files are written to a temp file and renamed, a crash mid-save never leaves a half written checkpoint.
+public class Checkpoint {
+
+    public static final long MAGIC = 0x504B434B50543031L; // "PKCKPT01"
+    public static final int VERSION = 2;
+
+    // the smallest (version 1) header, isCheckpoint() only needs a lower bound
+    private static final int HEADER_BYTES = 8 + 4 + 4 + 8 + 4 + 4;
+
+    private final int cycle;
+    private final double epsilon;
+    private final List<Matrix> values;
+    private final List<Matrix> mts; // null if no optimizer state was saved
+    private final List<Matrix> vts;
+    private final long adamStep;
+
+    public Checkpoint(int cycle, double epsilon, List<Matrix> values, List<Matrix> mts, List<Matrix> vts,
+            long adamStep) {
+        this.cycle = cycle;
+        this.epsilon = epsilon;
+        this.values = values;
+        this.mts = mts;
+        this.vts = vts;
+        this.adamStep = adamStep;
+    }
+
+    public int getCycle() {
+        return this.cycle;
+    }
+
+    public double getEpsilon() {
+        return this.epsilon;
+    }
+
+    public List<Matrix> getValues() {
+        return this.values;
+    }
+
+    public boolean hasMoments() {
+        return this.mts != null && this.vts != null;
+    }
+
+    public List<Matrix> getMTs() {
+        return this.mts;
+    }
+
+    public List<Matrix> getVTs() {
+        return this.vts;
+    }
+
+    // Adam steps taken when the moments were saved, -1 if unknown (version 1 files, no moments).
+    public long getAdamStep() {
+        return this.adamStep;
+    }
+
+    // Snapshot the current parameter values of model (copies, so the model can keep training).
+    public static List<Matrix> copyValues(Model model) {
+        List<Parameter> params = model.getParameters();
+        List<Matrix> values = new ArrayList<Matrix>(params.size());
+        for (Parameter p : params) {
+            values.add(p.getValue().copy());
+        }
+        return values;
+    }
+
+    // Overwrite the parameters of model with the saved values.
+    public void applyTo(Model model) {
+        List<Parameter> params = model.getParameters();
+        if (params.size() != this.values.size()) {
+            throw new IllegalArgumentException("Checkpoint.applyTo: checkpoint has " + this.values.size()
+                    + " parameters, model has " + params.size());
+        }
+        for (int p = 0; p < params.size(); p++) {
+            ModelUtils.copyMatrix(this.values.get(p), params.get(p).getValue());
+        }
+    }
+
+    // True if the file starts with the checkpoint magic (anything else is treated as the text format).
+    public static boolean isCheckpoint(String filePath) {
+        File f = new File(filePath);
+        if (!f.isFile() || f.length() < HEADER_BYTES + 8) {
+            return false;
+        }
+        try (RandomAccessFile raf = new RandomAccessFile(f, "r")) {
+            return raf.readLong() == MAGIC;
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    public void save(String filePath) throws IOException {
+        int numParams = this.values.size();
+        long numBytes = HEADER_BYTES + 8 + 8;
+        for (Matrix m : this.values) {
+            long n = (long) m.getShape().getNumRows() * m.getShape().getNumCols();
+            numBytes += 8 + n * 8 * (this.hasMoments() ? 3 : 1);
+        }
+        if (numBytes > Integer.MAX_VALUE) {
+            throw new IOException("Checkpoint.save: " + numBytes + " bytes is too large for one checkpoint");
+        }
+
+        ByteBuffer buf = ByteBuffer.allocate((int) numBytes);
+        buf.putLong(MAGIC);
+        buf.putInt(VERSION);
+        buf.putInt(this.cycle);
+        buf.putDouble(this.epsilon);
+        buf.putInt(numParams);
+        buf.putInt(this.hasMoments() ? 1 : 0);
+        buf.putLong(this.hasMoments() ? this.adamStep : -1L);
+        for (Matrix m : this.values) {
+            buf.putInt(m.getShape().getNumRows());
+            buf.putInt(m.getShape().getNumCols());
+            putMatrix(buf, m);
+        }
+        if (this.hasMoments()) {
+            for (Matrix m : this.mts) {
+                putMatrix(buf, m);
+            }
+            for (Matrix m : this.vts) {
+                putMatrix(buf, m);
+            }
+        }
+        CRC32 crc = new CRC32();
+        crc.update(buf.array(), 0, buf.position());
+        buf.putLong(crc.getValue());
+        buf.flip();
+
+        File target = new File(filePath);
+        File tmp = new File(filePath + ".tmp");
+        try (RandomAccessFile raf = new RandomAccessFile(tmp, "rw"); FileChannel channel = raf.getChannel()) {
+            raf.setLength(0);
+            while (buf.hasRemaining()) {
+                channel.write(buf);
+            }
+            channel.force(false);
+        }
+        Files.move(tmp.toPath(), target.toPath(), StandardCopyOption.REPLACE_EXISTING,
+                StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    public static Checkpoint load(String filePath) throws IOException {
+        byte[] bytes = Files.readAllBytes(new File(filePath).toPath());
+        if (bytes.length < HEADER_BYTES + 8) {
+            throw new IOException("Checkpoint.load: " + filePath + " is truncated");
+        }
+        ByteBuffer buf = ByteBuffer.wrap(bytes);
+
+        CRC32 crc = new CRC32();
+        crc.update(bytes, 0, bytes.length - 8);
+        if (buf.getLong(bytes.length - 8) != crc.getValue()) {
+            throw new IOException("Checkpoint.load: checksum mismatch in " + filePath);
+        }
+        if (buf.getLong() != MAGIC) {
+            throw new IOException("Checkpoint.load: " + filePath + " is not a checkpoint");
+        }
+        int version = buf.getInt();
+        if (version != 1 && version != VERSION) {
+            throw new IOException("Checkpoint.load: unsupported version " + version + " in " + filePath);
+        }
+        int cycle = buf.getInt();
+        double epsilon = buf.getDouble();
+        int numParams = buf.getInt();
+        boolean hasMoments = buf.getInt() != 0;
+        long adamStep = (version >= 2) ? buf.getLong() : -1L;
+
+        List<Matrix> values = new ArrayList<Matrix>(numParams);
+        for (int p = 0; p < numParams; p++) {
+            Matrix m = Matrix.zeros(buf.getInt(), buf.getInt());
+            getMatrix(buf, m);
+            values.add(m);
+        }
+        List<Matrix> mts = null;
+        List<Matrix> vts = null;
+        if (hasMoments) {
+            mts = new ArrayList<Matrix>(numParams);
+            vts = new ArrayList<Matrix>(numParams);
+            for (Matrix v : values) {
+                Matrix m = Matrix.zeros_like(v);
+                getMatrix(buf, m);
+                mts.add(m);
+            }
+            for (Matrix v : values) {
+                Matrix m = Matrix.zeros_like(v);
+                getMatrix(buf, m);
+                vts.add(m);
+            }
+        }
+        return new Checkpoint(cycle, epsilon, values, mts, vts, adamStep);
+    }
+
+    private static void putMatrix(ByteBuffer buf, Matrix m) {
+        int numRows = m.getShape().getNumRows();
+        int numCols = m.getShape().getNumCols();
+        for (int r = 0; r < numRows; r++) {
+            for (int c = 0; c < numCols; c++) {
+                buf.putDouble(m.get(r, c));
+            }
+        }
+    }
+
+    private static void getMatrix(ByteBuffer buf, Matrix m) {
+        int numRows = m.getShape().getNumRows();
+        int numCols = m.getShape().getNumCols();
+        for (int r = 0; r < numRows; r++) {
+            for (int c = 0; c < numCols; c++) {
+                m.set(r, c, buf.getDouble());
+            }
+        }
+    }
+}
@@ -0,0 +1,12 @@
+package src.pas.pokemon.nn;
+
+// SYSTEM IMPORTS
+
+// JAVA PROJECT IMPORTS
+
+// Models whose load() accepts binary Checkpoints and keeps the rest of the checkpoint around for resuming.
+public interface CheckpointLoadable {
+
+    // The checkpoint read by the last load() call, or null if that was a text file.
+    public Checkpoint getLoadedCheckpoint();
+}
@@ -0,0 +1,36 @@
+package src.pas.pokemon.nn;
+
+// SYSTEM IMPORTS
+
+// JAVA PROJECT IMPORTS
+import edu.bu.pas.pokemon.nn.models.Sequential;
+
+// Sequential whose load() understands both the framework's text params files and binary Checkpoints.
+// save() still writes the text format so files stay readable by a plain Sequential; use
+// Checkpoint.save for the binary one. After loading a checkpoint the rest of it (epsilon, cycle,
+// optimizer moments) is available from getLoadedCheckpoint() for whoever wants to resume.
+public class CheckpointSequential extends Sequential implements CheckpointLoadable {
+
+    private Checkpoint loadedCheckpoint = null;
+
+    public CheckpointSequential() {
+        super();
+    }
+
+    @Override
+    public void load(String filePath) throws Exception {
+        if (Checkpoint.isCheckpoint(filePath)) {
+            Checkpoint checkpoint = Checkpoint.load(filePath);
+            checkpoint.applyTo(this);
+            this.loadedCheckpoint = checkpoint;
+        } else {
+            super.load(filePath);
+            this.loadedCheckpoint = null;
+        }
+    }
+
+    @Override
+    public Checkpoint getLoadedCheckpoint() {
+        return this.loadedCheckpoint;
+    }
+}
@@ -0,0 +1,63 @@
+package src.pas.pokemon.nn;
+
+// SYSTEM IMPORTS
+
+// JAVA PROJECT IMPORTS
+
+// float32 kernels for the layers of FastMLP and QuantizedMLP. All matrices are flat row-major arrays, W is
+// inSize x outSize like a Dense weight.
+//
+// get() returns the SIMD implementation (VectorDenseKernels, jdk.incubator.vector) when it was compiled in and
+// the runtime has the module, the scalar loops otherwise. The vector class is loaded by name so this file and
+// everything that uses it compile without the incubator module; build it with
+//   javac --add-modules jdk.incubator.vector -cp "./lib/*:." @pokePA.srcs @pokePA-simd.srcs
+// and run with --add-modules jdk.incubator.vector to use it. -Dpokepa.kernels=scalar forces the fallback.
+public abstract class DenseKernels {
+
+    private static final String VECTOR_IMPL = "src.pas.pokemon.nn.VectorDenseKernels";
+
+    private static volatile DenseKernels best = null;
+
+    // out = in * W + b (n rows), then max(0, .) if relu.
+    public abstract void forward(float[] in, int n, int inSize, float[] W, float[] b, int outSize, float[] out,
+            boolean relu);
+
+    // out = b + scale * (in * Q) (n rows, scale per output column), then max(0, .) if relu. Q holds int8
+    // weights, inSize x outSize like W; the products are float, so the only rounding is Q's.
+    public abstract void forwardQuantized(float[] in, int n, int inSize, byte[] Q, float[] scale, float[] b,
+            int outSize, float[] out, boolean relu);
+
+    // gW += in^T * d and gb += column sums of d (d is n x outSize).
+    public abstract void weightGrad(float[] in, float[] d, int n, int inSize, int outSize, float[] gW, float[] gb);
+
+    // dIn = d * W^T, zeroed where in <= 0 if reluMask (in is the ReLU output the layer read).
+    public abstract void inputGrad(float[] d, float[] W, int n, int inSize, int outSize, float[] in,
+            boolean reluMask, float[] dIn);
+
+    public abstract String getName();
+
+    public static DenseKernels scalar() {
+        return ScalarDenseKernels.INSTANCE;
+    }
+
+    public static DenseKernels get() {
+        DenseKernels kernels = DenseKernels.best;
+        if (kernels == null) {
+            kernels = load();
+            DenseKernels.best = kernels;
+        }
+        return kernels;
+    }
+
+    private static DenseKernels load() {
+        if ("scalar".equals(System.getProperty("pokepa.kernels"))) {
+            return scalar();
+        }
+        try {
+            return (DenseKernels) Class.forName(VECTOR_IMPL).getDeclaredConstructor().newInstance();
+        } catch (ReflectiveOperationException | LinkageError e) {
+            // not compiled in, or the runtime lacks jdk.incubator.vector
+            return scalar();
+        }
+    }
+}
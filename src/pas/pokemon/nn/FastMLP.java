@@ -0,0 +1,679 @@
+package src.pas.pokemon.nn;
+
+// SYSTEM IMPORTS
+import java.io.BufferedReader;
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+// JAVA PROJECT IMPORTS
+import edu.bu.pas.pokemon.linalg.Matrix;
+import edu.bu.pas.pokemon.nn.Model;
+import edu.bu.pas.pokemon.nn.Parameter;
+import edu.bu.pas.pokemon.nn.optimizers.AdamOptimizer;
+
+// Dense -> ReLU -> ... -> Dense network on flat row-major double[]s, a drop-in for the Sequential built by
+// PolicyAgent.initModel (same math, same parameter order W1, b1, W2, b2, ..., same shapes as Dense).
+//
+// Two ways to train it:
+//   - the Model API (forward / backwards + any framework Optimizer) works as before, gradients end up in the
+//     Parameters like with Dense,
+//   - trainStep / trainStepWeighted do forward, MSE backward and the Adam update in one pass over buffers
+//     that are allocated once per batch size, so a training step allocates nothing.
+//
+// The flat arrays are the working copy, the Parameter matrices are what the rest of the code sees. Anything
+// that gets hold of the Parameters (getParameters, an optimizer stepping after backwards, load) may change
+// them, so the flat copy is re-read before the next forward; fused steps only change the flat copy, which
+// is written back the next time someone asks for the Parameters.
+//
+// setKernels switches the forward / backward passes to float32 DenseKernels (SIMD where available). Adam and
+// the master weights stay double, the float weights are refreshed from them after every change.
+//
+// Not thread-safe (forward reuses its buffers), every thread needs its own copy like with the agents.
+public class FastMLP extends Model implements CheckpointLoadable {
+
+    private final int[] sizes; // sizes[0] inputs, sizes[numLayers] outputs
+    private final int numLayers;
+
+    private final double[][] weights; // layer l: sizes[l] x sizes[l + 1], row-major
+    private final double[][] biases;
+    private final double[][] weightGrads;
+    private final double[][] biasGrads;
+    private final List<Parameter> parameters;
+
+    // Adam state for the fused steps (same update and epsilon as AdamOptimizer)
+    private final double[][] weightMs;
+    private final double[][] weightVs;
+    private final double[][] biasMs;
+    private final double[][] biasVs;
+    private double lr = 1e-3;
+    private double beta1 = 0.9;
+    private double beta2 = 0.999;
+    private long adamStep = 0;
+
+    // Per-batch buffers, grown to the largest batch seen. activations[0] is the input copy, activations[l]
+    // the (post-ReLU) output of layer l - 1.
+    private int capacity = 0;
+    private double[][] activations;
+    private double[] delta;
+    private double[] deltaPrev;
+    private double[] dLossBuffer;
+
+    // forward cache for backwards(X, ...) after forward(X)
+    private Matrix lastInput = null;
+    private int lastRows = -1;
+
+    private boolean paramsMayHaveChanged = true; // Parameters -> flat before the next use
+    private boolean flatChanged = false;         // flat -> Parameters before anyone reads them
+
+    private Checkpoint loadedCheckpoint = null;
+
+    // float32 compute path, unused while kernels is null
+    private DenseKernels kernels = null;
+    private float[][] weights32;
+    private float[][] biases32;
+    private float[][] weightGrads32;
+    private float[][] biasGrads32;
+    private float[][] activations32;
+    private float[] delta32;
+    private float[] deltaPrev32;
+    private boolean weights32Stale = true;
+
+    public FastMLP(int... sizes) {
+        this(new Random(), sizes);
+    }
+
+    public FastMLP(Random rng, int... sizes) {
+        if (sizes.length < 2) {
+            throw new IllegalArgumentException("FastMLP: need at least an input and an output size");
+        }
+        this.sizes = sizes.clone();
+        this.numLayers = sizes.length - 1;
+        this.weights = new double[this.numLayers][];
+        this.biases = new double[this.numLayers][];
+        this.weightGrads = new double[this.numLayers][];
+        this.biasGrads = new double[this.numLayers][];
+        this.weightMs = new double[this.numLayers][];
+        this.weightVs = new double[this.numLayers][];
+        this.biasMs = new double[this.numLayers][];
+        this.biasVs = new double[this.numLayers][];
+        List<Parameter> params = new ArrayList<Parameter>(2 * this.numLayers);
+        for (int l = 0; l < this.numLayers; l++) {
+            int in = sizes[l];
+            int out = sizes[l + 1];
+            this.weights[l] = new double[in * out];
+            this.biases[l] = new double[out];
+            this.weightGrads[l] = new double[in * out];
+            this.biasGrads[l] = new double[out];
+            this.weightMs[l] = new double[in * out];
+            this.weightVs[l] = new double[in * out];
+            this.biasMs[l] = new double[out];
+            this.biasVs[l] = new double[out];
+
+            // He init for the ReLU layers, biases start at 0
+            double scale = Math.sqrt(2.0 / in);
+            Matrix W = Matrix.zeros(in, out);
+            for (int i = 0; i < in; i++) {
+                for (int j = 0; j < out; j++) {
+                    W.set(i, j, rng.nextGaussian() * scale);
+                }
+            }
+            params.add(new Parameter(W));
+            params.add(new Parameter(Matrix.zeros(1, out)));
+        }
+        this.parameters = Collections.unmodifiableList(params);
+        this.activations = new double[this.numLayers + 1][];
+    }
+
+    public int getInputSize() {
+        return this.sizes[0];
+    }
+
+    public int getOutputSize() {
+        return this.sizes[this.numLayers];
+    }
+
+    // Run forward / backward in float32 with these kernels (e.g. DenseKernels.get()), null = double loops.
+    public void setKernels(DenseKernels kernels) {
+        this.kernels = kernels;
+        if (kernels != null && this.weights32 == null) {
+            this.weights32 = new float[this.numLayers][];
+            this.biases32 = new float[this.numLayers][];
+            this.weightGrads32 = new float[this.numLayers][];
+            this.biasGrads32 = new float[this.numLayers][];
+            for (int l = 0; l < this.numLayers; l++) {
+                this.weights32[l] = new float[this.weights[l].length];
+                this.biases32[l] = new float[this.biases[l].length];
+                this.weightGrads32[l] = new float[this.weights[l].length];
+                this.biasGrads32[l] = new float[this.biases[l].length];
+            }
+            this.activations32 = new float[this.numLayers + 1][];
+        }
+        this.weights32Stale = true;
+        this.capacity = 0; // reallocate the batch buffers for the new path
+        this.lastInput = null;
+    }
+
+    public DenseKernels getKernels() {
+        return this.kernels;
+    }
+
+    // ---------------------------------------------------------------- Model API
+
+    @Override
+    public List<Parameter> getParameters() {
+        this.pushParameters();
+        this.paramsMayHaveChanged = true;
+        return this.parameters;
+    }
+
+    @Override
+    public Matrix forward(Matrix X) throws Exception {
+        int n = X.getShape().getNumRows();
+        this.pullParameters();
+        this.loadInput(X, n);
+        this.forwardFlat(n);
+        this.lastInput = X;
+        this.lastRows = n;
+
+        int outSize = this.getOutputSize();
+        double[] out = this.activations[this.numLayers];
+        Matrix Y = Matrix.zeros(n, outSize);
+        for (int r = 0; r < n; r++) {
+            for (int j = 0; j < outSize; j++) {
+                Y.set(r, j, out[r * outSize + j]);
+            }
+        }
+        return Y;
+    }
+
+    // Like Sequential: adds dLoss/dParam to the Parameters' gradients and returns dLoss/dX. Uses the
+    // activations of the last forward if it was on the same X, otherwise redoes the forward pass.
+    @Override
+    public Matrix backwards(Matrix X, Matrix dLoss_dModule) throws Exception {
+        int n = X.getShape().getNumRows();
+        this.pushParameters(); // the optimizer that follows steps the Parameters, not the flat copy
+        this.pullParameters();
+        if (X != this.lastInput || n != this.lastRows) {
+            this.loadInput(X, n);
+            this.forwardFlat(n);
+        }
+
+        int outSize = this.getOutputSize();
+        double[] dLoss = this.dLossBuffer;
+        for (int r = 0; r < n; r++) {
+            for (int j = 0; j < outSize; j++) {
+                dLoss[r * outSize + j] = dLoss_dModule.get(r, j);
+            }
+        }
+        double[] dX = this.backwardFlat(n, dLoss, true);
+
+        for (int l = 0; l < this.numLayers; l++) {
+            addGradient(this.parameters.get(2 * l), this.weightGrads[l], this.sizes[l], this.sizes[l + 1]);
+            addGradient(this.parameters.get(2 * l + 1), this.biasGrads[l], 1, this.sizes[l + 1]);
+        }
+        // an optimizer step comes next and changes the Parameters behind our back
+        this.paramsMayHaveChanged = true;
+        this.lastInput = null;
+
+        int inSize = this.sizes[0];
+        Matrix dLossdX = Matrix.zeros(n, inSize);
+        for (int r = 0; r < n; r++) {
+            for (int i = 0; i < inSize; i++) {
+                dLossdX.set(r, i, dX[r * inSize + i]);
+            }
+        }
+        return dLossdX;
+    }
+
+    // Same text format as Sequential (one Parameter per line), so the files load into either model.
+    @Override
+    public void save(String filePath) {
+        this.pushParameters();
+        try (PrintWriter writer = new PrintWriter(filePath)) {
+            for (Parameter p : this.parameters) {
+                writer.println(p.toStringData());
+            }
+        } catch (IOException e) {
+            System.err.println("FastMLP.save: could not write " + filePath + ": " + e.getMessage());
+        }
+    }
+
+    @Override
+    public void load(String filePath) throws Exception {
+        if (Checkpoint.isCheckpoint(filePath)) {
+            Checkpoint checkpoint = Checkpoint.load(filePath);
+            checkpoint.applyTo(this);
+            this.loadedCheckpoint = checkpoint;
+        } else {
+            this.pushParameters();
+            try (BufferedReader reader = new BufferedReader(new FileReader(filePath))) {
+                for (Parameter p : this.parameters) {
+                    String line = reader.readLine();
+                    if (line == null) {
+                        throw new IOException("FastMLP.load: " + filePath + " has fewer than "
+                                + this.parameters.size() + " parameters");
+                    }
+                    p.loadStringData(line);
+                }
+            }
+            this.loadedCheckpoint = null;
+        }
+        this.paramsMayHaveChanged = true;
+    }
+
+    @Override
+    public Checkpoint getLoadedCheckpoint() {
+        return this.loadedCheckpoint;
+    }
+
+    // ---------------------------------------------------------------- fused training
+
+    public void setAdam(double lr, double beta1, double beta2) {
+        this.lr = lr;
+        this.beta1 = beta1;
+        this.beta2 = beta2;
+    }
+
+    // One Adam step on the MeanSquaredError loss of (X, Y) (dLoss/dYHat = (YHat - Y) / N, like the framework
+    // loss). Returns the loss (1 / 2N) * sum ||yHat - y||^2 of the batch before the step.
+    public double trainStep(Matrix X, Matrix Y) {
+        int n = X.getShape().getNumRows();
+        this.pullParameters();
+        this.loadInput(X, n);
+        this.forwardFlat(n);
+
+        int outSize = this.getOutputSize();
+        double[] out = this.activations[this.numLayers];
+        double[] dLoss = this.dLossBuffer;
+        double loss = 0.0;
+        for (int r = 0; r < n; r++) {
+            for (int j = 0; j < outSize; j++) {
+                int k = r * outSize + j;
+                double diff = out[k] - Y.get(r, j);
+                loss += diff * diff;
+                dLoss[k] = diff / n;
+            }
+        }
+        this.backwardFlat(n, dLoss, false);
+        this.adamUpdate();
+        return loss / (2.0 * n);
+    }
+
+    // One Adam step on the importance-weighted loss mean(w * (yHat - y)^2) of a single-output network (what
+    // PER uses). tdErrorsOut[i] gets y[i] - yHat[i] from before the step.
+    public void trainStepWeighted(Matrix X, double[] y, double[] sampleWeights, double[] tdErrorsOut) {
+        int n = X.getShape().getNumRows();
+        this.pullParameters();
+        this.loadInput(X, n);
+        this.forwardFlat(n);
+
+        double[] out = this.activations[this.numLayers];
+        double[] dLoss = this.dLossBuffer;
+        for (int r = 0; r < n; r++) {
+            double td = y[r] - out[r];
+            tdErrorsOut[r] = td;
+            dLoss[r] = -2.0 * sampleWeights[r] * td / n;
+        }
+        this.backwardFlat(n, dLoss, false);
+        this.adamUpdate();
+    }
+
+    // Adam moments for checkpoints, one matrix per Parameter in getParameters() order.
+    public List<Matrix> copyMTs() {
+        return this.momentsToMatrices(this.weightMs, this.biasMs);
+    }
+
+    public List<Matrix> copyVTs() {
+        return this.momentsToMatrices(this.weightVs, this.biasVs);
+    }
+
+    // Adam steps taken so far (drives the bias correction), saved with the moments.
+    public long getAdamStep() {
+        return this.adamStep;
+    }
+
+    // adamStep is the step count saved with the moments, -1 if the checkpoint didn't have it.
+    public void restoreMoments(List<Matrix> mts, List<Matrix> vts, long adamStep) {
+        if (mts.size() != this.parameters.size() || vts.size() != this.parameters.size()) {
+            throw new IllegalArgumentException("FastMLP.restoreMoments: expected " + this.parameters.size()
+                    + " moments, got " + mts.size() + " and " + vts.size());
+        }
+        for (int l = 0; l < this.numLayers; l++) {
+            readMatrix(mts.get(2 * l), this.weightMs[l], this.sizes[l], this.sizes[l + 1]);
+            readMatrix(mts.get(2 * l + 1), this.biasMs[l], 1, this.sizes[l + 1]);
+            readMatrix(vts.get(2 * l), this.weightVs[l], this.sizes[l], this.sizes[l + 1]);
+            readMatrix(vts.get(2 * l + 1), this.biasVs[l], 1, this.sizes[l + 1]);
+        }
+        // without the saved count (old checkpoints) the moments are still warm, so skip the bias correction
+        this.adamStep = (adamStep >= 0) ? adamStep : WARM_ADAM_STEP;
+    }
+
+    private static final long WARM_ADAM_STEP = 1L << 20;
+
+    // ---------------------------------------------------------------- kernels
+
+    private void ensureCapacity(int n) {
+        if (n <= this.capacity) {
+            return;
+        }
+        int maxWidth = 0;
+        for (int l = 0; l <= this.numLayers; l++) {
+            this.activations[l] = new double[n * this.sizes[l]];
+            maxWidth = Math.max(maxWidth, this.sizes[l]);
+        }
+        this.delta = new double[n * maxWidth];
+        this.deltaPrev = new double[n * maxWidth];
+        this.dLossBuffer = new double[n * this.getOutputSize()];
+        if (this.kernels != null) {
+            for (int l = 0; l <= this.numLayers; l++) {
+                this.activations32[l] = new float[n * this.sizes[l]];
+            }
+            this.delta32 = new float[n * maxWidth];
+            this.deltaPrev32 = new float[n * maxWidth];
+        }
+        this.capacity = n;
+    }
+
+    private void loadInput(Matrix X, int n) {
+        int inSize = this.sizes[0];
+        if (X.getShape().getNumCols() != inSize) {
+            throw new IllegalArgumentException("FastMLP: expected " + inSize + " input columns, got "
+                    + X.getShape().getNumCols());
+        }
+        this.ensureCapacity(n);
+        if (this.kernels != null) {
+            float[] in32 = this.activations32[0];
+            for (int r = 0; r < n; r++) {
+                int row = r * inSize;
+                for (int i = 0; i < inSize; i++) {
+                    in32[row + i] = (float) X.get(r, i);
+                }
+            }
+            return;
+        }
+        double[] in = this.activations[0];
+        for (int r = 0; r < n; r++) {
+            int row = r * inSize;
+            for (int i = 0; i < inSize; i++) {
+                in[row + i] = X.get(r, i);
+            }
+        }
+    }
+
+    private void forwardFlat(int n) {
+        if (this.kernels != null) {
+            this.forwardFloat(n);
+            return;
+        }
+        for (int l = 0; l < this.numLayers; l++) {
+            int inSize = this.sizes[l];
+            int outSize = this.sizes[l + 1];
+            double[] in = this.activations[l];
+            double[] out = this.activations[l + 1];
+            double[] W = this.weights[l];
+            double[] b = this.biases[l];
+            boolean relu = l < this.numLayers - 1;
+            for (int r = 0; r < n; r++) {
+                int outRow = r * outSize;
+                System.arraycopy(b, 0, out, outRow, outSize);
+                int inRow = r * inSize;
+                for (int i = 0; i < inSize; i++) {
+                    double a = in[inRow + i];
+                    if (a == 0.0) {
+                        continue; // one-hot features and dead ReLUs
+                    }
+                    int wRow = i * outSize;
+                    for (int j = 0; j < outSize; j++) {
+                        out[outRow + j] += a * W[wRow + j];
+                    }
+                }
+                if (relu) {
+                    for (int j = 0; j < outSize; j++) {
+                        if (out[outRow + j] < 0.0) {
+                            out[outRow + j] = 0.0;
+                        }
+                    }
+                }
+            }
+        }
+    }
+
+    // Fills weightGrads / biasGrads from dLoss/dOutput (n rows). Returns dLoss/dInput (n x sizes[0], valid
+    // until the next call) if wantInputGrad, otherwise skips that last product and returns null.
+    private double[] backwardFlat(int n, double[] dLoss, boolean wantInputGrad) {
+        if (this.kernels != null) {
+            return this.backwardFloat(n, dLoss, wantInputGrad);
+        }
+        double[] d = this.delta;
+        System.arraycopy(dLoss, 0, d, 0, n * this.getOutputSize());
+        for (int l = this.numLayers - 1; l >= 0; l--) {
+            int inSize = this.sizes[l];
+            int outSize = this.sizes[l + 1];
+            double[] in = this.activations[l];
+            double[] W = this.weights[l];
+            double[] gW = this.weightGrads[l];
+            double[] gb = this.biasGrads[l];
+            Arrays.fill(gW, 0.0);
+            Arrays.fill(gb, 0.0);
+
+            // dW = in^T * d, db = column sums of d
+            for (int r = 0; r < n; r++) {
+                int dRow = r * outSize;
+                for (int j = 0; j < outSize; j++) {
+                    gb[j] += d[dRow + j];
+                }
+                int inRow = r * inSize;
+                for (int i = 0; i < inSize; i++) {
+                    double a = in[inRow + i];
+                    if (a == 0.0) {
+                        continue;
+                    }
+                    int wRow = i * outSize;
+                    for (int j = 0; j < outSize; j++) {
+                        gW[wRow + j] += a * d[dRow + j];
+                    }
+                }
+            }
+
+            if (l == 0 && !wantInputGrad) {
+                return null;
+            }
+            // dIn = d * W^T, through the ReLU of the layer below (in > 0) unless in is the network input
+            double[] dIn = this.deltaPrev;
+            for (int r = 0; r < n; r++) {
+                int dRow = r * outSize;
+                int inRow = r * inSize;
+                for (int i = 0; i < inSize; i++) {
+                    if (l > 0 && in[inRow + i] <= 0.0) {
+                        dIn[inRow + i] = 0.0;
+                        continue;
+                    }
+                    int wRow = i * outSize;
+                    double sum = 0.0;
+                    for (int j = 0; j < outSize; j++) {
+                        sum += d[dRow + j] * W[wRow + j];
+                    }
+                    dIn[inRow + i] = sum;
+                }
+            }
+            this.deltaPrev = d;
+            this.delta = dIn;
+            d = dIn;
+        }
+        return d;
+    }
+
+    // forwardFlat in float32, the network output is widened into activations[numLayers]
+    private void forwardFloat(int n) {
+        this.refreshWeights32();
+        for (int l = 0; l < this.numLayers; l++) {
+            this.kernels.forward(this.activations32[l], n, this.sizes[l], this.weights32[l], this.biases32[l],
+                    this.sizes[l + 1], this.activations32[l + 1], l < this.numLayers - 1);
+        }
+        float[] out32 = this.activations32[this.numLayers];
+        double[] out = this.activations[this.numLayers];
+        for (int k = n * this.getOutputSize() - 1; k >= 0; k--) {
+            out[k] = out32[k];
+        }
+    }
+
+    // backwardFlat in float32, gradients are widened into weightGrads / biasGrads for Adam and the Parameters
+    private double[] backwardFloat(int n, double[] dLoss, boolean wantInputGrad) {
+        float[] d = this.delta32;
+        for (int k = n * this.getOutputSize() - 1; k >= 0; k--) {
+            d[k] = (float) dLoss[k];
+        }
+        for (int l = this.numLayers - 1; l >= 0; l--) {
+            int inSize = this.sizes[l];
+            int outSize = this.sizes[l + 1];
+            float[] gW = this.weightGrads32[l];
+            float[] gb = this.biasGrads32[l];
+            Arrays.fill(gW, 0.0f);
+            Arrays.fill(gb, 0.0f);
+            this.kernels.weightGrad(this.activations32[l], d, n, inSize, outSize, gW, gb);
+            widen(gW, this.weightGrads[l], gW.length);
+            widen(gb, this.biasGrads[l], gb.length);
+
+            if (l == 0 && !wantInputGrad) {
+                return null;
+            }
+            float[] dIn = this.deltaPrev32;
+            this.kernels.inputGrad(d, this.weights32[l], n, inSize, outSize, this.activations32[l], l > 0, dIn);
+            this.deltaPrev32 = d;
+            this.delta32 = dIn;
+            d = dIn;
+        }
+        widen(d, this.delta, n * this.sizes[0]);
+        return this.delta;
+    }
+
+    private void refreshWeights32() {
+        if (!this.weights32Stale) {
+            return;
+        }
+        for (int l = 0; l < this.numLayers; l++) {
+            narrow(this.weights[l], this.weights32[l]);
+            narrow(this.biases[l], this.biases32[l]);
+        }
+        this.weights32Stale = false;
+    }
+
+    private static void narrow(double[] src, float[] dst) {
+        for (int k = 0; k < src.length; k++) {
+            dst[k] = (float) src[k];
+        }
+    }
+
+    private static void widen(float[] src, double[] dst, int len) {
+        for (int k = 0; k < len; k++) {
+            dst[k] = src[k];
+        }
+    }
+
+    private void adamUpdate() {
+        this.adamStep++;
+        double correction1 = 1.0 - Math.pow(this.beta1, this.adamStep);
+        double correction2 = 1.0 - Math.pow(this.beta2, this.adamStep);
+        for (int l = 0; l < this.numLayers; l++) {
+            adamUpdate(this.weights[l], this.weightGrads[l], this.weightMs[l], this.weightVs[l], correction1,
+                    correction2);
+            adamUpdate(this.biases[l], this.biasGrads[l], this.biasMs[l], this.biasVs[l], correction1, correction2);
+        }
+        this.flatChanged = true;
+        this.weights32Stale = true;
+    }
+
+    private void adamUpdate(double[] theta, double[] grad, double[] m, double[] v, double correction1,
+            double correction2) {
+        double b1 = this.beta1;
+        double b2 = this.beta2;
+        for (int k = 0; k < theta.length; k++) {
+            double g = grad[k];
+            m[k] = b1 * m[k] + (1.0 - b1) * g;
+            v[k] = b2 * v[k] + (1.0 - b2) * g * g;
+            double mHat = m[k] / correction1;
+            double vHat = v[k] / correction2;
+            theta[k] -= this.lr * mHat / (Math.sqrt(vHat) + AdamOptimizer.EPSILON);
+        }
+    }
+
+    // ---------------------------------------------------------------- Parameter <-> flat
+
+    private void pullParameters() {
+        if (!this.paramsMayHaveChanged) {
+            return;
+        }
+        for (int l = 0; l < this.numLayers; l++) {
+            readMatrix(this.parameters.get(2 * l).getValue(), this.weights[l], this.sizes[l], this.sizes[l + 1]);
+            readMatrix(this.parameters.get(2 * l + 1).getValue(), this.biases[l], 1, this.sizes[l + 1]);
+        }
+        this.paramsMayHaveChanged = false;
+        this.weights32Stale = true;
+    }
+
+    private void pushParameters() {
+        if (!this.flatChanged) {
+            return;
+        }
+        for (int l = 0; l < this.numLayers; l++) {
+            writeMatrix(this.weights[l], this.parameters.get(2 * l).getValue(), this.sizes[l], this.sizes[l + 1]);
+            writeMatrix(this.biases[l], this.parameters.get(2 * l + 1).getValue(), 1, this.sizes[l + 1]);
+        }
+        this.flatChanged = false;
+    }
+
+    private List<Matrix> momentsToMatrices(double[][] weightMoments, double[][] biasMoments) {
+        List<Matrix> moments = new ArrayList<Matrix>(this.parameters.size());
+        for (int l = 0; l < this.numLayers; l++) {
+            Matrix W = Matrix.zeros(this.sizes[l], this.sizes[l + 1]);
+            writeMatrix(weightMoments[l], W, this.sizes[l], this.sizes[l + 1]);
+            Matrix b = Matrix.zeros(1, this.sizes[l + 1]);
+            writeMatrix(biasMoments[l], b, 1, this.sizes[l + 1]);
+            moments.add(W);
+            moments.add(b);
+        }
+        return moments;
+    }
+
+    // Parameter.getGradient is null (or zeros) after an optimizer reset, so accumulate like Dense does.
+    private static void addGradient(Parameter p, double[] grad, int rows, int cols) {
+        Matrix g = p.getGradient();
+        if (g == null) {
+            g = Matrix.zeros(rows, cols);
+            writeMatrix(grad, g, rows, cols);
+        } else {
+            for (int r = 0; r < rows; r++) {
+                for (int c = 0; c < cols; c++) {
+                    g.set(r, c, g.get(r, c) + grad[r * cols + c]);
+                }
+            }
+        }
+        p.setGradient(g);
+    }
+
+    private static void readMatrix(Matrix src, double[] dst, int rows, int cols) {
+        if (src.getShape().getNumRows() != rows || src.getShape().getNumCols() != cols) {
+            throw new IllegalArgumentException("FastMLP: expected a (" + rows + "," + cols + ") matrix, got "
+                    + src.getShape());
+        }
+        for (int r = 0; r < rows; r++) {
+            for (int c = 0; c < cols; c++) {
+                dst[r * cols + c] = src.get(r, c);
+            }
+        }
+    }
+
+    private static void writeMatrix(double[] src, Matrix dst, int rows, int cols) {
+        for (int r = 0; r < rows; r++) {
+            for (int c = 0; c < cols; c++) {
+                dst.set(r, c, src[r * cols + c]);
+            }
+        }
+    }
+}
@@ -0,0 +1,276 @@
+package src.pas.pokemon.nn;
+
+// SYSTEM IMPORTS
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+// JAVA PROJECT IMPORTS
+import edu.bu.pas.pokemon.linalg.Matrix;
+import edu.bu.pas.pokemon.nn.Model;
+import edu.bu.pas.pokemon.nn.Parameter;
+
+// Inference-only int8 copy of a Dense -> ReLU -> ... -> Dense network (FastMLP or the Sequential from
+// PolicyAgent.initModel). Every weight matrix is stored as bytes with a scale per layer and output column
+// (w[i][j] ~= scale[j] * q[i][j], q in [-127, 127], scale[j] = max_i |w[i][j]| / 127), which costs nothing
+// at inference but keeps small hidden units from being rounded away by one large weight elsewhere in the
+// layer. Biases stay float since there are few of them. Activations are float and each layer computes
+// out[j] = b[j] + scale[j] * (in * Q)[j], so the only rounding is the weights' and the float accumulation.
+// The layers run on DenseKernels.forwardQuantized, which widens the int8 weights inside SIMD registers when
+// the vector kernels are available (see DenseKernels.get()).
+//
+// File layout (big-endian): long MAGIC, int VERSION, int numLayers, (numLayers + 1) ints sizes, then per
+// layer: out floats scale, in*out bytes (row-major), out floats bias.
+//
+// backwards() isn't supported. getParameters() hands out dequantized copies, writing to them changes nothing.
+// Not thread-safe (forward reuses its buffers).
+public class QuantizedMLP extends Model {
+
+    public static final long MAGIC = 0x504B51494E543038L; // "PKQINT08"
+    public static final int VERSION = 1;
+
+    private int[] sizes;
+    private int numLayers;
+    private byte[][] weights; // layer l: sizes[l] x sizes[l + 1], row-major
+    private float[][] scales; // layer l: one per output column
+    private float[][] biases;
+
+    private DenseKernels kernels = DenseKernels.get();
+
+    // forward buffers, grown to the largest batch seen
+    private int capacity = 0;
+    private float[][] activations;
+
+    private QuantizedMLP(int[] sizes, byte[][] weights, float[][] scales, float[][] biases) {
+        this.set(sizes, weights, scales, biases);
+    }
+
+    // Quantize the current weights of model, which must be W1, b1, W2, b2, ... with ReLUs in between.
+    public static QuantizedMLP quantize(Model model) {
+        List<Parameter> params = model.getParameters();
+        if (params.size() < 2 || params.size() % 2 != 0) {
+            throw new IllegalArgumentException("QuantizedMLP.quantize: expected (W, b) pairs, got "
+                    + params.size() + " parameters");
+        }
+        int numLayers = params.size() / 2;
+        int[] sizes = new int[numLayers + 1];
+        byte[][] weights = new byte[numLayers][];
+        float[][] scales = new float[numLayers][];
+        float[][] biases = new float[numLayers][];
+        for (int l = 0; l < numLayers; l++) {
+            Matrix W = params.get(2 * l).getValue();
+            Matrix b = params.get(2 * l + 1).getValue();
+            int in = W.getShape().getNumRows();
+            int out = W.getShape().getNumCols();
+            if (l > 0 && in != sizes[l]) {
+                throw new IllegalArgumentException("QuantizedMLP.quantize: layer " + l + " takes " + in
+                        + " inputs but the previous layer has " + sizes[l] + " outputs");
+            }
+            sizes[l] = in;
+            sizes[l + 1] = out;
+
+            weights[l] = new byte[in * out];
+            scales[l] = new float[out];
+            for (int j = 0; j < out; j++) {
+                double maxAbs = 0.0;
+                for (int i = 0; i < in; i++) {
+                    maxAbs = Math.max(maxAbs, Math.abs(W.get(i, j)));
+                }
+                double scale = (maxAbs > 0.0) ? maxAbs / 127.0 : 1.0;
+                for (int i = 0; i < in; i++) {
+                    long q = Math.round(W.get(i, j) / scale);
+                    weights[l][i * out + j] = (byte) Math.max(-127, Math.min(127, q));
+                }
+                scales[l][j] = (float) scale;
+            }
+            biases[l] = new float[out];
+            for (int j = 0; j < out; j++) {
+                biases[l][j] = (float) b.get(0, j);
+            }
+        }
+        return new QuantizedMLP(sizes, weights, scales, biases);
+    }
+
+    public static QuantizedMLP read(String filePath) throws IOException {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(filePath)))) {
+            if (in.readLong() != MAGIC) {
+                throw new IOException("QuantizedMLP.read: " + filePath + " is not a quantized model");
+            }
+            int version = in.readInt();
+            if (version != VERSION) {
+                throw new IOException("QuantizedMLP.read: unsupported version " + version + " in " + filePath);
+            }
+            int numLayers = in.readInt();
+            int[] sizes = new int[numLayers + 1];
+            for (int l = 0; l <= numLayers; l++) {
+                sizes[l] = in.readInt();
+            }
+            byte[][] weights = new byte[numLayers][];
+            float[][] scales = new float[numLayers][];
+            float[][] biases = new float[numLayers][];
+            for (int l = 0; l < numLayers; l++) {
+                scales[l] = new float[sizes[l + 1]];
+                for (int j = 0; j < sizes[l + 1]; j++) {
+                    scales[l][j] = in.readFloat();
+                }
+                weights[l] = new byte[sizes[l] * sizes[l + 1]];
+                in.readFully(weights[l]);
+                biases[l] = new float[sizes[l + 1]];
+                for (int j = 0; j < sizes[l + 1]; j++) {
+                    biases[l][j] = in.readFloat();
+                }
+            }
+            return new QuantizedMLP(sizes, weights, scales, biases);
+        }
+    }
+
+    public static boolean isQuantized(String filePath) {
+        try (DataInputStream in = new DataInputStream(new FileInputStream(filePath))) {
+            return in.readLong() == MAGIC;
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    public int getInputSize() {
+        return this.sizes[0];
+    }
+
+    public int getNumLayers() {
+        return this.numLayers;
+    }
+
+    public float[] getScales(int layer) {
+        return this.scales[layer].clone();
+    }
+
+    // e.g. DenseKernels.scalar() to compare against the SIMD path.
+    public void setKernels(DenseKernels kernels) {
+        this.kernels = kernels;
+    }
+
+    public DenseKernels getKernels() {
+        return this.kernels;
+    }
+
+    @Override
+    public Matrix forward(Matrix X) throws Exception {
+        int n = X.getShape().getNumRows();
+        int inSize = this.sizes[0];
+        if (X.getShape().getNumCols() != inSize) {
+            throw new IllegalArgumentException("QuantizedMLP: expected " + inSize + " input columns, got "
+                    + X.getShape().getNumCols());
+        }
+        this.ensureCapacity(n);
+        float[] input = this.activations[0];
+        for (int r = 0; r < n; r++) {
+            for (int i = 0; i < inSize; i++) {
+                input[r * inSize + i] = (float) X.get(r, i);
+            }
+        }
+
+        for (int l = 0; l < this.numLayers; l++) {
+            this.kernels.forwardQuantized(this.activations[l], n, this.sizes[l], this.weights[l], this.scales[l],
+                    this.biases[l], this.sizes[l + 1], this.activations[l + 1], l < this.numLayers - 1);
+        }
+
+        int outSize = this.sizes[this.numLayers];
+        float[] out = this.activations[this.numLayers];
+        Matrix Y = Matrix.zeros(n, outSize);
+        for (int r = 0; r < n; r++) {
+            for (int j = 0; j < outSize; j++) {
+                Y.set(r, j, out[r * outSize + j]);
+            }
+        }
+        return Y;
+    }
+
+    @Override
+    public Matrix backwards(Matrix X, Matrix dLoss_dModule) throws Exception {
+        throw new UnsupportedOperationException("QuantizedMLP is inference-only, train the full model");
+    }
+
+    @Override
+    public List<Parameter> getParameters() {
+        List<Parameter> params = new ArrayList<Parameter>(2 * this.numLayers);
+        for (int l = 0; l < this.numLayers; l++) {
+            int in = this.sizes[l];
+            int out = this.sizes[l + 1];
+            Matrix W = Matrix.zeros(in, out);
+            for (int i = 0; i < in; i++) {
+                for (int j = 0; j < out; j++) {
+                    W.set(i, j, this.scales[l][j] * this.weights[l][i * out + j]);
+                }
+            }
+            Matrix b = Matrix.zeros(1, out);
+            for (int j = 0; j < out; j++) {
+                b.set(0, j, this.biases[l][j]);
+            }
+            params.add(new Parameter(W));
+            params.add(new Parameter(b));
+        }
+        return params;
+    }
+
+    @Override
+    public void save(String filePath) {
+        try {
+            this.write(filePath);
+        } catch (IOException e) {
+            System.err.println("QuantizedMLP.save: could not write " + filePath + ": " + e.getMessage());
+        }
+    }
+
+    public void write(String filePath) throws IOException {
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(filePath)))) {
+            out.writeLong(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(this.numLayers);
+            for (int size : this.sizes) {
+                out.writeInt(size);
+            }
+            for (int l = 0; l < this.numLayers; l++) {
+                for (float scale : this.scales[l]) {
+                    out.writeFloat(scale);
+                }
+                out.write(this.weights[l]);
+                for (float bias : this.biases[l]) {
+                    out.writeFloat(bias);
+                }
+            }
+        }
+    }
+
+    // Replaces this network (architecture included) with the one in filePath.
+    @Override
+    public void load(String filePath) throws Exception {
+        QuantizedMLP other = read(filePath);
+        this.set(other.sizes, other.weights, other.scales, other.biases);
+    }
+
+    private void set(int[] sizes, byte[][] weights, float[][] scales, float[][] biases) {
+        this.sizes = sizes;
+        this.numLayers = sizes.length - 1;
+        this.weights = weights;
+        this.scales = scales;
+        this.biases = biases;
+        this.activations = new float[this.numLayers + 1][];
+        this.capacity = 0;
+    }
+
+    private void ensureCapacity(int n) {
+        if (n <= this.capacity) {
+            return;
+        }
+        for (int l = 0; l <= this.numLayers; l++) {
+            this.activations[l] = new float[n * this.sizes[l]];
+        }
+        this.capacity = n;
+    }
+}
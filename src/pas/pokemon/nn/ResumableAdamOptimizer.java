@@ -0,0 +1,66 @@
+package src.pas.pokemon.nn;
+
+// SYSTEM IMPORTS
+import java.util.ArrayList;
+import java.util.List;
+
+// JAVA PROJECT IMPORTS
+import edu.bu.pas.pokemon.linalg.Matrix;
+import edu.bu.pas.pokemon.nn.Parameter;
+import edu.bu.pas.pokemon.nn.optimizers.AdamOptimizer;
+
+// AdamOptimizer whose moment estimates can be saved and restored, so a resumed run doesn't restart Adam cold.
+// The framework doesn't expose its own step count, so the steps are counted here and checkpointed with the
+// moments; restoring the count keeps getNumSteps() continuous across a resume.
+public class ResumableAdamOptimizer extends AdamOptimizer {
+
+    private long numSteps;
+
+    public ResumableAdamOptimizer(List<Parameter> parameters, double lr, double beta1, double beta2) {
+        super(parameters, lr, beta1, beta2);
+        this.numSteps = 0L;
+    }
+
+    public void step() throws Exception {
+        super.step();
+        this.numSteps++;
+    }
+
+    public long getNumSteps() {
+        return this.numSteps;
+    }
+
+    // Copies of the current first / second moment estimates (one matrix per parameter), null if Adam
+    // hasn't set them up yet.
+    public List<Matrix> copyMTs() {
+        return copyAll(this.getMTs());
+    }
+
+    public List<Matrix> copyVTs() {
+        return copyAll(this.getVTs());
+    }
+
+    // numSteps is the step count saved with the moments, -1 if the checkpoint didn't have it.
+    public void restoreMoments(List<Matrix> mts, List<Matrix> vts, long numSteps) {
+        if (mts.size() != this.getParameters().size() || vts.size() != this.getParameters().size()) {
+            throw new IllegalArgumentException("ResumableAdamOptimizer.restoreMoments: expected "
+                    + this.getParameters().size() + " moments, got " + mts.size() + " and " + vts.size());
+        }
+        this.setMTs(copyAll(mts));
+        this.setVTs(copyAll(vts));
+        if (numSteps >= 0) {
+            this.numSteps = numSteps;
+        }
+    }
+
+    private static List<Matrix> copyAll(List<Matrix> src) {
+        if (src == null) {
+            return null;
+        }
+        List<Matrix> dst = new ArrayList<Matrix>(src.size());
+        for (Matrix m : src) {
+            dst.add(m.copy());
+        }
+        return dst;
+    }
+}
@@ -0,0 +1,111 @@
+package src.pas.pokemon.nn;
+
+// SYSTEM IMPORTS
+import java.util.Arrays;
+
+// JAVA PROJECT IMPORTS
+
+// Plain-loop DenseKernels, the fallback when jdk.incubator.vector isn't available. Same loop order as the
+// double path in FastMLP (rows outer, axpy over the output columns inner).
+public class ScalarDenseKernels extends DenseKernels {
+
+    public static final ScalarDenseKernels INSTANCE = new ScalarDenseKernels();
+
+    @Override
+    public void forward(float[] in, int n, int inSize, float[] W, float[] b, int outSize, float[] out,
+            boolean relu) {
+        for (int r = 0; r < n; r++) {
+            int outRow = r * outSize;
+            System.arraycopy(b, 0, out, outRow, outSize);
+            int inRow = r * inSize;
+            for (int i = 0; i < inSize; i++) {
+                float a = in[inRow + i];
+                if (a == 0.0f) {
+                    continue;
+                }
+                int wRow = i * outSize;
+                for (int j = 0; j < outSize; j++) {
+                    out[outRow + j] += a * W[wRow + j];
+                }
+            }
+            if (relu) {
+                for (int j = 0; j < outSize; j++) {
+                    if (out[outRow + j] < 0.0f) {
+                        out[outRow + j] = 0.0f;
+                    }
+                }
+            }
+        }
+    }
+
+    @Override
+    public void forwardQuantized(float[] in, int n, int inSize, byte[] Q, float[] scale, float[] b, int outSize,
+            float[] out, boolean relu) {
+        for (int r = 0; r < n; r++) {
+            int outRow = r * outSize;
+            Arrays.fill(out, outRow, outRow + outSize, 0.0f);
+            int inRow = r * inSize;
+            for (int i = 0; i < inSize; i++) {
+                float a = in[inRow + i];
+                if (a == 0.0f) {
+                    continue;
+                }
+                int qRow = i * outSize;
+                for (int j = 0; j < outSize; j++) {
+                    out[outRow + j] += a * Q[qRow + j];
+                }
+            }
+            for (int j = 0; j < outSize; j++) {
+                float v = b[j] + scale[j] * out[outRow + j];
+                out[outRow + j] = (relu && v < 0.0f) ? 0.0f : v;
+            }
+        }
+    }
+
+    @Override
+    public void weightGrad(float[] in, float[] d, int n, int inSize, int outSize, float[] gW, float[] gb) {
+        for (int r = 0; r < n; r++) {
+            int dRow = r * outSize;
+            for (int j = 0; j < outSize; j++) {
+                gb[j] += d[dRow + j];
+            }
+            int inRow = r * inSize;
+            for (int i = 0; i < inSize; i++) {
+                float a = in[inRow + i];
+                if (a == 0.0f) {
+                    continue;
+                }
+                int wRow = i * outSize;
+                for (int j = 0; j < outSize; j++) {
+                    gW[wRow + j] += a * d[dRow + j];
+                }
+            }
+        }
+    }
+
+    @Override
+    public void inputGrad(float[] d, float[] W, int n, int inSize, int outSize, float[] in, boolean reluMask,
+            float[] dIn) {
+        for (int r = 0; r < n; r++) {
+            int dRow = r * outSize;
+            int inRow = r * inSize;
+            for (int i = 0; i < inSize; i++) {
+                if (reluMask && in[inRow + i] <= 0.0f) {
+                    dIn[inRow + i] = 0.0f;
+                    continue;
+                }
+                int wRow = i * outSize;
+                float sum = 0.0f;
+                for (int j = 0; j < outSize; j++) {
+                    sum += d[dRow + j] * W[wRow + j];
+                }
+                dIn[inRow + i] = sum;
+            }
+        }
+    }
+
+    @Override
+    public String getName() {
+        return "scalar";
+    }
+}
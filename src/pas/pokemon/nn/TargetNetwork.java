@@ -0,0 +1,75 @@
+package src.pas.pokemon.nn;
+
+// SYSTEM IMPORTS
+import java.util.IdentityHashMap;
+import java.util.Map;
+
+// JAVA PROJECT IMPORTS
+import edu.bu.pas.pokemon.core.Battle.BattleView;
+import edu.bu.pas.pokemon.nn.Model;
+import src.pas.pokemon.utils.ModelUtils;
+
+// Frozen copy of the Q-network used for the bootstrap part of the TD target.
+// The snapshot is refreshed from the online network every refreshEvery updates (an "update" being one
+// ground-truth construction). Every refresh bumps the version, and anything computed with the snapshot
+// (like the max-Q values cached here) is only valid for that version.
+public class TargetNetwork {
+
+    private final Model online;
+    private final Model snapshot;
+    private final int refreshEvery;
+
+    private int numUpdates;
+    private int version;
+
+    // max_a' Q_target(s', a') per next-state view, cleared on every refresh.
+    private final Map<BattleView, Double> maxQCache;
+
+    // snapshot must have the same architecture as online (e.g. another initModel() call).
+    public TargetNetwork(Model online, Model snapshot, int refreshEvery) {
+        this.online = online;
+        this.snapshot = snapshot;
+        this.refreshEvery = Math.max(1, refreshEvery);
+        this.numUpdates = 0;
+        this.version = 0;
+        this.maxQCache = new IdentityHashMap<BattleView, Double>();
+        this.refresh();
+    }
+
+    public Model getModel() {
+        return this.snapshot;
+    }
+
+    public int getVersion() {
+        return this.version;
+    }
+
+    public int getRefreshEvery() {
+        return this.refreshEvery;
+    }
+
+    // Call once per update, before computing targets. Returns true if the snapshot was refreshed.
+    public boolean onUpdate() {
+        boolean refreshed = false;
+        if (this.numUpdates > 0 && this.numUpdates % this.refreshEvery == 0) {
+            this.refresh();
+            refreshed = true;
+        }
+        this.numUpdates++;
+        return refreshed;
+    }
+
+    public void refresh() {
+        ModelUtils.copyParameters(this.online, this.snapshot);
+        this.maxQCache.clear();
+        this.version++;
+    }
+
+    public Double getCachedMaxQ(BattleView nextState) {
+        return this.maxQCache.get(nextState);
+    }
+
+    public void putCachedMaxQ(BattleView nextState, double maxQ) {
+        this.maxQCache.put(nextState, maxQ);
+    }
+}
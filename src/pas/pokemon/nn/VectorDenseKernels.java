@@ -0,0 +1,170 @@
+package src.pas.pokemon.nn;
+
+// SYSTEM IMPORTS
+import java.util.Arrays;
+import jdk.incubator.vector.ByteVector;
+import jdk.incubator.vector.FloatVector;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorShape;
+import jdk.incubator.vector.VectorSpecies;
+
+// JAVA PROJECT IMPORTS
+
+// DenseKernels on jdk.incubator.vector. The inner loops run over the output columns (contiguous in W, out,
+// gW and d), so forward and weightGrad are broadcast-FMA axpys and inputGrad is an FMA dot product with one
+// lane reduction per element. Columns past the last full vector go through the scalar tail.
+// forwardQuantized loads as many int8 weights as there are float lanes and widens them (B2F) before the FMA.
+// That needs a byte shape of lanes * 8 bits, which 4-lane (128-bit) float species don't have; those fall
+// back to the scalar loop.
+//
+// Only listed in pokePA-simd.srcs, DenseKernels.get() loads it by name (see there).
+public class VectorDenseKernels extends DenseKernels {
+
+    private static final VectorSpecies<Float> SPECIES = FloatVector.SPECIES_PREFERRED;
+    private static final VectorSpecies<Byte> BYTE_SPECIES = (SPECIES.length() * 8 >= 64)
+            ? VectorSpecies.of(byte.class, VectorShape.forBitSize(SPECIES.length() * 8)) : null;
+
+    public VectorDenseKernels() {
+        // touch the species so a runtime without the module fails here, inside DenseKernels.load
+        if (SPECIES.length() <= 0) {
+            throw new IllegalStateException("VectorDenseKernels: no float vector species");
+        }
+    }
+
+    @Override
+    public void forward(float[] in, int n, int inSize, float[] W, float[] b, int outSize, float[] out,
+            boolean relu) {
+        int bound = SPECIES.loopBound(outSize);
+        FloatVector zero = FloatVector.zero(SPECIES);
+        for (int r = 0; r < n; r++) {
+            int outRow = r * outSize;
+            System.arraycopy(b, 0, out, outRow, outSize);
+            int inRow = r * inSize;
+            for (int i = 0; i < inSize; i++) {
+                float a = in[inRow + i];
+                if (a == 0.0f) {
+                    continue;
+                }
+                axpy(a, W, i * outSize, out, outRow, outSize, bound);
+            }
+            if (relu) {
+                int j = 0;
+                for (; j < bound; j += SPECIES.length()) {
+                    FloatVector.fromArray(SPECIES, out, outRow + j).max(zero).intoArray(out, outRow + j);
+                }
+                for (; j < outSize; j++) {
+                    if (out[outRow + j] < 0.0f) {
+                        out[outRow + j] = 0.0f;
+                    }
+                }
+            }
+        }
+    }
+
+    @Override
+    public void forwardQuantized(float[] in, int n, int inSize, byte[] Q, float[] scale, float[] b, int outSize,
+            float[] out, boolean relu) {
+        if (BYTE_SPECIES == null) {
+            ScalarDenseKernels.INSTANCE.forwardQuantized(in, n, inSize, Q, scale, b, outSize, out, relu);
+            return;
+        }
+        int bound = SPECIES.loopBound(outSize);
+        FloatVector zero = FloatVector.zero(SPECIES);
+        for (int r = 0; r < n; r++) {
+            int outRow = r * outSize;
+            Arrays.fill(out, outRow, outRow + outSize, 0.0f);
+            int inRow = r * inSize;
+            for (int i = 0; i < inSize; i++) {
+                float a = in[inRow + i];
+                if (a == 0.0f) {
+                    continue;
+                }
+                FloatVector va = FloatVector.broadcast(SPECIES, a);
+                int qRow = i * outSize;
+                int j = 0;
+                for (; j < bound; j += SPECIES.length()) {
+                    FloatVector q = (FloatVector) ByteVector.fromArray(BYTE_SPECIES, Q, qRow + j)
+                            .convertShape(VectorOperators.B2F, SPECIES, 0);
+                    q.fma(va, FloatVector.fromArray(SPECIES, out, outRow + j)).intoArray(out, outRow + j);
+                }
+                for (; j < outSize; j++) {
+                    out[outRow + j] += a * Q[qRow + j];
+                }
+            }
+            int j = 0;
+            for (; j < bound; j += SPECIES.length()) {
+                FloatVector v = FloatVector.fromArray(SPECIES, scale, j).fma(
+                        FloatVector.fromArray(SPECIES, out, outRow + j), FloatVector.fromArray(SPECIES, b, j));
+                (relu ? v.max(zero) : v).intoArray(out, outRow + j);
+            }
+            for (; j < outSize; j++) {
+                float v = b[j] + scale[j] * out[outRow + j];
+                out[outRow + j] = (relu && v < 0.0f) ? 0.0f : v;
+            }
+        }
+    }
+
+    @Override
+    public void weightGrad(float[] in, float[] d, int n, int inSize, int outSize, float[] gW, float[] gb) {
+        int bound = SPECIES.loopBound(outSize);
+        for (int r = 0; r < n; r++) {
+            int dRow = r * outSize;
+            axpy(1.0f, d, dRow, gb, 0, outSize, bound);
+            int inRow = r * inSize;
+            for (int i = 0; i < inSize; i++) {
+                float a = in[inRow + i];
+                if (a == 0.0f) {
+                    continue;
+                }
+                // gW[i, :] += a * d[r, :]
+                axpy(a, d, dRow, gW, i * outSize, outSize, bound);
+            }
+        }
+    }
+
+    @Override
+    public void inputGrad(float[] d, float[] W, int n, int inSize, int outSize, float[] in, boolean reluMask,
+            float[] dIn) {
+        int bound = SPECIES.loopBound(outSize);
+        for (int r = 0; r < n; r++) {
+            int dRow = r * outSize;
+            int inRow = r * inSize;
+            for (int i = 0; i < inSize; i++) {
+                if (reluMask && in[inRow + i] <= 0.0f) {
+                    dIn[inRow + i] = 0.0f;
+                    continue;
+                }
+                int wRow = i * outSize;
+                FloatVector acc = FloatVector.zero(SPECIES);
+                int j = 0;
+                for (; j < bound; j += SPECIES.length()) {
+                    acc = FloatVector.fromArray(SPECIES, d, dRow + j)
+                            .fma(FloatVector.fromArray(SPECIES, W, wRow + j), acc);
+                }
+                float sum = acc.reduceLanes(VectorOperators.ADD);
+                for (; j < outSize; j++) {
+                    sum += d[dRow + j] * W[wRow + j];
+                }
+                dIn[inRow + i] = sum;
+            }
+        }
+    }
+
+    @Override
+    public String getName() {
+        return "vector" + SPECIES.length();
+    }
+
+    // y[yOff, yOff + len) += a * x[xOff, xOff + len), bound = SPECIES.loopBound(len)
+    private static void axpy(float a, float[] x, int xOff, float[] y, int yOff, int len, int bound) {
+        FloatVector va = FloatVector.broadcast(SPECIES, a);
+        int j = 0;
+        for (; j < bound; j += SPECIES.length()) {
+            FloatVector.fromArray(SPECIES, x, xOff + j).fma(va, FloatVector.fromArray(SPECIES, y, yOff + j))
+                    .intoArray(y, yOff + j);
+        }
+        for (; j < len; j++) {
+            y[yOff + j] += a * x[xOff + j];
+        }
+    }
+}
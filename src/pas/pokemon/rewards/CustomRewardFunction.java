@@ -1,6 +1,9 @@
 package src.pas.pokemon.rewards;
 
 // SYSTEM IMPORTS
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.stream.IntStream;
 
 // JAVA PROJECT IMPORTS
 import edu.bu.pas.pokemon.agents.rewards.RewardFunction;
@@ -11,6 +14,7 @@ import edu.bu.pas.pokemon.core.Pokemon.PokemonView;
 import edu.bu.pas.pokemon.core.enums.NonVolatileStatus;
 import edu.bu.pas.pokemon.core.enums.Stat;
 import edu.bu.pas.pokemon.core.Team.TeamView;
+import edu.bu.pas.pokemon.training.data.ReplayBuffer;
 
 public class CustomRewardFunction
         extends RewardFunction {
@@ -232,6 +236,81 @@ public class CustomRewardFunction
     }
     */
 
+    // Batch version of getStateActionStateReward for every transition in the buffer (what toDataset needs),
+    // with exactly the same results. Transitions share views (one turn's nextState is the next turn's state),
+    // so the team HP fractions / wiped-out flags of every distinct view are pulled into primitive columns
+    // once, and the rewards are then plain arithmetic over those columns, both passes in parallel.
+    public double[] getStateActionStateRewards(final ReplayBuffer buffer) {
+        int n = buffer.size();
+
+        // Distinct views (by identity), with the transitions pointing at their column.
+        Map<BattleView, Integer> columnOf = new IdentityHashMap<BattleView, Integer>();
+        BattleView[] views = new BattleView[2 * n];
+        int[] stateCol = new int[n];
+        int[] nextCol = new int[n];
+        int numViews = 0;
+        for (int i = 0; i < n; i++) {
+            for (int k = 0; k < 2; k++) {
+                BattleView view = (k == 0) ? buffer.getState(i) : buffer.getNextState(i);
+                Integer col = columnOf.get(view);
+                if (col == null) {
+                    col = numViews;
+                    columnOf.put(view, col);
+                    views[numViews++] = view;
+                }
+                if (k == 0) {
+                    stateCol[i] = col;
+                } else {
+                    nextCol[i] = col;
+                }
+            }
+        }
+
+        // Per-view columns, from our team's point of view.
+        int myTeamIdx = this.getTeamIdx();
+        double[] myHpFrac = new double[numViews];
+        double[] oppHpFrac = new double[numViews];
+        boolean[] isOver = new boolean[numViews];
+        boolean[] myDead = new boolean[numViews];
+        boolean[] oppDead = new boolean[numViews];
+        IntStream.range(0, numViews).parallel().forEach(v -> {
+            BattleView view = views[v];
+            TeamView myTeam = (myTeamIdx == 0) ? view.getTeam1View() : view.getTeam2View();
+            TeamView oppTeam = (myTeamIdx == 0) ? view.getTeam2View() : view.getTeam1View();
+            isOver[v] = view.isOver();
+            if (isOver[v]) {
+                // only terminal next states need these
+                myDead[v] = teamDead(myTeam);
+                oppDead[v] = teamDead(oppTeam);
+            }
+            myHpFrac[v] = getTeamHpPercent(myTeam);
+            oppHpFrac[v] = getTeamHpPercent(oppTeam);
+        });
+
+        // Same operations in the same order as getStateActionStateReward.
+        double lower = getLowerBound();
+        double upper = getUpperBound();
+        double[] rewards = new double[n];
+        IntStream.range(0, n).parallel().forEach(i -> {
+            int s = stateCol[i];
+            int ns = nextCol[i];
+            double reward = 0.0;
+            if (isOver[ns]) {
+                if (oppDead[ns]) {
+                    reward += 100.0; // Win
+                } else if (myDead[ns]) {
+                    reward -= 100.0; // Lose
+                }
+            } else {
+                double hpAdvantageOld = myHpFrac[s] - oppHpFrac[s];
+                double hpAdvantageNew = myHpFrac[ns] - oppHpFrac[ns];
+                reward += 30.0 * (hpAdvantageNew - hpAdvantageOld);
+            }
+            rewards[i] = Math.max(lower, Math.min(upper, reward));
+        });
+        return rewards;
+    }
+
     // Grab the team's HP percentage. 
     private double getTeamHpPercent(TeamView team) {
         double totalCurrentHp = 0.0;
@@ -6,7 +6,6 @@ package src.pas.pokemon.senses;
 import edu.bu.pas.pokemon.agents.senses.SensorArray;
 import edu.bu.pas.pokemon.core.Battle.BattleView;
 import edu.bu.pas.pokemon.core.Move.MoveView;
-import edu.bu.pas.pokemon.core.Move.Category;
 import edu.bu.pas.pokemon.core.Pokemon.PokemonView;
 import edu.bu.pas.pokemon.core.Team.TeamView;
 import edu.bu.pas.pokemon.core.enums.NonVolatileStatus;
@@ -14,20 +13,117 @@ import edu.bu.pas.pokemon.core.enums.Stat;
 import edu.bu.pas.pokemon.core.enums.Type;
 import edu.bu.pas.pokemon.core.enums.Flag;
 import edu.bu.pas.pokemon.linalg.Matrix;
+import src.pas.pokemon.utils.TypeChart;
 
 public class CustomSensorArray extends SensorArray {
 
     // Fixed feature count - 65 features. Including the bias term. 
-    private static final int NUM_FEATURES = 65;
+    public static final int NUM_FEATURES = 65;
+
+    // Columns [ACTION_OFFSET, ACTION_OFFSET + NUM_ACTION_FEATURES) depend on the action (16 move features
+    // plus the disabled flag). Every other column only depends on the state.
+    public static final int ACTION_OFFSET = 44;
+    public static final int NUM_ACTION_FEATURES = 17;
+
+    // State-only features of the last BattleView we encoded. BattleViews are read-only deep copies,
+    // so as long as we get the exact same instance back the cached block is still valid.
+    private BattleView cachedState = null;
+    private PokemonView cachedMyPokemon = null;
+    private PokemonView cachedOppPokemon = null;
+    private final double[] stateFeatures = new double[NUM_FEATURES];
+
+    // Reusable row for the Matrix/float wrappers so encoding itself never allocates.
+    private final double[] scratchRow = new double[NUM_FEATURES];
 
     public CustomSensorArray() {
         super();
     }
 
     public Matrix getSensorValues(final BattleView state, final MoveView action) {
+        // Thin wrapper around encode() for callers that want a fresh 1 x 65 Matrix.
+        this.encode(state, action, this.scratchRow, 0);
+        Matrix features = Matrix.zeros(1, NUM_FEATURES);
+        for (int i = 0; i < NUM_FEATURES; i++) {
+            features.set(0, i, this.scratchRow[i]);
+        }
+        return features;
+    }
+
+    // Write the feature row for (state, action) into dst[offset, offset + NUM_FEATURES). Nothing is allocated.
+    public void encode(final BattleView state, final MoveView action, double[] dst, int offset) {
         // Simplified to essential features only since too many feature cause the noise
         // Also causing it hard time to converge during training.
-        Matrix features = Matrix.zeros(1, NUM_FEATURES);
+        // The state block is shared by every candidate action of the same view, so only recompute it
+        // when we are handed a different view.
+        if (state != this.cachedState) {
+            this.computeStateFeatures(state);
+        }
+        System.arraycopy(this.stateFeatures, 0, dst, offset, NUM_FEATURES);
+        this.encodeAction(action, dst, offset + ACTION_OFFSET);
+    }
+
+    // Same as above but for float32 storage (e.g. replay buffers).
+    public void encode(final BattleView state, final MoveView action, float[] dst, int offset) {
+        this.encode(state, action, this.scratchRow, 0);
+        for (int i = 0; i < NUM_FEATURES; i++) {
+            dst[offset + i] = (float) this.scratchRow[i];
+        }
+    }
+
+    // Write the feature row straight into one row of a preallocated batch matrix.
+    public void encode(final BattleView state, final MoveView action, Matrix batch, int rowIdx) {
+        this.encode(state, action, this.scratchRow, 0);
+        for (int i = 0; i < NUM_FEATURES; i++) {
+            batch.set(rowIdx, i, this.scratchRow[i]);
+        }
+    }
+
+    // Just the state-only columns of the row (action columns are 0), written to dst[offset, offset + NUM_FEATURES).
+    public void encodeState(final BattleView state, float[] dst, int offset) {
+        if (state != this.cachedState) {
+            this.computeStateFeatures(state);
+        }
+        for (int i = 0; i < NUM_FEATURES; i++) {
+            dst[offset + i] = (float) this.stateFeatures[i];
+        }
+    }
+
+    // Just the NUM_ACTION_FEATURES action columns, written to dst[offset, offset + NUM_ACTION_FEATURES).
+    // Combined with encodeState of the same view this gives exactly the row encode() would produce.
+    public void encodeAction(final BattleView state, final MoveView action, float[] dst, int offset) {
+        if (state != this.cachedState) {
+            this.computeStateFeatures(state);
+        }
+        this.encodeAction(action, this.scratchRow, ACTION_OFFSET);
+        for (int i = 0; i < NUM_ACTION_FEATURES; i++) {
+            dst[offset + i] = (float) this.scratchRow[ACTION_OFFSET + i];
+        }
+    }
+
+    // Write the action-dependent columns (move features + disabled flag) starting at dst[offset].
+    // Expects the state block of the matching view to already be cached.
+    private void encodeAction(final MoveView action, double[] dst, int offset) {
+        // move features. 
+        int index = setMoveFeatures(dst, offset, action, this.cachedMyPokemon, this.cachedOppPokemon);
+
+        // unable to perform move status.
+        if (action != null) {
+            dst[index++] = action.getNumDisabledTurnsRemaining() > 0 ? 1.0 : 0.0;
+        } else {
+            dst[index++] = 0.0;
+        }
+    }
+
+    // Drop the cached state block (e.g. if a caller mutates something the view was built from).
+    public void invalidateCache() {
+        this.cachedState = null;
+        this.cachedMyPokemon = null;
+        this.cachedOppPokemon = null;
+    }
+
+    // Fill in every state-only column of the feature row. The action columns are left at zero.
+    private void computeStateFeatures(final BattleView state) {
+        double[] features = this.stateFeatures;
         int index = 0;
 
         // Think team 1 is always my team team 2 is always opponent. 
@@ -40,16 +136,16 @@ public class CustomSensorArray extends SensorArray {
         if (myPokemon != null) {
             int currentHP = myPokemon.getCurrentStat(Stat.HP);
             int maxHP = myPokemon.getInitialStat(Stat.HP);
-            features.set(0, index++, maxHP > 0 ? (double) currentHP / maxHP : 0.0);
+            features[index++] = maxHP > 0 ? (double) currentHP / maxHP : 0.0;
         } else {
-            features.set(0, index++, 0.0);
+            features[index++] = 0.0;
         }
         if (oppPokemon != null) {
             int currentHP = oppPokemon.getCurrentStat(Stat.HP);
             int maxHP = oppPokemon.getInitialStat(Stat.HP);
-            features.set(0, index++, maxHP > 0 ? (double) currentHP / maxHP : 0.0);
+            features[index++] = maxHP > 0 ? (double) currentHP / maxHP : 0.0;
         } else {
-            features.set(0, index++, 0.0);
+            features[index++] = 0.0;
         }
 
         // alive count for both teams. 
@@ -57,13 +153,13 @@ public class CustomSensorArray extends SensorArray {
         for (int i = 0; i < myTeam.size(); i++) {
             if (!myTeam.getPokemonView(i).hasFainted()) myAliveCount++;
         }
-        features.set(0, index++, (double) myAliveCount / Math.max(1, myTeam.size()));
+        features[index++] = (double) myAliveCount / Math.max(1, myTeam.size());
         
         int oppAliveCount = 0;
         for (int i = 0; i < oppTeam.size(); i++) {
             if (!oppTeam.getPokemonView(i).hasFainted()) oppAliveCount++;
         }
-        features.set(0, index++, (double) oppAliveCount / Math.max(1, oppTeam.size()));
+        features[index++] = (double) oppAliveCount / Math.max(1, oppTeam.size());
 
         // status of the pokemon. One HOT encoding for the main status conditions. 
         index = setStatusOneHot(features, index, myPokemon);
@@ -86,7 +182,7 @@ public class CustomSensorArray extends SensorArray {
                 myTotMaxHP += p.getInitialStat(Stat.HP);
             }
         }
-        features.set(0, index++, myTotMaxHP > 0 ? myTotHP / myTotMaxHP : 0.0);
+        features[index++] = myTotMaxHP > 0 ? myTotHP / myTotMaxHP : 0.0;
         
         double oppTotHP = 0.0, oppTotMaxHP = 0.0;
         for (int i = 0; i < oppTeam.size(); i++) {
@@ -96,25 +192,20 @@ public class CustomSensorArray extends SensorArray {
                 oppTotMaxHP += p.getInitialStat(Stat.HP);
             }
         }
-        features.set(0, index++, oppTotMaxHP > 0 ? oppTotHP / oppTotMaxHP : 0.0);
-
-        // move features. 
-        index = setMoveFeatures(features, index, action, myPokemon, oppPokemon);
+        features[index++] = oppTotMaxHP > 0 ? oppTotHP / oppTotMaxHP : 0.0;
 
-        // unable to perform move status.
-        if (action != null) {
-            features.set(0, index++, action.getNumDisabledTurnsRemaining() > 0 ? 1.0 : 0.0);
-        } else {
-            features.set(0, index++, 0.0);
+        // move features and the disabled flag go here, filled in per action. 
+        for (int i = 0; i < NUM_ACTION_FEATURES; i++) {
+            features[index++] = 0.0;
         }
 
         // battle context features. 
-        features.set(0, index++, state.isOver() ? 1.0 : 0.0);
-        features.set(0, index++, (myPokemon != null && !myPokemon.hasFainted()) ? 1.0 : 0.0);
-        features.set(0, index++, (oppPokemon != null && !oppPokemon.hasFainted()) ? 1.0 : 0.0);
+        features[index++] = state.isOver() ? 1.0 : 0.0;
+        features[index++] = (myPokemon != null && !myPokemon.hasFainted()) ? 1.0 : 0.0;
+        features[index++] = (oppPokemon != null && !oppPokemon.hasFainted()) ? 1.0 : 0.0;
 
         // bias term. 
-        features.set(0, index++, 1.0);
+        features[index++] = 1.0;
 
         /* extra features maybe enrolled to use later. 
         index = setPokemonFeatures(features, index, myPokemon);
@@ -151,22 +242,23 @@ public class CustomSensorArray extends SensorArray {
         features.set(0, index++, (oppPokemon != null && !oppPokemon.hasFainted()) ? 1.0 : 0.0);
         */
 
-
-        return features;
+        this.cachedState = state;
+        this.cachedMyPokemon = myPokemon;
+        this.cachedOppPokemon = oppPokemon;
     }
 
     // Set 5 volatile status features
-    private int setVolatileStatus(Matrix features, int startIdx, PokemonView pkmn) {
+    private int setVolatileStatus(double[] features, int startIdx, PokemonView pkmn) {
         if (pkmn == null) {
             for (int i = 0; i < 5; i++) {
-                features.set(0, startIdx + i, 0.0);
+                features[startIdx + i] = 0.0;
             }
         } else {
-            features.set(0, startIdx, pkmn.getFlag(Flag.CONFUSED) ? 1.0 : 0.0);
-            features.set(0, startIdx + 1, pkmn.getFlag(Flag.FLINCHED) ? 1.0 : 0.0);
-            features.set(0, startIdx + 2, pkmn.getFlag(Flag.SEEDED) ? 1.0 : 0.0);
-            features.set(0, startIdx + 3, pkmn.getFlag(Flag.TRAPPED) ? 1.0 : 0.0);
-            features.set(0, startIdx + 4, pkmn.getFlag(Flag.FOCUS_ENERGY) ? 1.0 : 0.0);
+            features[startIdx] = pkmn.getFlag(Flag.CONFUSED) ? 1.0 : 0.0;
+            features[startIdx + 1] = pkmn.getFlag(Flag.FLINCHED) ? 1.0 : 0.0;
+            features[startIdx + 2] = pkmn.getFlag(Flag.SEEDED) ? 1.0 : 0.0;
+            features[startIdx + 3] = pkmn.getFlag(Flag.TRAPPED) ? 1.0 : 0.0;
+            features[startIdx + 4] = pkmn.getFlag(Flag.FOCUS_ENERGY) ? 1.0 : 0.0;
         }
         return startIdx + 5;
     }
@@ -255,21 +347,21 @@ public class CustomSensorArray extends SensorArray {
         double oppAttAdv = 0.0;
 
         if (myType1 != null && oppType1 != null)
-            myAttAdv = Math.max(myAttAdv, Type.getEffectivenessModifier(myType1, oppType1));
+            myAttAdv = Math.max(myAttAdv, TypeChart.single(myType1, oppType1));
         if (myType1 != null && oppType2 != null)
-            myAttAdv = Math.max(myAttAdv, Type.getEffectivenessModifier(myType1, oppType2));
+            myAttAdv = Math.max(myAttAdv, TypeChart.single(myType1, oppType2));
         if (myType2 != null && oppType1 != null)
-            myAttAdv = Math.max(myAttAdv, Type.getEffectivenessModifier(myType2, oppType1));
+            myAttAdv = Math.max(myAttAdv, TypeChart.single(myType2, oppType1));
         if (myType2 != null && oppType2 != null)
-            myAttAdv = Math.max(myAttAdv, Type.getEffectivenessModifier(myType2, oppType2));
+            myAttAdv = Math.max(myAttAdv, TypeChart.single(myType2, oppType2));
         if (oppType1 != null && myType1 != null)
-            oppAttAdv = Math.max(oppAttAdv, Type.getEffectivenessModifier(oppType1, myType1));
+            oppAttAdv = Math.max(oppAttAdv, TypeChart.single(oppType1, myType1));
         if (oppType1 != null && myType2 != null)
-            oppAttAdv = Math.max(oppAttAdv, Type.getEffectivenessModifier(oppType1, myType2));
+            oppAttAdv = Math.max(oppAttAdv, TypeChart.single(oppType1, myType2));
         if (oppType2 != null && myType1 != null)
-            oppAttAdv = Math.max(oppAttAdv, Type.getEffectivenessModifier(oppType2, myType1));
+            oppAttAdv = Math.max(oppAttAdv, TypeChart.single(oppType2, myType1));
         if (oppType2 != null && myType2 != null)
-            oppAttAdv = Math.max(oppAttAdv, Type.getEffectivenessModifier(oppType2, myType2));
+            oppAttAdv = Math.max(oppAttAdv, TypeChart.single(oppType2, myType2));
 
         features.set(0, index++, myAttAdv / 4.0);
         features.set(0, index++, oppAttAdv / 4.0);
@@ -292,37 +384,17 @@ public class CustomSensorArray extends SensorArray {
     */
 
     // Set the 16 move features. 
-    private int setMoveFeatures(Matrix features, int startIdx, MoveView move, PokemonView attacker,
+    private int setMoveFeatures(double[] features, int startIdx, MoveView move, PokemonView attacker,
             PokemonView defender) {
         if (move == null) {
             for (int i = 0; i < 16; i++) {
-                features.set(0, startIdx + i, 0.0);
+                features[startIdx + i] = 0.0;
             }
             return startIdx + 16;
         }
 
-        int index = startIdx;
-
-        // Move flags
-        boolean isSwitch = move.getName() != null
-                && (move.getName().toLowerCase().contains("switch") || move.getName().equals("SwitchMove"));
-        features.set(0, index++, isSwitch ? 1.0 : 0.0);
-
-        // Power and accuracy
-        Integer pow = move.getPower();
-        features.set(0, index++, pow != null ? Math.min(pow / 250.0, 1.0) : 0.0);
-
-        Integer acc = move.getAccuracy();
-        features.set(0, index++, acc != null ? acc / 100.0 : 0.0);
-
-        // Priority
-        features.set(0, index++, (move.getPriority() + 6) / 11.0);
-
-        // Category
-        Category cat = move.getCategory();
-        features.set(0, index++, cat == Category.PHYSICAL ? 1.0 : 0.0);
-        features.set(0, index++, cat == Category.SPECIAL ? 1.0 : 0.0);
-        features.set(0, index++, cat == Category.STATUS ? 1.0 : 0.0);
+        // Everything that only depends on the move itself comes precomputed from the cache.
+        System.arraycopy(MoveFeatureCache.get(move), 0, features, startIdx, MoveFeatureCache.NUM_MOVE_FEATURES);
 
         // STAB effect
         Type moveType = move.getType();
@@ -332,73 +404,49 @@ public class CustomSensorArray extends SensorArray {
             Type atkType2 = attacker.getCurrentType2();
             stab = (moveType == atkType1) || (moveType == atkType2);
         }
-        features.set(0, index++, stab ? 1.0 : 0.0);
-        features.set(0, index++, moveType != null ? moveType.ordinal() / 15.0 : 0.0);
+        features[startIdx + MoveFeatureCache.STAB_IDX] = stab ? 1.0 : 0.0;
 
         // Type effectiveness
-        double effect1 = 1.0;
-        double effect2 = 1.0;
+        double totalEffect = 1.0;
         if (defender != null && moveType != null) {
-            Type defType1 = defender.getCurrentType1();
-            Type defType2 = defender.getCurrentType2();
-            if (defType1 != null)
-                effect1 = Type.getEffectivenessModifier(moveType, defType1);
-            if (defType2 != null)
-                effect2 = Type.getEffectivenessModifier(moveType, defType2);
+            totalEffect = TypeChart.modifier(moveType, defender.getCurrentType1(), defender.getCurrentType2());
         }
+        int index = startIdx + MoveFeatureCache.EFFECT_IDX;
+        features[index++] = totalEffect / 4.0;
+        features[index++] = totalEffect > 1.0 ? 1.0 : 0.0;
+        features[index++] = totalEffect < 1.0 ? 1.0 : 0.0;
+        features[index++] = totalEffect == 0.0 ? 1.0 : 0.0;
 
-        double totalEffect = effect1 * effect2;
-        features.set(0, index++, totalEffect / 4.0);
-        features.set(0, index++, totalEffect > 1.0 ? 1.0 : 0.0);
-        features.set(0, index++, totalEffect < 1.0 ? 1.0 : 0.0);
-        features.set(0, index++, totalEffect == 0.0 ? 1.0 : 0.0);
-
-        // Special move types
-        boolean isPivot = move.getName() != null &&
-                (move.getName().toLowerCase().contains("u-turn") ||
-                        move.getName().toLowerCase().contains("volt switch") ||
-                        move.getName().toLowerCase().contains("flip turn"));
-        features.set(0, index++, isPivot ? 1.0 : 0.0);
-
-        boolean isSetup = move.getName() != null &&
-                (move.getName().toLowerCase().contains("dance") ||
-                        move.getName().toLowerCase().contains("swords") ||
-                        move.getName().toLowerCase().contains("calm mind") ||
-                        move.getName().toLowerCase().contains("quiver"));
-        features.set(0, index++, isSetup ? 1.0 : 0.0);
-
-        features.set(0, index++, (pow != null && pow < 40 && pow > 0) ? 1.0 : 0.0);
-
-        return index; 
+        return startIdx + MoveFeatureCache.NUM_MOVE_FEATURES; 
     }
 
     // Status encdoing on-hot
-    private int setStatusOneHot(Matrix features, int startIdx, PokemonView pkmn) {
+    private int setStatusOneHot(double[] features, int startIdx, PokemonView pkmn) {
         int index = startIdx;
         NonVolatileStatus currentStatus = (pkmn != null) ? pkmn.getNonVolatileStatus() : null;
         
         // nonvolatile status one-hot encoding
         for (NonVolatileStatus status : NonVolatileStatus.values()) {
-            features.set(0, index++, (currentStatus == status) ? 1.0 : 0.0);
+            features[index++] = (currentStatus == status) ? 1.0 : 0.0;
         }
         
         return index; 
     }
 
     // stage multipliers for the 7 stats. 
-    private int setStatMultipliers(Matrix features, int startIdx, PokemonView pkmn) {
+    private int setStatMultipliers(double[] features, int startIdx, PokemonView pkmn) {
         if (pkmn == null) {
             for (int i = 0; i < 7; i++) {
-                features.set(0, startIdx + i, 0.0);
+                features[startIdx + i] = 0.0;
             }
         } else {
-            features.set(0, startIdx, (pkmn.getStatMultiplier(Stat.ATK) + 6) / 12.0);
-            features.set(0, startIdx + 1, (pkmn.getStatMultiplier(Stat.DEF) + 6) / 12.0);
-            features.set(0, startIdx + 2, (pkmn.getStatMultiplier(Stat.SPATK) + 6) / 12.0);
-            features.set(0, startIdx + 3, (pkmn.getStatMultiplier(Stat.SPDEF) + 6) / 12.0);
-            features.set(0, startIdx + 4, (pkmn.getStatMultiplier(Stat.SPD) + 6) / 12.0);
-            features.set(0, startIdx + 5, (pkmn.getStatMultiplier(Stat.ACC) + 6) / 12.0);
-            features.set(0, startIdx + 6, (pkmn.getStatMultiplier(Stat.EVASIVE) + 6) / 12.0);
+            features[startIdx] = (pkmn.getStatMultiplier(Stat.ATK) + 6) / 12.0;
+            features[startIdx + 1] = (pkmn.getStatMultiplier(Stat.DEF) + 6) / 12.0;
+            features[startIdx + 2] = (pkmn.getStatMultiplier(Stat.SPATK) + 6) / 12.0;
+            features[startIdx + 3] = (pkmn.getStatMultiplier(Stat.SPDEF) + 6) / 12.0;
+            features[startIdx + 4] = (pkmn.getStatMultiplier(Stat.SPD) + 6) / 12.0;
+            features[startIdx + 5] = (pkmn.getStatMultiplier(Stat.ACC) + 6) / 12.0;
+            features[startIdx + 6] = (pkmn.getStatMultiplier(Stat.EVASIVE) + 6) / 12.0;
         }
         return startIdx + 7;
     }
@@ -0,0 +1,152 @@
+package src.pas.pokemon.senses;
+
+// SYSTEM IMPORTS
+import java.io.IOException;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+
+// JAVA PROJECT IMPORTS
+import edu.bu.pas.pokemon.core.CoreRegistry;
+import edu.bu.pas.pokemon.core.Move;
+import edu.bu.pas.pokemon.core.Move.Category;
+import edu.bu.pas.pokemon.core.Move.MoveView;
+import edu.bu.pas.pokemon.core.enums.Type;
+
+// Caches the parts of the 16 move features that only depend on the move itself (name flags, power,
+// accuracy, priority, category, type), so the encoder doesn't redo string scanning on every call.
+// STAB and the effectiveness columns depend on the current attacker/defender and are left for the caller.
+public class MoveFeatureCache {
+
+    public static final int NUM_MOVE_FEATURES = 16;
+
+    // Slots inside the 16-wide slice that have to be filled in per call.
+    public static final int STAB_IDX = 7;
+    public static final int EFFECT_IDX = 9; // 4 columns: effect/4, >1, <1, ==0
+
+    // One cached slice per move name (a name always means the same move in the registry). The raw stats the
+    // slice was built from are kept so runs with -ea can check that, without paying for it on every lookup.
+    private static final class Entry {
+        private final Integer power;
+        private final Integer accuracy;
+        private final int priority;
+        private final Category category;
+        private final Type type;
+        private final double[] features;
+
+        private Entry(MoveView move, double[] features) {
+            this.power = move.getPower();
+            this.accuracy = move.getAccuracy();
+            this.priority = move.getPriority();
+            this.category = move.getCategory();
+            this.type = move.getType();
+            this.features = features;
+        }
+
+        private boolean matches(MoveView move) {
+            return this.priority == move.getPriority() && this.category == move.getCategory()
+                    && this.type == move.getType() && Objects.equals(this.power, move.getPower())
+                    && Objects.equals(this.accuracy, move.getAccuracy());
+        }
+    }
+
+    private static final Map<String, Entry> CACHE = new ConcurrentHashMap<String, Entry>();
+    // Moves without a name (every SwitchMove) all encode the same, they share this entry.
+    private static volatile Entry unnamed = null;
+    private static volatile boolean warmed = false;
+
+    private MoveFeatureCache() {
+    }
+
+    // Precompute every move the game knows about. Safe to call more than once, only the first call
+    // actually reads the registry.
+    public static synchronized void warm() throws IOException {
+        if (warmed) {
+            return;
+        }
+        CoreRegistry registry = new CoreRegistry();
+        for (String name : registry.getAllMoveNames()) {
+            Move move = registry.getMove(name);
+            if (move != null) {
+                get(move.getView());
+            }
+        }
+        warmed = true;
+    }
+
+    // Static feature slice for this move. The returned array is shared, do not write to it.
+    // STAB_IDX and the EFFECT_IDX columns are always 0 here.
+    public static double[] get(MoveView move) {
+        String name = move.getName();
+        Entry entry = (name == null) ? unnamed : CACHE.get(name);
+        if (entry == null) {
+            entry = new Entry(move, computeStaticFeatures(move));
+            if (name == null) {
+                unnamed = entry;
+            } else {
+                CACHE.put(name, entry);
+            }
+        }
+        assert entry.matches(move) : "MoveFeatureCache: " + name + " has different stats than when it was cached";
+        return entry.features;
+    }
+
+    public static int size() {
+        return CACHE.size();
+    }
+
+    private static double[] computeStaticFeatures(MoveView move) {
+        double[] features = new double[NUM_MOVE_FEATURES];
+        String lowerName = (move.getName() != null) ? move.getName().toLowerCase() : null;
+        int index = 0;
+
+        // Move flags
+        boolean isSwitch = lowerName != null
+                && (lowerName.contains("switch") || move.getName().equals("SwitchMove"));
+        features[index++] = isSwitch ? 1.0 : 0.0;
+
+        // Power and accuracy
+        Integer pow = move.getPower();
+        features[index++] = pow != null ? Math.min(pow / 250.0, 1.0) : 0.0;
+
+        Integer acc = move.getAccuracy();
+        features[index++] = acc != null ? acc / 100.0 : 0.0;
+
+        // Priority
+        features[index++] = (move.getPriority() + 6) / 11.0;
+
+        // Category
+        Category cat = move.getCategory();
+        features[index++] = cat == Category.PHYSICAL ? 1.0 : 0.0;
+        features[index++] = cat == Category.SPECIAL ? 1.0 : 0.0;
+        features[index++] = cat == Category.STATUS ? 1.0 : 0.0;
+
+        // STAB effect (filled in per call)
+        features[index++] = 0.0;
+        Type moveType = move.getType();
+        features[index++] = moveType != null ? moveType.ordinal() / 15.0 : 0.0;
+
+        // Type effectiveness (filled in per call)
+        for (int i = 0; i < 4; i++) {
+            features[index++] = 0.0;
+        }
+
+        // Special move types
+        boolean isPivot = lowerName != null &&
+                (lowerName.contains("u-turn") ||
+                        lowerName.contains("volt switch") ||
+                        lowerName.contains("flip turn"));
+        features[index++] = isPivot ? 1.0 : 0.0;
+
+        boolean isSetup = lowerName != null &&
+                (lowerName.contains("dance") ||
+                        lowerName.contains("swords") ||
+                        lowerName.contains("calm mind") ||
+                        lowerName.contains("quiver"));
+        features[index++] = isSetup ? 1.0 : 0.0;
+
+        features[index++] = (pow != null && pow < 40 && pow > 0) ? 1.0 : 0.0;
+
+        return features;
+    }
+}
@@ -0,0 +1,268 @@
+package src.pas.pokemon.training;
+
+// SYSTEM IMPORTS
+import net.sourceforge.argparse4j.inf.Namespace;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+// JAVA PROJECT IMPORTS
+import edu.bu.pas.pokemon.Train;
+import edu.bu.pas.pokemon.core.Agent;
+import edu.bu.pas.pokemon.core.Battle.BattleView;
+import edu.bu.pas.pokemon.core.Move.MoveView;
+import edu.bu.pas.pokemon.linalg.Matrix;
+import edu.bu.pas.pokemon.utils.Triple;
+import src.pas.pokemon.agents.PolicyAgent;
+import src.pas.pokemon.nn.Checkpoint;
+import src.pas.pokemon.utils.LatencyHistogram;
+
+// Actor-learner counterpart of ParallelSelfPlay (ParallelTrain --async).
+// numThreads actors play training games nonstop, each with its own PolicyAgent, enemies and Random, while the
+// learner (the ParallelTrain thread) trains the master network. Handoffs in both directions avoid locks:
+//   - weights: the learner publishes an immutable Snapshot (parameter copies, epsilon, version) through an
+//     AtomicReference, and every actor picks up the newest one before each game.
+//   - transitions: every finished game goes into a bounded queue as one batch. Only the learner drains it
+//     into the replay buffer, so the buffers themselves stay single-threaded. The queue holds at most one
+//     cycle of games, so the actors can't get further ahead of the learner than the phase-locked loop does.
+// The staleness of a game is the number of versions the learner published while it was being played (from
+// the actor's snapshot to the moment the game is queued). Time spent in the queue doesn't count, since the
+// queue bound already caps it at one cycle. Games staler than maxStaleness are dropped. Runs are not
+// reproducible for a fixed seed, because the interleaving of actors and learner depends on timing.
+public class AsyncSelfPlay {
+
+    // What the learner hands to the actors. Never modified after publish().
+    private static class Snapshot {
+        private final int version;
+        private final List<Matrix> values;
+        private final double epsilon;
+
+        private Snapshot(int version, List<Matrix> values, double epsilon) {
+            this.version = version;
+            this.values = values;
+            this.epsilon = epsilon;
+        }
+    }
+
+    // One finished actor game.
+    private static class Game {
+        private final List<Triple<BattleView, MoveView, BattleView>> transitions;
+        private final int staleness;
+        private final boolean truncated;
+
+        private Game(List<Triple<BattleView, MoveView, BattleView>> transitions, int staleness, boolean truncated) {
+            this.transitions = transitions;
+            this.staleness = staleness;
+            this.truncated = truncated;
+        }
+    }
+
+    private final Actor[] actors;
+    private final ExecutorService pool;
+    private final GameRunner runner;
+    private final BlockingQueue<Game> finishedGames;
+    private final AtomicReference<Snapshot> latest;
+    private final int maxStaleness;
+    private final int publishEvery; // learner steps between publishes, 0 = only at the end of a pass
+    private final LatencyHistogram decisionLatency; // guarded by itself
+    private volatile int maxTurns = 0;
+    private volatile boolean running = false;
+    private volatile Throwable failure = null;
+
+    // learner side
+    private int version = 0;
+    private int stepsSincePublish = 0;
+
+    // stats of the last collect() call
+    private int numTruncatedGames = 0;
+    private int numDroppedGames = 0;
+    private double meanStaleness = 0.0;
+    private int maxStalenessSeen = 0;
+
+    public AsyncSelfPlay(Namespace args, List<String> enemyAgentNames, int numThreads, GameRunner runner,
+            int queueGames, int maxStaleness, int publishEvery) {
+        this.actors = new Actor[numThreads];
+        for (int a = 0; a < numThreads; a++) {
+            this.actors[a] = new Actor(args, enemyAgentNames);
+        }
+        this.pool = Executors.newFixedThreadPool(numThreads);
+        this.runner = runner;
+        this.finishedGames = new ArrayBlockingQueue<Game>(Math.max(1, queueGames));
+        this.latest = new AtomicReference<Snapshot>(null);
+        this.maxStaleness = maxStaleness;
+        this.publishEvery = publishEvery;
+        this.decisionLatency = new LatencyHistogram();
+    }
+
+    public int getNumThreads() {
+        return this.actors.length;
+    }
+
+    // Turn cap per training game (0 = none), picked up by the actors at their next game.
+    public void setMaxTurns(int maxTurns) {
+        this.maxTurns = maxTurns;
+    }
+
+    public int getMaxTurns() {
+        return this.maxTurns;
+    }
+
+    // Publish the current weights of master and start the actors.
+    public void start(PolicyAgent master, Random rng) {
+        this.publish(master);
+        this.running = true;
+        for (final Actor actor : this.actors) {
+            if (actor.agent.getReplacementBudgetMillis() != master.getReplacementBudgetMillis()) {
+                actor.agent.setReplacementBudget(master.getReplacementBudgetMillis(), 1);
+            }
+            actor.agent.train();
+            final Random actorRng = new Random(rng.nextLong());
+            this.pool.submit(() -> {
+                try {
+                    actor.run(actorRng);
+                } catch (InterruptedException e) {
+                    // shutdown
+                } catch (Throwable t) {
+                    this.failure = t;
+                }
+                return null;
+            });
+        }
+    }
+
+    // Hand the current weights and epsilon of master to the actors (learner thread only).
+    public void publish(PolicyAgent master) {
+        this.version++;
+        this.stepsSincePublish = 0;
+        this.latest.set(new Snapshot(this.version, Checkpoint.copyValues(master.getModel()), master.getEpsilon()));
+    }
+
+    // Called by the learner after every gradient step, publishes every publishEvery steps.
+    public void onLearnerStep(PolicyAgent master) {
+        if (this.publishEvery > 0 && ++this.stepsSincePublish >= this.publishEvery) {
+            this.publish(master);
+        }
+    }
+
+    public int getVersion() {
+        return this.version;
+    }
+
+    // Move numGames finished games into buffer (learner thread only), waiting for the actors if they aren't
+    // there yet. Games staler than maxStaleness are dropped and don't count. Epsilon of master is decayed
+    // by the games taken, as ParallelSelfPlay does. Returns the number of transitions added.
+    public int collect(PolicyAgent master, TransitionReplay buffer, int numGames) throws Exception {
+        int numTransitions = 0;
+        int numTaken = 0;
+        long totalStaleness = 0L;
+        this.numTruncatedGames = 0;
+        this.numDroppedGames = 0;
+        this.maxStalenessSeen = 0;
+        while (numTaken < numGames) {
+            // checked every time, the other actors may keep the queue full after one of them died
+            if (this.failure != null) {
+                throw new Exception("AsyncSelfPlay: an actor failed", this.failure);
+            }
+            Game game = this.finishedGames.poll(100, TimeUnit.MILLISECONDS);
+            if (game == null) {
+                continue;
+            }
+            int staleness = game.staleness;
+            if (staleness > this.maxStaleness) {
+                this.numDroppedGames++;
+                continue;
+            }
+            for (Triple<BattleView, MoveView, BattleView> t : game.transitions) {
+                buffer.addSample(t.getFirst(), t.getSecond(), t.getThird());
+                numTransitions++;
+            }
+            numTaken++;
+            totalStaleness += staleness;
+            this.maxStalenessSeen = Math.max(this.maxStalenessSeen, staleness);
+            if (game.truncated) {
+                this.numTruncatedGames++;
+            }
+        }
+        this.meanStaleness = (numTaken > 0) ? (double) totalStaleness / numTaken : 0.0;
+        master.decayEpsilon(numTaken);
+        return numTransitions;
+    }
+
+    public int getNumTruncatedGames() {
+        return this.numTruncatedGames;
+    }
+
+    public int getNumDroppedGames() {
+        return this.numDroppedGames;
+    }
+
+    public double getMeanStaleness() {
+        return this.meanStaleness;
+    }
+
+    public int getMaxStaleness() {
+        return this.maxStalenessSeen;
+    }
+
+    // Add the getMove latencies of the games finished since the last call to into, and reset them.
+    public void drainDecisionLatency(LatencyHistogram into) {
+        synchronized (this.decisionLatency) {
+            into.merge(this.decisionLatency);
+            this.decisionLatency.reset();
+        }
+    }
+
+    public void shutdown() {
+        this.running = false;
+        this.pool.shutdownNow();
+    }
+
+    private class Actor {
+        private final PolicyAgent agent;
+        private final List<Agent> enemies;
+        private int version = -1; // of the weights agent currently has
+
+        private Actor(Namespace args, List<String> enemyAgentNames) {
+            this.agent = new PolicyAgent();
+            this.agent.initialize(args);
+            this.enemies = new ArrayList<Agent>(enemyAgentNames.size());
+            for (String name : enemyAgentNames) {
+                Agent enemy = Train.getAgent(name);
+                enemy.initialize(args);
+                this.enemies.add(enemy);
+            }
+        }
+
+        private void run(Random rng) throws Exception {
+            while (AsyncSelfPlay.this.running) {
+                Snapshot snapshot = AsyncSelfPlay.this.latest.get();
+                if (snapshot.version != this.version) {
+                    this.agent.copyWeightsFrom(snapshot.values);
+                    this.version = snapshot.version;
+                }
+                this.agent.setEpsilon(snapshot.epsilon);
+
+                List<Triple<BattleView, MoveView, BattleView>> transitions =
+                        new ArrayList<Triple<BattleView, MoveView, BattleView>>();
+                Agent enemy = this.enemies.get(rng.nextInt(this.enemies.size()));
+                BattleView finalState = AsyncSelfPlay.this.runner.playGame(this.agent, enemy, rng, transitions,
+                        AsyncSelfPlay.this.maxTurns);
+                synchronized (AsyncSelfPlay.this.decisionLatency) {
+                    AsyncSelfPlay.this.decisionLatency.merge(this.agent.getDecisionLatency());
+                }
+                this.agent.getDecisionLatency().reset();
+
+                // blocks while the learner is a full cycle behind
+                int staleness = AsyncSelfPlay.this.latest.get().version - this.version;
+                AsyncSelfPlay.this.finishedGames.put(new Game(transitions, staleness,
+                        GameRunner.isTruncated(finalState)));
+            }
+        }
+    }
+}
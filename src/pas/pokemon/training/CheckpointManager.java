@@ -0,0 +1,229 @@
+package src.pas.pokemon.training;
+
+// SYSTEM IMPORTS
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+// JAVA PROJECT IMPORTS
+import edu.bu.pas.pokemon.nn.Model;
+import src.pas.pokemon.agents.PolicyAgent;
+import src.pas.pokemon.nn.Checkpoint;
+
+// Writes the per-cycle checkpoints on a background thread so the learner never waits on disk.
+//
+// The caller hands over an immutable snapshot (copies of the weights, see Checkpoint.copyValues) together
+// with the eval results of that cycle. After each write the retention policy keeps the best keepBest
+// checkpoints by avg(num_wins) (ties broken by avg(utility), then by the later cycle) plus the latest
+// keepLatest ones, and deletes the rest. A negative keepLatest keeps everything. Only files written by this
+// run are ever deleted; checkpoints adopted from the index of the run being resumed drop out of the index
+// but stay on disk.
+//
+// A resumed run (resumedCycle >= 0) adopts the index in outDir, so its checkpoints still compete against
+// the earlier ones. A fresh run (resumedCycle < 0) refuses an outDir whose index lists checkpoints, and so
+// does a resumed run whose index lists cycles after resumedCycle: it would overwrite their files as it
+// goes. Use a new outDir in both cases.
+//
+// INDEX_FILE in outDir is rewritten after every write, one tab separated line per retained checkpoint:
+//   cycle  file  avg_utility  avg_num_wins  best_rank (0 = not among the best)
+public class CheckpointManager {
+
+    public static final String INDEX_FILE = "checkpoints.index";
+
+    private final File outDir;
+    private final boolean binary;
+    private final int keepBest;
+    private final int keepLatest;
+    private final PolicyAgent modelFactory;
+
+    private final ExecutorService writer;
+    private final List<Entry> entries; // only touched by the writer thread
+    private final Set<String> writtenFiles; // files written by this run, only touched by the writer thread
+    private volatile Exception failure;
+
+    // Scratch model for the text format, owned by the writer thread.
+    private Model textModel;
+
+    public static class Entry {
+        public final int cycle;
+        public final String fileName;
+        public final double avgUtility;
+        public final double avgWins;
+
+        public Entry(int cycle, String fileName, double avgUtility, double avgWins) {
+            this.cycle = cycle;
+            this.fileName = fileName;
+            this.avgUtility = avgUtility;
+            this.avgWins = avgWins;
+        }
+    }
+
+    // modelFactory.initModel() builds the scratch model used to write text params files. resumedCycle is the
+    // cycle of the checkpoint the run resumes from, or -1 for a fresh run.
+    public CheckpointManager(File outDir, boolean binary, int keepBest, int keepLatest, PolicyAgent modelFactory,
+            int resumedCycle) throws IOException {
+        this.outDir = outDir;
+        this.binary = binary;
+        this.keepBest = Math.max(0, keepBest);
+        this.keepLatest = keepLatest;
+        this.modelFactory = modelFactory;
+        this.writer = Executors.newSingleThreadExecutor(r -> {
+            Thread t = new Thread(r, "checkpoint-writer");
+            t.setDaemon(true);
+            return t;
+        });
+        this.entries = new ArrayList<Entry>();
+        this.writtenFiles = new HashSet<String>();
+        this.failure = null;
+        this.textModel = null;
+        this.loadIndex(resumedCycle);
+    }
+
+    // Check the index left in outDir by an earlier run and, when resuming, adopt its checkpoints.
+    private void loadIndex(int resumedCycle) throws IOException {
+        File index = new File(this.outDir, INDEX_FILE);
+        if (!index.isFile()) {
+            return;
+        }
+        List<Entry> listed = new ArrayList<Entry>();
+        try {
+            List<String> lines = Files.readAllLines(index.toPath());
+            for (int i = 1; i < lines.size(); i++) {
+                String[] cols = lines.get(i).split("\t");
+                if (cols.length >= 4 && new File(this.outDir, cols[1]).isFile()) {
+                    listed.add(new Entry(Integer.parseInt(cols[0]), cols[1], Double.parseDouble(cols[2]),
+                            Double.parseDouble(cols[3])));
+                }
+            }
+        } catch (NumberFormatException e) {
+            throw new IOException("CheckpointManager.loadIndex: unreadable " + index.getPath(), e);
+        }
+        if (listed.isEmpty()) {
+            return;
+        }
+        if (resumedCycle < 0) {
+            throw new IOException("CheckpointManager.loadIndex: " + this.outDir.getPath()
+                    + " already holds the checkpoints of another run, use a new outDir");
+        }
+        for (Entry e : listed) {
+            if (e.cycle > resumedCycle) {
+                throw new IOException("CheckpointManager.loadIndex: " + this.outDir.getPath() + " holds cycle "
+                        + e.cycle + " after the resumed cycle " + resumedCycle + ", use a new outDir");
+            }
+        }
+        this.entries.addAll(listed);
+    }
+
+    public static String fileNameFor(int cycle) {
+        return "params" + cycle + ".model";
+    }
+
+    // Queue snapshot for writing. Returns immediately; a failure of an earlier write is rethrown here.
+    public void submit(final Checkpoint snapshot, final double avgUtility, final double avgWins) throws IOException {
+        this.rethrowFailure();
+        this.writer.submit(() -> {
+            try {
+                this.write(snapshot, avgUtility, avgWins);
+            } catch (Exception e) {
+                this.failure = e;
+            }
+        });
+    }
+
+    // Wait for every queued checkpoint to be written and stop the writer thread.
+    public void close() throws IOException {
+        this.writer.shutdown();
+        try {
+            while (!this.writer.awaitTermination(1, TimeUnit.MINUTES)) {
+                // keep waiting, a checkpoint is still being written
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        this.rethrowFailure();
+    }
+
+    private void rethrowFailure() throws IOException {
+        Exception e = this.failure;
+        if (e != null) {
+            throw new IOException("CheckpointManager: background checkpoint write failed", e);
+        }
+    }
+
+    private void write(Checkpoint snapshot, double avgUtility, double avgWins) throws Exception {
+        String fileName = fileNameFor(snapshot.getCycle());
+        String path = new File(this.outDir, fileName).getPath();
+        if (this.binary) {
+            snapshot.save(path);
+        } else {
+            if (this.textModel == null) {
+                this.textModel = this.modelFactory.initModel();
+            }
+            snapshot.applyTo(this.textModel);
+            this.textModel.save(path);
+        }
+
+        this.writtenFiles.add(fileName);
+        this.entries.add(new Entry(snapshot.getCycle(), fileName, avgUtility, avgWins));
+        this.applyRetention();
+    }
+
+    private void applyRetention() throws IOException {
+        List<Entry> byScore = new ArrayList<Entry>(this.entries);
+        Collections.sort(byScore, new Comparator<Entry>() {
+            public int compare(Entry a, Entry b) {
+                if (a.avgWins != b.avgWins) {
+                    return Double.compare(b.avgWins, a.avgWins);
+                }
+                if (a.avgUtility != b.avgUtility) {
+                    return Double.compare(b.avgUtility, a.avgUtility);
+                }
+                return Integer.compare(b.cycle, a.cycle);
+            }
+        });
+
+        List<Entry> best = byScore.subList(0, Math.min(this.keepBest, byScore.size()));
+        Set<Entry> keep = new HashSet<Entry>(best);
+        if (this.keepLatest < 0) {
+            keep.addAll(this.entries);
+        } else {
+            // entries are in cycle order, the latest ones are at the end
+            int from = Math.max(0, this.entries.size() - this.keepLatest);
+            keep.addAll(this.entries.subList(from, this.entries.size()));
+        }
+
+        List<Entry> retained = new ArrayList<Entry>(keep.size());
+        for (Entry e : this.entries) {
+            if (keep.contains(e)) {
+                retained.add(e);
+            } else if (this.writtenFiles.remove(e.fileName)) {
+                Files.deleteIfExists(new File(this.outDir, e.fileName).toPath());
+            }
+        }
+        this.entries.clear();
+        this.entries.addAll(retained);
+
+        File index = new File(this.outDir, INDEX_FILE);
+        File tmp = new File(this.outDir, INDEX_FILE + ".tmp");
+        try (PrintWriter out = new PrintWriter(tmp, "UTF-8")) {
+            out.println("cycle\tfile\tavg_utility\tavg_num_wins\tbest_rank");
+            for (Entry e : retained) {
+                int rank = best.indexOf(e) + 1;
+                out.println(e.cycle + "\t" + e.fileName + "\t" + e.avgUtility + "\t" + e.avgWins + "\t" + rank);
+            }
+        }
+        Files.move(tmp.toPath(), index.toPath(), StandardCopyOption.REPLACE_EXISTING,
+                StandardCopyOption.ATOMIC_MOVE);
+    }
+}
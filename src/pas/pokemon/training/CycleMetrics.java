@@ -0,0 +1,166 @@
+package src.pas.pokemon.training;
+
+// SYSTEM IMPORTS
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+// JAVA PROJECT IMPORTS
+import src.pas.pokemon.utils.LatencyHistogram;
+
+// Timings and counters for one training cycle, written as one JSON object per line.
+// Phases are timed with System.nanoTime around whole phases (a handful of calls per cycle) and decisions
+// go through the agents' LatencyHistograms, so collection stays far below 1% of a cycle.
+//
+// Fields of a line:
+//   cycle, phase_ms.{play,dataset,update,eval,checkpoint,total}, train_games, truncated_games, transitions,
+//   games_per_sec, transitions_per_sec (over the play phase), decisions, decision_mean_us,
+//   decision_p99_us, updates, sustained_transitions_per_sec, sustained_updates_per_sec (over the whole cycle,
+//   the numbers to compare between the phase-locked and --async loops), replay_size, replay_capacity,
+//   heap_used_mb, heap_max_mb, plus the eval results. --async lines also have weights_version, dropped_games,
+//   staleness_mean and staleness_max.
+public class CycleMetrics {
+
+    public static final String[] PHASES = {"play", "dataset", "update", "eval", "checkpoint"};
+
+    private final int cycle;
+    private final long cycleStart;
+    private final Map<String, Long> phaseNanos;
+    private final LatencyHistogram decisionLatency;
+
+    private int numTrainingGames;
+    private int numTruncatedGames;
+    private int numTransitions;
+    private long numUpdateSteps;
+    private boolean async = false;
+    private int weightsVersion;
+    private int numDroppedGames;
+    private double meanStaleness;
+    private int maxStaleness;
+    private int replaySize;
+    private int replayCapacity;
+    private double avgUtility;
+    private double avgWins;
+
+    private String currentPhase;
+    private long phaseStart;
+
+    public CycleMetrics(int cycle) {
+        this.cycle = cycle;
+        this.cycleStart = System.nanoTime();
+        this.phaseNanos = new LinkedHashMap<String, Long>();
+        for (String phase : PHASES) {
+            this.phaseNanos.put(phase, 0L);
+        }
+        this.decisionLatency = new LatencyHistogram();
+        this.currentPhase = null;
+    }
+
+    // Start timing phase (ends the previous one, if any).
+    public void begin(String phase) {
+        this.end();
+        this.currentPhase = phase;
+        this.phaseStart = System.nanoTime();
+    }
+
+    public void end() {
+        if (this.currentPhase != null) {
+            this.addPhaseNanos(this.currentPhase, System.nanoTime() - this.phaseStart);
+            this.currentPhase = null;
+        }
+    }
+
+    // For phases that are interleaved with others (e.g. target computation inside the update loop).
+    public void addPhaseNanos(String phase, long nanos) {
+        Long prev = this.phaseNanos.get(phase);
+        this.phaseNanos.put(phase, ((prev != null) ? prev : 0L) + nanos);
+    }
+
+    public LatencyHistogram getDecisionLatency() {
+        return this.decisionLatency;
+    }
+
+    public void setTrainingGames(int numGames, int numTransitions) {
+        this.numTrainingGames = numGames;
+        this.numTransitions = numTransitions;
+    }
+
+    // Training games cut at the turn cap.
+    public void setTruncatedGames(int numTruncatedGames) {
+        this.numTruncatedGames = numTruncatedGames;
+    }
+
+    // Gradient steps (mini-batches) taken by the learner.
+    public void addUpdateSteps(int numSteps) {
+        this.numUpdateSteps += numSteps;
+    }
+
+    public void setAsync(int weightsVersion, int numDroppedGames, double meanStaleness, int maxStaleness) {
+        this.async = true;
+        this.weightsVersion = weightsVersion;
+        this.numDroppedGames = numDroppedGames;
+        this.meanStaleness = meanStaleness;
+        this.maxStaleness = maxStaleness;
+    }
+
+    public void setReplay(int size, int capacity) {
+        this.replaySize = size;
+        this.replayCapacity = capacity;
+    }
+
+    public void setEval(double avgUtility, double avgWins) {
+        this.avgUtility = avgUtility;
+        this.avgWins = avgWins;
+    }
+
+    public String toJson() {
+        this.end();
+        long totalNanos = System.nanoTime() - this.cycleStart;
+        double playSec = this.phaseNanos.get("play") / 1e9;
+        Runtime rt = Runtime.getRuntime();
+
+        StringBuilder sb = new StringBuilder(512);
+        sb.append("{\"cycle\":").append(this.cycle);
+        sb.append(",\"phase_ms\":{");
+        for (Map.Entry<String, Long> e : this.phaseNanos.entrySet()) {
+            sb.append('"').append(e.getKey()).append("\":").append(e.getValue() / 1e6).append(',');
+        }
+        sb.append("\"total\":").append(totalNanos / 1e6).append('}');
+        sb.append(",\"train_games\":").append(this.numTrainingGames);
+        sb.append(",\"truncated_games\":").append(this.numTruncatedGames);
+        sb.append(",\"transitions\":").append(this.numTransitions);
+        sb.append(",\"games_per_sec\":").append(playSec > 0 ? this.numTrainingGames / playSec : 0.0);
+        sb.append(",\"transitions_per_sec\":").append(playSec > 0 ? this.numTransitions / playSec : 0.0);
+        sb.append(",\"decisions\":").append(this.decisionLatency.getCount());
+        sb.append(",\"decision_mean_us\":").append(this.decisionLatency.getMeanNanos() / 1e3);
+        sb.append(",\"decision_p99_us\":").append(this.decisionLatency.getPercentileNanos(0.99) / 1e3);
+        sb.append(",\"updates\":").append(this.numUpdateSteps);
+        sb.append(",\"sustained_transitions_per_sec\":").append(this.numTransitions / (totalNanos / 1e9));
+        sb.append(",\"sustained_updates_per_sec\":").append(this.numUpdateSteps / (totalNanos / 1e9));
+        if (this.async) {
+            sb.append(",\"weights_version\":").append(this.weightsVersion);
+            sb.append(",\"dropped_games\":").append(this.numDroppedGames);
+            sb.append(",\"staleness_mean\":").append(this.meanStaleness);
+            sb.append(",\"staleness_max\":").append(this.maxStaleness);
+        }
+        sb.append(",\"replay_size\":").append(this.replaySize);
+        sb.append(",\"replay_capacity\":").append(this.replayCapacity);
+        sb.append(",\"heap_used_mb\":").append((rt.totalMemory() - rt.freeMemory()) / (1024.0 * 1024.0));
+        sb.append(",\"heap_max_mb\":").append(rt.maxMemory() / (1024.0 * 1024.0));
+        sb.append(",\"avg_utility\":").append(this.avgUtility);
+        sb.append(",\"avg_num_wins\":").append(this.avgWins);
+        sb.append('}');
+        return sb.toString();
+    }
+
+    // Append this cycle's line to file (created if missing) and flush it right away.
+    public void appendTo(File file) throws IOException {
+        try (Writer out = new FileWriter(file, true)) {
+            out.write(this.toJson());
+            out.write('\n');
+        }
+    }
+}
@@ -0,0 +1,41 @@
+package src.pas.pokemon.training;
+
+// SYSTEM IMPORTS
+import java.util.Random;
+
+// JAVA PROJECT IMPORTS
+import edu.bu.pas.pokemon.agents.rewards.RewardFunction;
+import edu.bu.pas.pokemon.training.data.ReplacementType;
+import src.pas.pokemon.agents.PolicyAgent;
+
+// Replay buffer that stores transitions already encoded instead of holding on to whole BattleViews.
+// Every sample is one RecordReplay record (the (s, a) row, reward, terminal flag, and the state block
+// plus legal action columns of s' for the max-Q target) in a single flat float32 array on the heap.
+// That is ~1.2KB per transition instead of two full BattleViews, so millions of samples fit in a few GB.
+// Eviction follows the framework's ReplacementType (RANDOM or OLDEST).
+public class EncodedReplayBuffer extends RecordReplay {
+
+    private final float[] records;
+
+    public EncodedReplayBuffer(ReplacementType replacementType, int capacity, Random rng, PolicyAgent moveSource,
+            RewardFunction rewardFunction) {
+        super(replacementType, capacity, rng, moveSource, rewardFunction);
+        if ((long) capacity * RECORD_FLOATS > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("EncodedReplayBuffer: capacity " + capacity
+                    + " does not fit in one array, use MappedReplayStore instead");
+        }
+        this.records = new float[capacity * RECORD_FLOATS];
+    }
+
+    protected float read(int idx, int offset) {
+        return this.records[idx * RECORD_FLOATS + offset];
+    }
+
+    protected void write(int idx, float[] record) {
+        System.arraycopy(record, 0, this.records, idx * RECORD_FLOATS, RECORD_FLOATS);
+    }
+
+    protected int nextRandomIdx() {
+        return this.getRandom().nextInt(this.getCapacity());
+    }
+}
@@ -0,0 +1,42 @@
+package src.pas.pokemon.training;
+
+// SYSTEM IMPORTS
+
+// JAVA PROJECT IMPORTS
+import edu.bu.pas.pokemon.agents.rewards.RewardFunction;
+import edu.bu.pas.pokemon.core.Battle.BattleView;
+import edu.bu.pas.pokemon.core.Move.MoveView;
+import edu.bu.pas.pokemon.training.data.Dataset;
+import edu.bu.pas.pokemon.training.data.ReplayBuffer;
+import src.pas.pokemon.agents.PolicyAgent;
+
+// The framework's ReplayBuffer (stores whole BattleViews) behind the TransitionReplay interface.
+public class FrameworkReplay implements TransitionReplay {
+
+    private final ReplayBuffer buffer;
+
+    public FrameworkReplay(ReplayBuffer buffer) {
+        this.buffer = buffer;
+    }
+
+    public ReplayBuffer getBuffer() {
+        return this.buffer;
+    }
+
+    public void addSample(BattleView state, MoveView action, BattleView nextState) {
+        this.buffer.addSample(state, action, nextState);
+    }
+
+    public int size() {
+        return this.buffer.size();
+    }
+
+    public int getCapacity() {
+        return this.buffer.getCapacity();
+    }
+
+    public Dataset toDataset(PolicyAgent agent, double discountFactor, RewardFunction rewardFunction)
+            throws Exception {
+        return this.buffer.toDataset(agent, discountFactor, rewardFunction);
+    }
+}
@@ -0,0 +1,83 @@
+package src.pas.pokemon.training;
+
+// SYSTEM IMPORTS
+import java.io.IOException;
+import java.util.List;
+import java.util.Random;
+
+// JAVA PROJECT IMPORTS
+import edu.bu.pas.pokemon.core.Agent;
+import edu.bu.pas.pokemon.core.Battle;
+import edu.bu.pas.pokemon.core.Battle.BattleView;
+import edu.bu.pas.pokemon.core.Move.MoveView;
+import edu.bu.pas.pokemon.core.Team.TeamView;
+import edu.bu.pas.pokemon.core.Pokemon.PokemonView;
+import edu.bu.pas.pokemon.generators.BattleCreator;
+import edu.bu.pas.pokemon.utils.Triple;
+import src.pas.pokemon.agents.PolicyAgent;
+
+// Plays a single game between our agent (always team 1) and an enemy agent, optionally recording
+// the (state, action, nextState) transitions of every turn where our agent picked a move.
+public class GameRunner {
+
+    private final int teamSize;
+    private final int numMovesPerPokemon;
+
+    public GameRunner(int teamSize, int numMovesPerPokemon) {
+        this.teamSize = teamSize;
+        this.numMovesPerPokemon = numMovesPerPokemon;
+    }
+
+    // Returns the final view of the battle. transitions may be null if nothing should be recorded.
+    public BattleView playGame(PolicyAgent agent, Agent enemy, Random rng,
+            List<Triple<BattleView, MoveView, BattleView>> transitions) throws IOException {
+        return this.playGame(agent, enemy, rng, transitions, 0);
+    }
+
+    // Same, but stops after maxTurns turns (0 = play until the battle is over). The last transition of a
+    // truncated game has a next state that isn't over, so it is not terminal and its TD target bootstraps
+    // from the network instead of counting the cut as a draw. See isTruncated.
+    public BattleView playGame(PolicyAgent agent, Agent enemy, Random rng,
+            List<Triple<BattleView, MoveView, BattleView>> transitions, int maxTurns) throws IOException {
+        agent.registerTeamIdx(0);
+        enemy.registerTeamIdx(1);
+        Battle battle = BattleCreator.makeRandomTeams(this.teamSize, this.teamSize, this.numMovesPerPokemon,
+                rng, agent, enemy);
+
+        BattleView state = battle.getView();
+        int numTurns = 0;
+        while (!battle.isOver() && (maxTurns <= 0 || numTurns < maxTurns)) {
+            agent.clearLastMove();
+            battle.nextTurn();
+            BattleView nextState = battle.getView();
+
+            MoveView action = agent.getLastMove();
+            if (transitions != null && action != null) {
+                transitions.add(new Triple<BattleView, MoveView, BattleView>(state, action, nextState));
+            }
+            state = nextState;
+            numTurns++;
+        }
+
+        agent.afterGameEnds(state);
+        enemy.afterGameEnds(state);
+        return state;
+    }
+
+    // True if playGame stopped at the turn cap before anyone won.
+    public static boolean isTruncated(BattleView finalState) {
+        return !finalState.isOver();
+    }
+
+    // Our agent is team 1, so we won if every pokemon on team 2 fainted.
+    public static boolean isWin(BattleView finalState) {
+        TeamView oppTeam = finalState.getTeam2View();
+        for (int i = 0; i < oppTeam.size(); i++) {
+            PokemonView pkmn = oppTeam.getPokemonView(i);
+            if (pkmn != null && !pkmn.hasFainted()) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
@@ -0,0 +1,147 @@
+package src.pas.pokemon.training;
+
+// SYSTEM IMPORTS
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Random;
+
+// JAVA PROJECT IMPORTS
+import edu.bu.pas.pokemon.agents.rewards.RewardFunction;
+import edu.bu.pas.pokemon.training.data.ReplacementType;
+import src.pas.pokemon.agents.PolicyAgent;
+
+// Replay store backed by a memory-mapped file, so the buffer can be larger than the heap and survives
+// restarts. The file is a HEADER_BYTES header followed by capacity fixed-width RecordReplay records.
+// The header holds everything needed to pick up where we left off: capacity, replacement type, size,
+// ring position and the state of the RNG used for RANDOM eviction.
+//
+// Reads go straight out of the mapping into the caller's matrices, nothing is copied onto the heap first.
+// Call flush() (e.g. once per cycle) to force dirty pages to disk.
+public class MappedReplayStore extends RecordReplay implements AutoCloseable {
+
+    private static final long MAGIC = 0x504B4D5245504C59L; // "PKMREPLY"
+    private static final int VERSION = 1;
+
+    private static final int HEADER_BYTES = 4096;
+    private static final int RECORD_BYTES = RECORD_FLOATS * Float.BYTES;
+
+    // Header field offsets
+    private static final int MAGIC_POS = 0;
+    private static final int VERSION_POS = 8;
+    private static final int RECORD_FLOATS_POS = 12;
+    private static final int CAPACITY_POS = 16;
+    private static final int REPLACEMENT_POS = 20;
+    private static final int SIZE_POS = 24;
+    private static final int NEWEST_POS = 28;
+    private static final int EVICTION_STATE_POS = 32;
+
+    // A single MappedByteBuffer can't go past 2GB, so records are spread over ~1GB segments.
+    private static final int RECORDS_PER_SEGMENT = (1 << 30) / RECORD_BYTES;
+
+    private final RandomAccessFile file;
+    private final MappedByteBuffer header;
+    private final MappedByteBuffer[] segments;
+
+    // 64-bit LCG for RANDOM eviction. Unlike java.util.Random its state can be saved in the header.
+    private long evictionState;
+
+    private MappedReplayStore(RandomAccessFile file, ReplacementType replacementType, int capacity, Random rng,
+            PolicyAgent moveSource, RewardFunction rewardFunction) throws IOException {
+        super(replacementType, capacity, rng, moveSource, rewardFunction);
+        this.file = file;
+
+        FileChannel channel = file.getChannel();
+        this.header = channel.map(FileChannel.MapMode.READ_WRITE, 0, HEADER_BYTES);
+
+        int numSegments = (capacity + RECORDS_PER_SEGMENT - 1) / RECORDS_PER_SEGMENT;
+        this.segments = new MappedByteBuffer[numSegments];
+        for (int s = 0; s < numSegments; s++) {
+            int numRecords = Math.min(RECORDS_PER_SEGMENT, capacity - s * RECORDS_PER_SEGMENT);
+            long position = HEADER_BYTES + (long) s * RECORDS_PER_SEGMENT * RECORD_BYTES;
+            this.segments[s] = channel.map(FileChannel.MapMode.READ_WRITE, position, (long) numRecords * RECORD_BYTES);
+        }
+    }
+
+    // Open the store at path, creating it if needed. An existing store keeps its own capacity and replacement
+    // type (the arguments are only used for new files) and resumes with its ring position and eviction state.
+    public static MappedReplayStore open(File path, ReplacementType replacementType, int capacity, Random rng,
+            PolicyAgent moveSource, RewardFunction rewardFunction) throws IOException {
+        boolean exists = path.exists() && path.length() >= HEADER_BYTES;
+        RandomAccessFile file = new RandomAccessFile(path, "rw");
+
+        if (exists) {
+            MappedByteBuffer header = file.getChannel().map(FileChannel.MapMode.READ_ONLY, 0, HEADER_BYTES);
+            if (header.getLong(MAGIC_POS) != MAGIC || header.getInt(VERSION_POS) != VERSION
+                    || header.getInt(RECORD_FLOATS_POS) != RECORD_FLOATS) {
+                file.close();
+                throw new IOException("MappedReplayStore.open: " + path + " is not a compatible replay store");
+            }
+            capacity = header.getInt(CAPACITY_POS);
+            replacementType = ReplacementType.values()[header.getInt(REPLACEMENT_POS)];
+        } else {
+            file.setLength(HEADER_BYTES + (long) capacity * RECORD_BYTES);
+        }
+
+        MappedReplayStore store = new MappedReplayStore(file, replacementType, capacity, rng, moveSource,
+                rewardFunction);
+        if (exists) {
+            store.setSize(store.header.getInt(SIZE_POS));
+            store.setNewestSampleIdx(store.header.getInt(NEWEST_POS));
+            store.evictionState = store.header.getLong(EVICTION_STATE_POS);
+        } else {
+            store.evictionState = rng.nextLong();
+            store.header.putLong(MAGIC_POS, MAGIC);
+            store.header.putInt(VERSION_POS, VERSION);
+            store.header.putInt(RECORD_FLOATS_POS, RECORD_FLOATS);
+            store.header.putInt(CAPACITY_POS, capacity);
+            store.header.putInt(REPLACEMENT_POS, replacementType.ordinal());
+            store.writeState();
+        }
+        return store;
+    }
+
+    private void writeState() {
+        this.header.putInt(SIZE_POS, this.size());
+        this.header.putInt(NEWEST_POS, this.getNewestSampleIdx());
+        this.header.putLong(EVICTION_STATE_POS, this.evictionState);
+    }
+
+    protected float read(int idx, int offset) {
+        MappedByteBuffer segment = this.segments[idx / RECORDS_PER_SEGMENT];
+        return segment.getFloat((idx % RECORDS_PER_SEGMENT) * RECORD_BYTES + offset * Float.BYTES);
+    }
+
+    protected void write(int idx, float[] record) {
+        MappedByteBuffer segment = this.segments[idx / RECORDS_PER_SEGMENT];
+        int base = (idx % RECORDS_PER_SEGMENT) * RECORD_BYTES;
+        for (int i = 0; i < RECORD_FLOATS; i++) {
+            segment.putFloat(base + i * Float.BYTES, record[i]);
+        }
+    }
+
+    protected int nextRandomIdx() {
+        this.evictionState = this.evictionState * 6364136223846793005L + 1442695040888963407L;
+        return (int) Math.floorMod(this.evictionState >>> 33, (long) this.getCapacity());
+    }
+
+    @Override
+    protected void onSampleAdded(int idx) {
+        // Keep the header in sync with every add so a reopen sees the same ring position.
+        this.writeState();
+    }
+
+    public void flush() {
+        for (MappedByteBuffer segment : this.segments) {
+            segment.force();
+        }
+        this.header.force();
+    }
+
+    public void close() throws IOException {
+        this.flush();
+        this.file.close();
+    }
+}
@@ -0,0 +1,220 @@
+package src.pas.pokemon.training;
+
+// SYSTEM IMPORTS
+import net.sourceforge.argparse4j.inf.Namespace;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+// JAVA PROJECT IMPORTS
+import edu.bu.pas.pokemon.Train;
+import edu.bu.pas.pokemon.agents.rewards.RewardFunction;
+import edu.bu.pas.pokemon.core.Agent;
+import edu.bu.pas.pokemon.core.Battle.BattleView;
+import edu.bu.pas.pokemon.core.Move.MoveView;
+import edu.bu.pas.pokemon.utils.Triple;
+import src.pas.pokemon.agents.PolicyAgent;
+import src.pas.pokemon.utils.RewardUtils;
+
+// Multi-threaded replacement for Train.playEvalGames, meant for thousands of games per cycle.
+// Every worker owns a PolicyAgent in eval() mode (weights copied from the learner), its own enemies and
+// its own reward function. Game g is played against enemy g % numEnemies with its own Random seeded from
+// (seed, g), and its result is stored at index g, so the numbers only depend on the seed and not on how
+// the games ended up spread over the threads. Workers pull games from a shared counter.
+public class ParallelEval {
+
+    private final Worker[] workers;
+    private final ExecutorService pool;
+    private final GameRunner runner;
+    private final List<String> enemyNames;
+
+    public ParallelEval(Namespace args, List<String> enemyAgentNames, int numThreads, GameRunner runner) {
+        this.workers = new Worker[numThreads];
+        for (int w = 0; w < numThreads; w++) {
+            this.workers[w] = new Worker(args, enemyAgentNames);
+        }
+        this.pool = Executors.newFixedThreadPool(numThreads);
+        this.runner = runner;
+        this.enemyNames = new ArrayList<String>(enemyAgentNames);
+    }
+
+    // Mean of a sample together with the bounds [lo, hi] of its 95% confidence interval (not necessarily
+    // symmetric around the mean, win rates use a Wilson interval).
+    public static class Stat {
+        public final int n;
+        public final double mean;
+        public final double lo;
+        public final double hi;
+
+        public Stat(int n, double mean, double lo, double hi) {
+            this.n = n;
+            this.mean = mean;
+            this.lo = lo;
+            this.hi = hi;
+        }
+
+        // Normal approximation, mean +- 1.96 * sd / sqrt(n).
+        public static Stat ofMean(double[] xs, int[] owner, int which) {
+            int n = 0;
+            double sum = 0.0;
+            for (int i = 0; i < xs.length; i++) {
+                if (which < 0 || owner[i] == which) {
+                    n++;
+                    sum += xs[i];
+                }
+            }
+            double mean = (n > 0) ? sum / n : 0.0;
+            double sq = 0.0;
+            for (int i = 0; i < xs.length; i++) {
+                if (which < 0 || owner[i] == which) {
+                    sq += (xs[i] - mean) * (xs[i] - mean);
+                }
+            }
+            double halfWidth = (n > 1) ? 1.96 * Math.sqrt(sq / (n - 1)) / Math.sqrt(n) : 0.0;
+            return new Stat(n, mean, mean - halfWidth, mean + halfWidth);
+        }
+
+        // Wilson score interval for a win rate (stays inside [0, 1] even at 0 or n wins).
+        public static Stat ofRate(double[] wins, int[] owner, int which) {
+            int n = 0;
+            double k = 0.0;
+            for (int i = 0; i < wins.length; i++) {
+                if (which < 0 || owner[i] == which) {
+                    n++;
+                    k += wins[i];
+                }
+            }
+            if (n == 0) {
+                return new Stat(0, 0.0, 0.0, 0.0);
+            }
+            double z = 1.96;
+            double p = k / n;
+            double denom = 1.0 + z * z / n;
+            double center = (p + z * z / (2.0 * n)) / denom;
+            double halfWidth = z * Math.sqrt(p * (1.0 - p) / n + z * z / (4.0 * n * n)) / denom;
+            return new Stat(n, p, Math.max(0.0, center - halfWidth), Math.min(1.0, center + halfWidth));
+        }
+
+        public String toString() {
+            return this.mean + " ci95=[" + this.lo + "," + this.hi + "]";
+        }
+    }
+
+    public static class Result {
+        public final Stat wins;
+        public final Stat utility;
+        public final List<String> enemyNames;
+        public final List<Stat> winsPerEnemy;
+        public final List<Stat> utilityPerEnemy;
+
+        public Result(Stat wins, Stat utility, List<String> enemyNames, List<Stat> winsPerEnemy,
+                List<Stat> utilityPerEnemy) {
+            this.wins = wins;
+            this.utility = utility;
+            this.enemyNames = enemyNames;
+            this.winsPerEnemy = winsPerEnemy;
+            this.utilityPerEnemy = utilityPerEnemy;
+        }
+    }
+
+    public int getNumThreads() {
+        return this.workers.length;
+    }
+
+    // Play numGames greedy games with the current weights of master.
+    public Result evaluate(PolicyAgent master, int numGames, long seed) throws Exception {
+        final double[] wins = new double[numGames];
+        final double[] utilities = new double[numGames];
+        final int[] enemyIdx = new int[numGames];
+        final AtomicInteger nextGame = new AtomicInteger(0);
+        final long baseSeed = seed;
+
+        List<Future<?>> futures = new ArrayList<Future<?>>(this.workers.length);
+        for (final Worker worker : this.workers) {
+            worker.agent.copyWeightsFrom(master.getModel());
+            worker.agent.setEpsilon(master.getEpsilon());
+            if (worker.agent.getLookaheadBudgetMillis() != master.getLookaheadBudgetMillis()) {
+                // Games already run in parallel, so each worker searches on a single thread.
+                worker.agent.setLookahead(master.getLookaheadBudgetMillis(), master.getLookaheadMinProb(),
+                        master.getLookaheadMaxDepth(), 1);
+                worker.agent.setLookaheadTableCapacity(master.getLookaheadTableCapacity(),
+                        master.getLookaheadExpansionBytes());
+            }
+            if (worker.agent.getReplacementBudgetMillis() != master.getReplacementBudgetMillis()) {
+                worker.agent.setReplacementBudget(master.getReplacementBudgetMillis(), 1);
+            }
+            worker.agent.eval();
+            futures.add(this.pool.submit(() -> {
+                worker.play(this.runner, nextGame, numGames, baseSeed, wins, utilities, enemyIdx);
+                return null;
+            }));
+        }
+        for (Future<?> future : futures) {
+            future.get();
+        }
+
+        List<Stat> winsPerEnemy = new ArrayList<Stat>(this.enemyNames.size());
+        List<Stat> utilityPerEnemy = new ArrayList<Stat>(this.enemyNames.size());
+        for (int e = 0; e < this.enemyNames.size(); e++) {
+            winsPerEnemy.add(Stat.ofRate(wins, enemyIdx, e));
+            utilityPerEnemy.add(Stat.ofMean(utilities, enemyIdx, e));
+        }
+        return new Result(Stat.ofRate(wins, enemyIdx, -1), Stat.ofMean(utilities, enemyIdx, -1), this.enemyNames,
+                winsPerEnemy, utilityPerEnemy);
+    }
+
+    // Seed of game g. SplitMix64 finalizer so neighbouring games get unrelated streams.
+    public static long gameSeed(long seed, int g) {
+        long z = seed + (g + 1) * 0x9E3779B97F4A7C15L;
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        return z ^ (z >>> 31);
+    }
+
+    public void shutdown() {
+        this.pool.shutdownNow();
+    }
+
+    private static class Worker {
+        private final PolicyAgent agent;
+        private final List<Agent> enemies;
+        private final RewardFunction rewardFunction;
+        private final List<Triple<BattleView, MoveView, BattleView>> transitions;
+
+        private Worker(Namespace args, List<String> enemyAgentNames) {
+            this.agent = new PolicyAgent();
+            this.agent.initialize(args);
+            this.enemies = new ArrayList<Agent>(enemyAgentNames.size());
+            for (String name : enemyAgentNames) {
+                Agent enemy = Train.getAgent(name);
+                enemy.initialize(args);
+                this.enemies.add(enemy);
+            }
+            this.rewardFunction = Train.getRewardFunction();
+            this.transitions = new ArrayList<Triple<BattleView, MoveView, BattleView>>();
+        }
+
+        private void play(GameRunner runner, AtomicInteger nextGame, int numGames, long seed, double[] wins,
+                double[] utilities, int[] enemyIdx) throws Exception {
+            for (int g = nextGame.getAndIncrement(); g < numGames; g = nextGame.getAndIncrement()) {
+                int e = g % this.enemies.size();
+                this.transitions.clear();
+                BattleView finalState = runner.playGame(this.agent, this.enemies.get(e), new Random(gameSeed(seed, g)),
+                        this.transitions);
+
+                double utility = 0.0;
+                for (Triple<BattleView, MoveView, BattleView> t : this.transitions) {
+                    utility += RewardUtils.getReward(this.rewardFunction, t.getFirst(), t.getSecond(), t.getThird());
+                }
+                wins[g] = GameRunner.isWin(finalState) ? 1.0 : 0.0;
+                utilities[g] = utility;
+                enemyIdx[g] = e;
+            }
+            this.transitions.clear();
+        }
+    }
+}
@@ -0,0 +1,153 @@
+package src.pas.pokemon.training;
+
+// SYSTEM IMPORTS
+import net.sourceforge.argparse4j.inf.Namespace;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+// JAVA PROJECT IMPORTS
+import edu.bu.pas.pokemon.Train;
+import edu.bu.pas.pokemon.core.Agent;
+import edu.bu.pas.pokemon.core.Battle.BattleView;
+import edu.bu.pas.pokemon.core.Move.MoveView;
+import edu.bu.pas.pokemon.utils.Triple;
+import src.pas.pokemon.agents.PolicyAgent;
+import src.pas.pokemon.utils.LatencyHistogram;
+
+// Multi-threaded replacement for Train.playTrainingGames.
+// Every worker owns its own PolicyAgent (weights copied from the learner before each phase, so the
+// learner's network is only ever read), its own enemy agents and its own Random seeded from the master rng.
+// Workers collect transitions into private lists which are merged into the replay buffer in worker order
+// once everybody is done, so there is no contention while playing and the result only depends on
+// (seed, numThreads).
+public class ParallelSelfPlay {
+
+    private final Worker[] workers;
+    private final ExecutorService pool;
+    private final GameRunner runner;
+    private int maxTurns = 0; // turn cap per training game, 0 = none
+    private int numTruncatedGames = 0;
+
+    public ParallelSelfPlay(Namespace args, List<String> enemyAgentNames, int numThreads, GameRunner runner) {
+        this.workers = new Worker[numThreads];
+        for (int w = 0; w < numThreads; w++) {
+            this.workers[w] = new Worker(args, enemyAgentNames);
+        }
+        this.pool = Executors.newFixedThreadPool(numThreads);
+        this.runner = runner;
+    }
+
+    public int getNumThreads() {
+        return this.workers.length;
+    }
+
+    // Cut training games after maxTurns turns (0 = play them out). Truncated games end on a non-terminal
+    // transition, see GameRunner.playGame.
+    public void setMaxTurns(int maxTurns) {
+        this.maxTurns = maxTurns;
+    }
+
+    public int getMaxTurns() {
+        return this.maxTurns;
+    }
+
+    // How many games of the last playTrainingGames call hit the turn cap.
+    public int getNumTruncatedGames() {
+        return this.numTruncatedGames;
+    }
+
+    // Play numGames training games with the current weights of master and push the transitions into buffer.
+    // Returns the number of transitions added.
+    public int playTrainingGames(PolicyAgent master, TransitionReplay buffer, int numGames, Random rng)
+            throws Exception {
+        int numThreads = this.workers.length;
+
+        // Hand every worker a fresh copy of the weights and exploration rate, plus its own seed.
+        List<Future<List<Triple<BattleView, MoveView, BattleView>>>> futures =
+                new ArrayList<Future<List<Triple<BattleView, MoveView, BattleView>>>>(numThreads);
+        for (int w = 0; w < numThreads; w++) {
+            final Worker worker = this.workers[w];
+            final long seed = rng.nextLong();
+            // Games are split statically (game g goes to worker g % numThreads) to keep runs reproducible.
+            final int numWorkerGames = numGames / numThreads + ((w < numGames % numThreads) ? 1 : 0);
+
+            worker.agent.copyWeightsFrom(master.getModel());
+            worker.agent.setEpsilon(master.getEpsilon());
+            if (worker.agent.getReplacementBudgetMillis() != master.getReplacementBudgetMillis()) {
+                // one thread per worker, the games themselves are already parallel
+                worker.agent.setReplacementBudget(master.getReplacementBudgetMillis(), 1);
+            }
+            worker.agent.train();
+
+            final int maxTurns = this.maxTurns;
+            futures.add(this.pool.submit(() -> worker.play(this.runner, numWorkerGames, maxTurns,
+                    new Random(seed))));
+        }
+
+        // Merge in worker order.
+        int numTransitions = 0;
+        for (Future<List<Triple<BattleView, MoveView, BattleView>>> future : futures) {
+            for (Triple<BattleView, MoveView, BattleView> t : future.get()) {
+                buffer.addSample(t.getFirst(), t.getSecond(), t.getThird());
+                numTransitions++;
+            }
+        }
+        this.numTruncatedGames = 0;
+        for (Worker worker : this.workers) {
+            this.numTruncatedGames += worker.numTruncated;
+        }
+
+        // The workers decayed their own copies, catch the learner's epsilon up.
+        master.decayEpsilon(numGames);
+        return numTransitions;
+    }
+
+    // Add the getMove latencies the workers recorded since the last call to into, and reset them.
+    // Only call between playTrainingGames calls.
+    public void drainDecisionLatency(LatencyHistogram into) {
+        for (Worker worker : this.workers) {
+            into.merge(worker.agent.getDecisionLatency());
+            worker.agent.getDecisionLatency().reset();
+        }
+    }
+
+    public void shutdown() {
+        this.pool.shutdownNow();
+    }
+
+    private static class Worker {
+        private final PolicyAgent agent;
+        private final List<Agent> enemies;
+        private int numTruncated = 0; // of the last play() call
+
+        private Worker(Namespace args, List<String> enemyAgentNames) {
+            this.agent = new PolicyAgent();
+            this.agent.initialize(args);
+            this.enemies = new ArrayList<Agent>(enemyAgentNames.size());
+            for (String name : enemyAgentNames) {
+                Agent enemy = Train.getAgent(name);
+                enemy.initialize(args);
+                this.enemies.add(enemy);
+            }
+        }
+
+        private List<Triple<BattleView, MoveView, BattleView>> play(GameRunner runner, int numGames, int maxTurns,
+                Random rng) throws Exception {
+            List<Triple<BattleView, MoveView, BattleView>> transitions =
+                    new ArrayList<Triple<BattleView, MoveView, BattleView>>();
+            this.numTruncated = 0;
+            for (int g = 0; g < numGames; g++) {
+                Agent enemy = this.enemies.get(rng.nextInt(this.enemies.size()));
+                BattleView finalState = runner.playGame(this.agent, enemy, rng, transitions, maxTurns);
+                if (GameRunner.isTruncated(finalState)) {
+                    this.numTruncated++;
+                }
+            }
+            return transitions;
+        }
+    }
+}
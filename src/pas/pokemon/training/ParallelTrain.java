@@ -0,0 +1,621 @@
+package src.pas.pokemon.training;
+
+// SYSTEM IMPORTS
+import net.sourceforge.argparse4j.ArgumentParsers;
+import net.sourceforge.argparse4j.impl.Arguments;
+import net.sourceforge.argparse4j.inf.ArgumentParser;
+import net.sourceforge.argparse4j.inf.ArgumentParserException;
+import net.sourceforge.argparse4j.inf.Namespace;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+// JAVA PROJECT IMPORTS
+import edu.bu.pas.pokemon.Train;
+import edu.bu.pas.pokemon.agents.rewards.RewardFunction;
+import edu.bu.pas.pokemon.core.Agent;
+import edu.bu.pas.pokemon.core.Battle.BattleView;
+import edu.bu.pas.pokemon.core.Move.MoveView;
+import edu.bu.pas.pokemon.linalg.Matrix;
+import edu.bu.pas.pokemon.nn.LossFunction;
+import edu.bu.pas.pokemon.nn.Model;
+import edu.bu.pas.pokemon.nn.Optimizer;
+import edu.bu.pas.pokemon.nn.losses.MeanSquaredError;
+import edu.bu.pas.pokemon.training.data.Dataset;
+import edu.bu.pas.pokemon.training.data.ReplacementType;
+import edu.bu.pas.pokemon.training.data.ReplayBuffer;
+import edu.bu.pas.pokemon.utils.Pair;
+import edu.bu.pas.pokemon.utils.Triple;
+import src.pas.pokemon.agents.LookaheadSearch;
+import src.pas.pokemon.agents.PolicyAgent;
+import src.pas.pokemon.nn.Checkpoint;
+import src.pas.pokemon.nn.CheckpointLoadable;
+import src.pas.pokemon.nn.DenseKernels;
+import src.pas.pokemon.nn.FastMLP;
+import src.pas.pokemon.nn.ResumableAdamOptimizer;
+import src.pas.pokemon.nn.TargetNetwork;
+import src.pas.pokemon.utils.RewardUtils;
+
+// Training driver that mirrors edu.bu.pas.pokemon.Train (play -> dataset -> update -> eval -> save)
+// but plays the training games of each cycle on several threads. With --async the actors of AsyncSelfPlay
+// keep playing through the update, eval and save phases and this thread is the learner.
+//
+// java -cp "./lib/*:." src.pas.pokemon.training.ParallelTrain --numThreads 32 --seed 1 | tee training.log
+public class ParallelTrain {
+
+    public static final List<String> DEFAULT_ENEMIES = Arrays.asList(
+            "edu.bu.pas.pokemon.agents.RandomAgent",
+            "edu.bu.pas.pokemon.agents.AggroAgent",
+            "edu.bu.pas.pokemon.agents.Drac5290Agent");
+
+    public static ArgumentParser makeParser() {
+        ArgumentParser parser = ArgumentParsers.newFor("ParallelTrain").build()
+                .defaultHelp(true)
+                .description("Multi-threaded self-play training for PolicyAgent");
+        parser.addArgument("-c", "--numCycles").type(Integer.class).setDefault(100)
+                .help("number of play/update/eval cycles");
+        parser.addArgument("-t", "--numTrainingGames").type(Integer.class).setDefault(100)
+                .help("training games per cycle");
+        parser.addArgument("-v", "--numEvalGames").type(Integer.class).setDefault(20)
+                .help("evaluation games per cycle");
+        parser.addArgument("-j", "--numThreads").type(Integer.class)
+                .setDefault(Runtime.getRuntime().availableProcessors())
+                .help("number of self-play worker threads");
+        parser.addArgument("-s", "--seed").type(Long.class)
+                .help("master seed (runs are reproducible for a fixed seed and thread count)");
+        parser.addArgument("--parallelEval").action(Arguments.storeTrue())
+                .help("spread the eval games over numThreads workers and report 95% CIs and per-opponent results");
+        parser.addArgument("--async").action(Arguments.storeTrue())
+                .help("actor-learner mode: numThreads actors play continuously while the network trains "
+                        + "(not reproducible for a fixed seed)");
+        parser.addArgument("--maxStaleness").type(Integer.class).setDefault(8)
+                .help("--async: drop actor games played with weights more than this many versions old");
+        parser.addArgument("--publishEvery").type(Integer.class).setDefault(0)
+                .help("--async: also publish weights to the actors every K gradient steps (0 = once per pass)");
+        parser.addArgument("--lookaheadMs").type(Long.class).setDefault(0L)
+                .help("per-move time budget of the eval-time lookahead search (0 = plain argmax)");
+        parser.addArgument("--lookaheadMinProb").type(Double.class).setDefault(0.05)
+                .help("outcomes less likely than this are pruned from the lookahead");
+        parser.addArgument("--lookaheadDepth").type(Integer.class).setDefault(3)
+                .help("maximum lookahead depth in plies (iterative deepening stops earlier if out of time)");
+        parser.addArgument("--lookaheadTableSize").type(Integer.class).setDefault(1 << 16)
+                .help("entries per lookahead transposition table of positions");
+        parser.addArgument("--lookaheadExpansionMB").type(Integer.class).setDefault(32)
+                .help("estimated size bound of the lookahead's table of move outcomes, per agent (so per "
+                        + "eval worker with --parallelEval)");
+        parser.addArgument("--replacementMs").type(Long.class).setDefault(0L)
+                .help("time budget for scoring faint replacements with the network (0 = type / HP heuristic)");
+        parser.addArgument("--enemyAgents").nargs("+").setDefault(DEFAULT_ENEMIES)
+                .help("classpaths of the opponents to train and evaluate against");
+        parser.addArgument("-b", "--bufferSize").type(Integer.class).setDefault(100000)
+                .help("replay buffer capacity");
+        parser.addArgument("--bufferReplacementType").type(ReplacementType.class).setDefault(ReplacementType.RANDOM)
+                .help("which sample to evict once the buffer is full");
+        parser.addArgument("--encodedReplay").action(Arguments.storeTrue())
+                .help("store transitions pre-encoded as float32 rows instead of whole BattleViews");
+        parser.addArgument("--replayFile")
+                .help("keep the encoded replay buffer in this memory-mapped file (reopened on restart)");
+        parser.addArgument("--prioritized").action(Arguments.storeTrue())
+                .help("prioritized experience replay (implies an encoded buffer)");
+        parser.addArgument("--perAlpha").type(Double.class).setDefault(0.6)
+                .help("priority exponent for prioritized replay");
+        parser.addArgument("--perBeta").type(Double.class).setDefault(0.4)
+                .help("initial importance-sampling exponent, annealed to 1 over the run");
+        parser.addArgument("--perEps").type(Double.class).setDefault(1e-3)
+                .help("added to |TD error| so no sample gets zero priority");
+        parser.addArgument("--targetRefreshEvery").type(Integer.class).setDefault(1)
+                .help("refresh the frozen target network every K updates (passes over the buffer)");
+        parser.addArgument("--expectedTargets").action(Arguments.storeTrue())
+                .help("expected-Bellman targets over the transition model (needs the default BattleView buffer)");
+        parser.addArgument("--expectedTargetMinProb").type(Double.class).setDefault(0.01)
+                .help("turn outcomes less likely than this are cut from the expected targets");
+        parser.addArgument("-u", "--numUpdates").type(Integer.class).setDefault(1)
+                .help("passes over the dataset per cycle");
+        parser.addArgument("-m", "--miniBatchSize").type(Integer.class).setDefault(128)
+                .help("mini-batch size");
+        parser.addArgument("--maxTurns").type(Integer.class).setDefault(0)
+                .help("cut training games after this many turns, bootstrapping from the network (0 = no cap)");
+        parser.addArgument("-g", "--gamma").type(Double.class).setDefault(0.99)
+                .help("discount factor");
+        parser.addArgument("--lr").type(Double.class).setDefault(1e-3)
+                .help("learning rate");
+        parser.addArgument("--teamSize").type(Integer.class).setDefault(6)
+                .help("pokemon per team");
+        parser.addArgument("--numMovesPerPokemon").type(Integer.class).setDefault(4)
+                .help("moves per pokemon");
+        parser.addArgument("-o", "--outDir").setDefault("params")
+                .help("directory to write params<cycle>.model files into");
+        parser.addArgument("--metricsFile")
+                .help("JSONL file for per-cycle timing/throughput metrics (default: <outDir>/metrics.jsonl)");
+        parser.addArgument("-i", "--inFile")
+                .help("model file to start from (a binary checkpoint also restores epsilon, Adam state and cycle)");
+        parser.addArgument("--binaryCheckpoints").action(Arguments.storeTrue())
+                .help("write params<cycle>.model as binary checkpoints with optimizer state instead of text");
+        parser.addArgument("--keepBest").type(Integer.class).setDefault(5)
+                .help("keep the K checkpoints with the best avg(num_wins)");
+        parser.addArgument("--sequentialModel").action(Arguments.storeTrue())
+                .help("train the framework Sequential with AdamOptimizer instead of FastMLP's fused steps");
+        parser.addArgument("--float32").action(Arguments.storeTrue())
+                .help("run FastMLP forward/backward in float32 (SIMD kernels when built with jdk.incubator.vector)");
+        parser.addArgument("--hiddenSize").type(Integer.class).setDefault(64)
+                .help("width of the hidden layer (params files only load into the same width)");
+        parser.addArgument("--keepLatest").type(Integer.class).setDefault(5)
+                .help("also keep the N most recent checkpoints (negative = keep every checkpoint)");
+        return parser;
+    }
+
+    public static void main(String[] argv) throws Exception {
+        ArgumentParser parser = makeParser();
+        Namespace args = null;
+        try {
+            args = parser.parseArgs(argv);
+        } catch (ArgumentParserException e) {
+            parser.handleError(e);
+            System.exit(1);
+        }
+
+        Long seed = args.getLong("seed");
+        Random rng = (seed != null) ? new Random(seed) : new Random();
+        List<String> enemyNames = args.getList("enemyAgents");
+
+        // before any agent (self-play and eval workers included) builds its model
+        PolicyAgent.setUseSequentialModel(args.getBoolean("sequentialModel"));
+        PolicyAgent.setUseFloat32Kernels(args.getBoolean("float32"));
+        PolicyAgent.setHiddenSize(args.getInt("hiddenSize"));
+        // evals have to score the weights being trained, not a quantized file
+        PolicyAgent.setUseQuantizedModelProperty(false);
+        if (System.getProperty("pokepa.quantizedModel") != null) {
+            System.err.println("ignoring -Dpokepa.quantizedModel while training");
+        }
+        if (args.getBoolean("float32")) {
+            System.err.println("float32 kernels: " + DenseKernels.get().getName());
+        }
+        PolicyAgent agent = new PolicyAgent();
+        agent.initialize(args);
+        Checkpoint resumed = null;
+        if (args.getString("inFile") != null) {
+            agent.getModel().load(args.getString("inFile"));
+            if (agent.getModel() instanceof CheckpointLoadable) {
+                resumed = ((CheckpointLoadable) agent.getModel()).getLoadedCheckpoint();
+            }
+        }
+        agent.setTargetRefreshEvery(args.getInt("targetRefreshEvery"));
+        agent.setExpectedTargets(args.getBoolean("expectedTargets"), args.getDouble("expectedTargetMinProb"));
+        agent.setLookahead(args.getLong("lookaheadMs"), args.getDouble("lookaheadMinProb"),
+                args.getInt("lookaheadDepth"), Runtime.getRuntime().availableProcessors());
+        agent.setLookaheadTableCapacity(args.getInt("lookaheadTableSize"),
+                (long) args.getInt("lookaheadExpansionMB") << 20);
+        agent.setReplacementBudget(args.getLong("replacementMs"), Runtime.getRuntime().availableProcessors());
+
+        List<Agent> evalEnemies = new ArrayList<Agent>(enemyNames.size());
+        for (String name : enemyNames) {
+            Agent enemy = Train.getAgent(name);
+            enemy.initialize(args);
+            evalEnemies.add(enemy);
+        }
+
+        RewardFunction rewardFunction = Train.getRewardFunction();
+        Model model = agent.getModel();
+        // A FastMLP trains with its own fused Adam steps, optim is only there for the framework layers.
+        FastMLP fused = (model instanceof FastMLP) ? (FastMLP) model : null;
+        ResumableAdamOptimizer optim = null;
+        if (fused != null) {
+            fused.setAdam(args.getDouble("lr"), 0.9, 0.999);
+        } else {
+            optim = new ResumableAdamOptimizer(model.getParameters(), args.getDouble("lr"), 0.9, 0.999);
+        }
+        int startCycle = 0;
+        if (resumed != null) {
+            agent.setEpsilon(resumed.getEpsilon());
+            if (resumed.hasMoments() && fused != null) {
+                fused.restoreMoments(resumed.getMTs(), resumed.getVTs(), resumed.getAdamStep());
+            } else if (resumed.hasMoments()) {
+                optim.restoreMoments(resumed.getMTs(), resumed.getVTs(), resumed.getAdamStep());
+            }
+            startCycle = resumed.getCycle() + 1;
+            System.err.println("resuming after cycle=" + resumed.getCycle() + " eps=" + resumed.getEpsilon());
+        }
+        LossFunction lossFunction = new MeanSquaredError();
+        TransitionReplay buffer = makeReplay(args, agent, rewardFunction, new Random(rng.nextLong()));
+        if (args.getBoolean("expectedTargets") && !(buffer instanceof FrameworkReplay)) {
+            // encoded stores don't keep the BattleViews the turn has to be re-played from
+            throw new IllegalArgumentException("--expectedTargets can't be combined with an encoded replay buffer");
+        }
+        TransitionReplay baseStore = (buffer instanceof PrioritizedReplay)
+                ? ((PrioritizedReplay) buffer).getStore() : buffer;
+        MappedReplayStore mappedStore = (baseStore instanceof MappedReplayStore)
+                ? (MappedReplayStore) baseStore : null;
+
+        GameRunner runner = new GameRunner(args.getInt("teamSize"), args.getInt("numMovesPerPokemon"));
+        // Either the phase-locked self-play of every cycle or actors that play all the time (--async).
+        ParallelSelfPlay selfPlay = null;
+        AsyncSelfPlay actors = null;
+        if (args.getBoolean("async")) {
+            actors = new AsyncSelfPlay(args, enemyNames, args.getInt("numThreads"), runner,
+                    args.getInt("numTrainingGames"), args.getInt("maxStaleness"), args.getInt("publishEvery"));
+            actors.setMaxTurns(args.getInt("maxTurns"));
+            // A game spanning more publishes than --maxStaleness is dropped. With --publishEvery an update
+            // phase over a full buffer publishes about numUpdates * bufferSize / (miniBatchSize * publishEvery)
+            // versions, and if that alone is over the bound most games would be thrown away.
+            if (args.getInt("publishEvery") > 0) {
+                long perPhase = (long) args.getInt("numUpdates") * ((args.getInt("bufferSize")
+                        + args.getInt("miniBatchSize") - 1) / args.getInt("miniBatchSize"))
+                        / args.getInt("publishEvery") + args.getInt("numUpdates");
+                if (perPhase > args.getInt("maxStaleness")) {
+                    System.err.println("warning: --publishEvery " + args.getInt("publishEvery") + " publishes up to "
+                            + perPhase + " versions per update phase, more than --maxStaleness "
+                            + args.getInt("maxStaleness") + ", games played during an update will be dropped");
+                }
+            }
+        } else {
+            selfPlay = new ParallelSelfPlay(args, enemyNames, args.getInt("numThreads"), runner);
+            selfPlay.setMaxTurns(args.getInt("maxTurns"));
+        }
+        ParallelEval parallelEval = args.getBoolean("parallelEval")
+                ? new ParallelEval(args, enemyNames, args.getInt("numThreads"), runner) : null;
+        new File(args.getString("outDir")).mkdirs();
+        File metricsFile = (args.getString("metricsFile") != null) ? new File(args.getString("metricsFile"))
+                : new File(args.getString("outDir"), "metrics.jsonl");
+        CheckpointManager checkpoints = new CheckpointManager(new File(args.getString("outDir")),
+                args.getBoolean("binaryCheckpoints"), args.getInt("keepBest"), args.getInt("keepLatest"), agent,
+                (resumed != null) ? resumed.getCycle() : -1);
+
+        try {
+            if (actors != null) {
+                actors.start(agent, new Random(rng.nextLong()));
+            }
+            for (int cycle = startCycle; cycle < args.getInt("numCycles"); cycle++) {
+                // With a fixed seed every cycle gets its own derived RNG. A resumed run still doesn't replay
+                // the run that stopped: the replay buffer isn't part of a checkpoint, it starts empty (or, with
+                // --replayFile, holds whatever the stopped run had flushed, possibly from later cycles).
+                Random cycleRng = (seed != null) ? new Random(seed * 1000003L + cycle) : rng;
+                CycleMetrics metrics = new CycleMetrics(cycle);
+
+                // In --async mode the games were (mostly) played while the previous cycle trained, and "play"
+                // is only the time spent waiting for them.
+                metrics.begin("play");
+                int numTransitions;
+                int numTruncatedGames;
+                if (actors != null) {
+                    numTransitions = actors.collect(agent, buffer, args.getInt("numTrainingGames"));
+                    actors.drainDecisionLatency(metrics.getDecisionLatency());
+                    numTruncatedGames = actors.getNumTruncatedGames();
+                } else {
+                    numTransitions = selfPlay.playTrainingGames(agent, buffer, args.getInt("numTrainingGames"),
+                            cycleRng);
+                    selfPlay.drainDecisionLatency(metrics.getDecisionLatency());
+                    numTruncatedGames = selfPlay.getNumTruncatedGames();
+                }
+                metrics.setTrainingGames(args.getInt("numTrainingGames"), numTransitions);
+                metrics.setTruncatedGames(numTruncatedGames);
+                metrics.end();
+
+                if (buffer instanceof PrioritizedReplay) {
+                    PrioritizedReplay per = (PrioritizedReplay) buffer;
+                    double beta0 = args.getDouble("perBeta");
+                    per.setBeta(beta0 + (1.0 - beta0) * cycle / Math.max(1, args.getInt("numCycles") - 1));
+                    updatePrioritized(agent, optim, per, args.getDouble("gamma"), args.getInt("numUpdates"),
+                            args.getInt("miniBatchSize"), cycleRng, metrics, actors);
+                } else if (buffer instanceof RecordReplay) {
+                    updateRecords(agent, optim, lossFunction, (RecordReplay) buffer, args.getDouble("gamma"),
+                            args.getInt("numUpdates"), args.getInt("miniBatchSize"), metrics, actors);
+                } else {
+                    update(agent, optim, lossFunction, buffer, rewardFunction, args.getDouble("gamma"),
+                            args.getInt("numUpdates"), args.getInt("miniBatchSize"), metrics, actors);
+                }
+
+                metrics.begin("eval");
+
+                Pair<Double, Double> evalResults;
+                if (parallelEval != null) {
+                    ParallelEval.Result result = parallelEval.evaluate(agent, args.getInt("numEvalGames"),
+                            cycleRng.nextLong());
+                    evalResults = new Pair<Double, Double>(result.utility.mean, result.wins.mean);
+                    printEvalDetails(cycle, result);
+                } else {
+                    evalResults = playEvalGames(agent, evalEnemies, rewardFunction, runner,
+                            args.getInt("numEvalGames"), cycleRng);
+                }
+                System.out.println("after cycle=" + cycle + " avg(utility)=" + evalResults.getFirst()
+                        + " avg(num_wins)=" + evalResults.getSecond());
+                if (args.getInt("maxTurns") > 0) {
+                    System.out.println("  selfplay cycle=" + cycle + " truncated=" + numTruncatedGames
+                            + "/" + args.getInt("numTrainingGames") + " at maxTurns=" + args.getInt("maxTurns"));
+                }
+                if (actors != null) {
+                    System.out.println("  async cycle=" + cycle + " version=" + actors.getVersion()
+                            + " staleness mean=" + actors.getMeanStaleness() + " max=" + actors.getMaxStaleness()
+                            + " dropped=" + actors.getNumDroppedGames() + " (maxStaleness="
+                            + args.getInt("maxStaleness") + ")");
+                    metrics.setAsync(actors.getVersion(), actors.getNumDroppedGames(), actors.getMeanStaleness(),
+                            actors.getMaxStaleness());
+                }
+                if (agent.getLookahead() != null) {
+                    LookaheadSearch search = agent.getLookahead();
+                    System.out.println("  lookahead cycle=" + cycle + " values: " + search.getValueTable()
+                            + " expansions: " + search.getExpansionTable());
+                }
+
+                metrics.setEval(evalResults.getFirst(), evalResults.getSecond());
+
+                // Snapshot on this thread, serialize on the checkpoint writer.
+                metrics.begin("checkpoint");
+                List<Matrix> mts = null;
+                List<Matrix> vts = null;
+                long adamStep = -1L;
+                if (args.getBoolean("binaryCheckpoints")) {
+                    mts = (fused != null) ? fused.copyMTs() : optim.copyMTs();
+                    vts = (fused != null) ? fused.copyVTs() : optim.copyVTs();
+                    adamStep = (fused != null) ? fused.getAdamStep() : optim.getNumSteps();
+                }
+                checkpoints.submit(new Checkpoint(cycle, agent.getEpsilon(), Checkpoint.copyValues(model), mts, vts,
+                        adamStep), evalResults.getFirst(), evalResults.getSecond());
+                if (mappedStore != null) {
+                    mappedStore.flush();
+                }
+                metrics.end();
+
+                metrics.setReplay(buffer.size(), buffer.getCapacity());
+                metrics.appendTo(metricsFile);
+            }
+        } finally {
+            if (selfPlay != null) {
+                selfPlay.shutdown();
+            }
+            if (actors != null) {
+                actors.shutdown();
+            }
+            if (parallelEval != null) {
+                parallelEval.shutdown();
+            }
+            if (mappedStore != null) {
+                mappedStore.close();
+            }
+            checkpoints.close(); // waits for the queued checkpoints
+        }
+    }
+
+    public static TransitionReplay makeReplay(Namespace args, PolicyAgent agent, RewardFunction rewardFunction,
+            Random rng) throws IOException {
+        ReplacementType replacementType = args.get("bufferReplacementType");
+        int capacity = args.getInt("bufferSize");
+        RecordReplay store = null;
+        if (args.getString("replayFile") != null) {
+            store = MappedReplayStore.open(new File(args.getString("replayFile")), replacementType, capacity, rng,
+                    agent, rewardFunction);
+        } else if (args.getBoolean("encodedReplay") || args.getBoolean("prioritized")) {
+            store = new EncodedReplayBuffer(replacementType, capacity, rng, agent, rewardFunction);
+        }
+
+        if (store == null) {
+            return new FrameworkReplay(new ReplayBuffer(replacementType, capacity, rng));
+        } else if (args.getBoolean("prioritized")) {
+            return new PrioritizedReplay(store, args.getDouble("perAlpha"), args.getDouble("perBeta"),
+                    args.getDouble("perEps"));
+        }
+        return store;
+    }
+
+    // Fit the network to the TD targets of the current buffer. metrics (may be null) gets the time spent
+    // building datasets and the time spent on gradient steps. A null optim means the model is a FastMLP that
+    // takes fused steps (lossFunction is then always MSE). actors (may be null) get the new weights after every
+    // pass and every --publishEvery steps.
+    public static void update(PolicyAgent agent, Optimizer optim, LossFunction lossFunction, TransitionReplay buffer,
+            RewardFunction rewardFunction, double gamma, int numUpdates, int miniBatchSize, CycleMetrics metrics,
+            AsyncSelfPlay actors) throws Exception {
+        Model model = agent.getModel();
+        int numSteps = 0;
+        for (int u = 0; u < numUpdates; u++) {
+            if (metrics != null) {
+                metrics.begin("dataset");
+            }
+            Dataset dataset = buffer.toDataset(agent, gamma, rewardFunction);
+            dataset.shuffle();
+            if (metrics != null) {
+                metrics.begin("update");
+            }
+
+            Dataset.BatchIterator it = dataset.iterator(miniBatchSize);
+            while (it.hasNext()) {
+                Pair<Matrix, Matrix> batch = it.next();
+                if (optim == null) {
+                    ((FastMLP) model).trainStep(batch.getFirst(), batch.getSecond());
+                } else {
+                    optim.reset();
+                    Matrix yHat = model.forward(batch.getFirst());
+                    model.backwards(batch.getFirst(), lossFunction.backwards(yHat, batch.getSecond()));
+                    optim.step();
+                }
+                numSteps++;
+                if (actors != null) {
+                    actors.onLearnerStep(agent);
+                }
+            }
+            if (actors != null) {
+                actors.publish(agent);
+            }
+        }
+        if (metrics != null) {
+            metrics.end();
+            metrics.addUpdateSteps(numSteps);
+        }
+    }
+
+    // update() for record stores without building a Dataset, which would copy the whole store (possibly a
+    // memory-mapped file far larger than the heap) into one Matrix. Every pass walks the samples in a fresh
+    // random order, and each mini-batch copies just its rows and gets its targets from the store's max-Q cache.
+    public static void updateRecords(PolicyAgent agent, Optimizer optim, LossFunction lossFunction,
+            RecordReplay store, double gamma, int numUpdates, int miniBatchSize, CycleMetrics metrics,
+            AsyncSelfPlay actors) throws Exception {
+        Model model = agent.getModel();
+        int n = store.size();
+        int batchSize = Math.min(miniBatchSize, n);
+        if (batchSize == 0) {
+            return;
+        }
+        TargetNetwork target = agent.getTargetNetwork();
+        if (metrics != null) {
+            metrics.begin("update");
+        }
+        long targetNanos = 0; // target max-Q time, reported as "dataset"
+
+        int[] order = new int[n];
+        for (int i = 0; i < n; i++) {
+            order[i] = i;
+        }
+        Random rng = store.getRandom();
+        Matrix X = null;
+        Matrix YGt = null;
+        int numSteps = 0;
+        for (int u = 0; u < numUpdates; u++) {
+            target.onUpdate();
+            for (int i = n - 1; i > 0; i--) {
+                int j = rng.nextInt(i + 1);
+                int tmp = order[i];
+                order[i] = order[j];
+                order[j] = tmp;
+            }
+            for (int from = 0; from < n; from += batchSize) {
+                int[] idxs = Arrays.copyOfRange(order, from, Math.min(n, from + batchSize));
+                if (X == null || X.getShape().getNumRows() != idxs.length) {
+                    X = Matrix.zeros(idxs.length, RecordReplay.NUM_FEATURES);
+                    YGt = Matrix.zeros(idxs.length, 1);
+                }
+                long targetStart = System.nanoTime();
+                double[] maxQ = store.computeMaxNextQ(target, idxs);
+                targetNanos += System.nanoTime() - targetStart;
+                for (int i = 0; i < idxs.length; i++) {
+                    store.copyFeatures(idxs[i], X, i);
+                    YGt.set(i, 0, store.getReward(idxs[i]) + gamma * maxQ[i]);
+                }
+
+                if (optim == null) {
+                    ((FastMLP) model).trainStep(X, YGt);
+                } else {
+                    optim.reset();
+                    Matrix yHat = model.forward(X);
+                    model.backwards(X, lossFunction.backwards(yHat, YGt));
+                    optim.step();
+                }
+                numSteps++;
+                if (actors != null) {
+                    actors.onLearnerStep(agent);
+                }
+            }
+            if (actors != null) {
+                actors.publish(agent);
+            }
+        }
+        if (metrics != null) {
+            metrics.end();
+            metrics.addUpdateSteps(numSteps);
+            metrics.addPhaseNanos("update", -targetNanos);
+            metrics.addPhaseNanos("dataset", targetNanos);
+        }
+    }
+
+    // Same number of gradient steps as update() but with mini-batches drawn by priority. The loss is the
+    // importance-weighted MSE mean(w * (yHat - y)^2), and the priorities of each batch are refreshed right after
+    // its step with the new TD errors. A null optim means fused FastMLP steps and actors are handled, as in update().
+    public static void updatePrioritized(PolicyAgent agent, Optimizer optim, PrioritizedReplay replay, double gamma,
+            int numUpdates, int miniBatchSize, Random rng, CycleMetrics metrics, AsyncSelfPlay actors)
+            throws Exception {
+        Model model = agent.getModel();
+        RecordReplay store = replay.getStore();
+        int batchSize = Math.min(miniBatchSize, store.size());
+        if (batchSize == 0) {
+            return;
+        }
+        int numBatches = (store.size() + batchSize - 1) / batchSize;
+        TargetNetwork target = agent.getTargetNetwork();
+        if (metrics != null) {
+            metrics.begin("update");
+        }
+        long targetNanos = 0; // target max-Q time, reported as "dataset"
+
+        int[] idxs = new int[batchSize];
+        double[] weights = new double[batchSize];
+        double[] tdErrors = new double[batchSize];
+        double[] yGt = new double[batchSize];
+        Matrix X = Matrix.zeros(batchSize, RecordReplay.NUM_FEATURES);
+        Matrix dLoss = Matrix.zeros(batchSize, 1);
+
+        for (int u = 0; u < numUpdates; u++) {
+            target.onUpdate();
+            for (int b = 0; b < numBatches; b++) {
+                replay.sample(rng, idxs, weights);
+                long targetStart = System.nanoTime();
+                double[] maxQ = store.computeMaxNextQ(target, idxs);
+                targetNanos += System.nanoTime() - targetStart;
+                for (int i = 0; i < batchSize; i++) {
+                    store.copyFeatures(idxs[i], X, i);
+                    yGt[i] = store.getReward(idxs[i]) + gamma * maxQ[i];
+                }
+
+                if (optim == null) {
+                    ((FastMLP) model).trainStepWeighted(X, yGt, weights, tdErrors);
+                } else {
+                    optim.reset();
+                    Matrix yHat = model.forward(X);
+                    for (int i = 0; i < batchSize; i++) {
+                        tdErrors[i] = yGt[i] - yHat.get(i, 0);
+                        dLoss.set(i, 0, -2.0 * weights[i] * tdErrors[i] / batchSize);
+                    }
+                    model.backwards(X, dLoss);
+                    optim.step();
+                }
+
+                replay.updatePriorities(idxs, tdErrors);
+                if (actors != null) {
+                    actors.onLearnerStep(agent);
+                }
+            }
+            if (actors != null) {
+                actors.publish(agent);
+            }
+        }
+        if (metrics != null) {
+            metrics.end();
+            metrics.addUpdateSteps(numUpdates * numBatches);
+            metrics.addPhaseNanos("update", -targetNanos);
+            metrics.addPhaseNanos("dataset", targetNanos);
+        }
+    }
+
+    // Extra eval lines under the "after cycle=" one (which learning_curve.py parses), so they must not
+    // contain that prefix.
+    private static void printEvalDetails(int cycle, ParallelEval.Result result) {
+        System.out.println("  eval cycle=" + cycle + " n=" + result.wins.n + " num_wins=" + result.wins
+                + " utility=" + result.utility);
+        for (int e = 0; e < result.enemyNames.size(); e++) {
+            String name = result.enemyNames.get(e);
+            System.out.println("  eval cycle=" + cycle + " vs=" + name.substring(name.lastIndexOf('.') + 1)
+                    + " n=" + result.winsPerEnemy.get(e).n + " num_wins=" + result.winsPerEnemy.get(e)
+                    + " utility=" + result.utilityPerEnemy.get(e));
+        }
+    }
+
+    // Sequential greedy evaluation. Returns (avg utility, avg wins) where utility is the summed reward of a game.
+    public static Pair<Double, Double> playEvalGames(PolicyAgent agent, List<Agent> enemies,
+            RewardFunction rewardFunction, GameRunner runner, int numGames, Random rng) throws Exception {
+        agent.eval();
+        double totalUtility = 0.0;
+        double totalWins = 0.0;
+        List<Triple<BattleView, MoveView, BattleView>> transitions =
+                new ArrayList<Triple<BattleView, MoveView, BattleView>>();
+        for (int g = 0; g < numGames; g++) {
+            transitions.clear();
+            Agent enemy = enemies.get(g % enemies.size());
+            BattleView finalState = runner.playGame(agent, enemy, rng, transitions);
+            for (Triple<BattleView, MoveView, BattleView> t : transitions) {
+                totalUtility += RewardUtils.getReward(rewardFunction, t.getFirst(), t.getSecond(), t.getThird());
+            }
+            totalWins += GameRunner.isWin(finalState) ? 1.0 : 0.0;
+        }
+        agent.train();
+        return new Pair<Double, Double>(totalUtility / Math.max(1, numGames), totalWins / Math.max(1, numGames));
+    }
+}
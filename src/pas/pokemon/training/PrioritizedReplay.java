@@ -0,0 +1,103 @@
+package src.pas.pokemon.training;
+
+// SYSTEM IMPORTS
+import java.util.Random;
+
+// JAVA PROJECT IMPORTS
+import edu.bu.pas.pokemon.agents.rewards.RewardFunction;
+import edu.bu.pas.pokemon.core.Battle.BattleView;
+import edu.bu.pas.pokemon.core.Move.MoveView;
+import edu.bu.pas.pokemon.training.data.Dataset;
+import src.pas.pokemon.agents.PolicyAgent;
+
+// Prioritized experience replay on top of any RecordReplay store.
+// Sample i is drawn with probability p_i^alpha / sum_j p_j^alpha where p_i = |TD error| + eps, and comes with
+// the importance-sampling weight (N * P(i))^-beta (normalized by the batch max) to correct the bias.
+// New samples get the current max priority so they are seen at least once. Sampling and priority updates
+// go through a SumTree, so both are O(log n).
+public class PrioritizedReplay implements TransitionReplay {
+
+    private final RecordReplay store;
+    private final SumTree tree;
+    private final double alpha;
+    private final double eps;
+    private double beta;
+    private double maxPriority;
+
+    public PrioritizedReplay(RecordReplay store, double alpha, double beta, double eps) {
+        this.store = store;
+        this.tree = new SumTree(store.getCapacity());
+        this.alpha = alpha;
+        this.beta = beta;
+        this.eps = eps;
+        this.maxPriority = 1.0;
+
+        // Samples already in the store (e.g. a reopened MappedReplayStore) start at the max priority.
+        for (int idx = 0; idx < store.size(); idx++) {
+            this.tree.set(idx, Math.pow(this.maxPriority, this.alpha));
+        }
+    }
+
+    public RecordReplay getStore() {
+        return this.store;
+    }
+
+    public double getBeta() {
+        return this.beta;
+    }
+
+    public void setBeta(double beta) {
+        this.beta = beta;
+    }
+
+    public void addSample(BattleView state, MoveView action, BattleView nextState) {
+        this.store.addSample(state, action, nextState);
+        this.tree.set(this.store.getNewestSampleIdx(), Math.pow(this.maxPriority, this.alpha));
+    }
+
+    public int size() {
+        return this.store.size();
+    }
+
+    public int getCapacity() {
+        return this.store.getCapacity();
+    }
+
+    // Full (unweighted) dataset, same as the underlying store.
+    public Dataset toDataset(PolicyAgent agent, double discountFactor, RewardFunction rewardFunction)
+            throws Exception {
+        return this.store.toDataset(agent, discountFactor, rewardFunction);
+    }
+
+    // Draw idxs.length samples (stratified over the priority mass) into idxs and their IS weights into weights.
+    public void sample(Random rng, int[] idxs, double[] weights) {
+        int batchSize = idxs.length;
+        int size = this.store.size();
+        double total = this.tree.total();
+        double segment = total / batchSize;
+
+        double maxWeight = 0.0;
+        for (int i = 0; i < batchSize; i++) {
+            int idx = this.tree.find((i + rng.nextDouble()) * segment);
+            if (idx >= size) {
+                idx = size - 1;
+            }
+            double prob = this.tree.get(idx) / total;
+            idxs[i] = idx;
+            weights[i] = Math.pow(size * prob, -this.beta);
+            maxWeight = Math.max(maxWeight, weights[i]);
+        }
+        for (int i = 0; i < batchSize; i++) {
+            weights[i] /= maxWeight;
+        }
+    }
+
+    // Call after every training batch with the new |TD error| of each sampled idx.
+    public void updatePriorities(int[] idxs, double[] tdErrors) {
+        for (int i = 0; i < idxs.length; i++) {
+            double priority = Math.abs(tdErrors[i]) + this.eps;
+            this.maxPriority = Math.max(this.maxPriority, priority);
+            this.tree.set(idxs[i], Math.pow(priority, this.alpha));
+        }
+    }
+}
@@ -0,0 +1,201 @@
+package src.pas.pokemon.training;
+
+// SYSTEM IMPORTS
+import net.sourceforge.argparse4j.inf.ArgumentParser;
+import net.sourceforge.argparse4j.inf.ArgumentParserException;
+import net.sourceforge.argparse4j.inf.Namespace;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+// JAVA PROJECT IMPORTS
+import edu.bu.pas.pokemon.Train;
+import edu.bu.pas.pokemon.core.Agent;
+import edu.bu.pas.pokemon.core.Battle.BattleView;
+import edu.bu.pas.pokemon.core.Move.MoveView;
+import edu.bu.pas.pokemon.linalg.Matrix;
+import edu.bu.pas.pokemon.utils.Triple;
+import src.pas.pokemon.agents.PolicyAgent;
+import src.pas.pokemon.nn.QuantizedMLP;
+
+// Post-training quantization: turns a trained params file (text or binary checkpoint, --inFile) into an int8
+// QuantizedMLP (--quantizedFile) and checks that it picks the same argmax move as the full network on a
+// validation set of battle positions. The set (--validationFile) is every decision of our eval-mode agent
+// over --numValidationGames games against the --enemyAgents, stored as the candidate (state, action) rows
+// argmax scores; it is recorded on the first run and reused afterwards so runs compare on the same
+// positions. Exits with status 1 if the agreement is below --minAgreement.
+//
+// java -cp "./lib/*:." src.pas.pokemon.training.QuantizeModel -i params/params42.model --seed 1
+// java -Dpokepa.quantizedModel=params.q8 ...   (PolicyAgent.eval() then uses it)
+public class QuantizeModel {
+
+    private static final long POSITIONS_MAGIC = 0x504B504F53303031L; // "PKPOS001"
+
+    public static void main(String[] argv) throws Exception {
+        ArgumentParser parser = ParallelTrain.makeParser();
+        parser.description("Quantize a trained PolicyAgent network to int8 and validate its argmax choices");
+        parser.addArgument("--quantizedFile").setDefault("params.q8")
+                .help("where to write the quantized model");
+        parser.addArgument("--validationFile").setDefault("validation.positions")
+                .help("validation positions (recorded if the file doesn't exist yet)");
+        parser.addArgument("--numValidationGames").type(Integer.class).setDefault(50)
+                .help("games to record validation positions from");
+        parser.addArgument("--minAgreement").type(Double.class).setDefault(0.99)
+                .help("fail if the quantized argmax matches the full one on fewer positions than this");
+        Namespace args = null;
+        try {
+            args = parser.parseArgs(argv);
+        } catch (ArgumentParserException e) {
+            parser.handleError(e);
+            System.exit(1);
+        }
+        if (args.getString("inFile") == null) {
+            System.err.println("QuantizeModel: --inFile (the trained params file) is required");
+            System.exit(1);
+        }
+
+        PolicyAgent.setUseSequentialModel(args.getBoolean("sequentialModel"));
+        PolicyAgent.setHiddenSize(args.getInt("hiddenSize"));
+        // validation positions are recorded with the full network
+        PolicyAgent.setUseQuantizedModelProperty(false);
+        PolicyAgent agent = new PolicyAgent();
+        agent.initialize(args);
+        agent.getModel().load(args.getString("inFile"));
+
+        QuantizedMLP quantized = QuantizedMLP.quantize(agent.getModel());
+        quantized.write(args.getString("quantizedFile"));
+        for (int l = 0; l < quantized.getNumLayers(); l++) {
+            float minScale = Float.MAX_VALUE;
+            float maxScale = 0.0f;
+            for (float scale : quantized.getScales(l)) {
+                minScale = Math.min(minScale, scale);
+                maxScale = Math.max(maxScale, scale);
+            }
+            System.out.println("layer " + l + " scales=[" + minScale + ", " + maxScale + "]");
+        }
+
+        File validationFile = new File(args.getString("validationFile"));
+        List<Matrix> positions;
+        if (validationFile.exists()) {
+            positions = readPositions(validationFile);
+        } else {
+            Long seed = args.getLong("seed");
+            positions = recordPositions(agent, args, args.getInt("numValidationGames"),
+                    (seed != null) ? new Random(seed) : new Random());
+            writePositions(validationFile, positions);
+        }
+
+        int numAgree = 0;
+        double maxQError = 0.0;
+        for (Matrix rows : positions) {
+            Matrix full = agent.getModel().forward(rows);
+            Matrix approx = quantized.forward(rows);
+            if (argmax(full) == argmax(approx)) {
+                numAgree++;
+            }
+            for (int r = 0; r < rows.getShape().getNumRows(); r++) {
+                maxQError = Math.max(maxQError, Math.abs(full.get(r, 0) - approx.get(r, 0)));
+            }
+        }
+        double agreement = positions.isEmpty() ? 1.0 : (double) numAgree / positions.size();
+        System.out.println("argmax agreement=" + agreement + " (" + numAgree + "/" + positions.size()
+                + " positions) max|dQ|=" + maxQError + " -> " + args.getString("quantizedFile"));
+        if (agreement < args.getDouble("minAgreement")) {
+            System.err.println("QuantizeModel: agreement below --minAgreement " + args.getDouble("minAgreement"));
+            System.exit(1);
+        }
+    }
+
+    // The candidate rows of every decision agent (greedy, full network) makes in numGames games.
+    public static List<Matrix> recordPositions(PolicyAgent agent, Namespace args, int numGames, Random rng)
+            throws Exception {
+        List<String> enemyNames = args.getList("enemyAgents");
+        List<Agent> enemies = new ArrayList<Agent>(enemyNames.size());
+        for (String name : enemyNames) {
+            Agent enemy = Train.getAgent(name);
+            enemy.initialize(args);
+            enemies.add(enemy);
+        }
+        GameRunner runner = new GameRunner(args.getInt("teamSize"), args.getInt("numMovesPerPokemon"));
+
+        // an explicit null also keeps eval() from loading -Dpokepa.quantizedModel
+        QuantizedMLP installed = agent.getQuantizedModel();
+        agent.setQuantizedModel(null);
+        agent.eval();
+        List<Matrix> positions = new ArrayList<Matrix>();
+        List<Triple<BattleView, MoveView, BattleView>> transitions =
+                new ArrayList<Triple<BattleView, MoveView, BattleView>>();
+        for (int g = 0; g < numGames; g++) {
+            transitions.clear();
+            runner.playGame(agent, enemies.get(g % enemies.size()), rng, transitions);
+            for (Triple<BattleView, MoveView, BattleView> t : transitions) {
+                Matrix rows = agent.encodeCandidates(t.getFirst());
+                if (rows != null) {
+                    positions.add(rows);
+                }
+            }
+        }
+        agent.setQuantizedModel(installed);
+        return positions;
+    }
+
+    // Layout (big-endian): long magic, int numPositions, then per position int rows, int cols, rows*cols doubles.
+    public static void writePositions(File file, List<Matrix> positions) throws IOException {
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file)))) {
+            out.writeLong(POSITIONS_MAGIC);
+            out.writeInt(positions.size());
+            for (Matrix rows : positions) {
+                int numRows = rows.getShape().getNumRows();
+                int numCols = rows.getShape().getNumCols();
+                out.writeInt(numRows);
+                out.writeInt(numCols);
+                for (int r = 0; r < numRows; r++) {
+                    for (int c = 0; c < numCols; c++) {
+                        out.writeDouble(rows.get(r, c));
+                    }
+                }
+            }
+        }
+    }
+
+    public static List<Matrix> readPositions(File file) throws IOException {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+            if (in.readLong() != POSITIONS_MAGIC) {
+                throw new IOException("QuantizeModel.readPositions: " + file + " is not a positions file");
+            }
+            int numPositions = in.readInt();
+            List<Matrix> positions = new ArrayList<Matrix>(numPositions);
+            for (int p = 0; p < numPositions; p++) {
+                int numRows = in.readInt();
+                int numCols = in.readInt();
+                Matrix rows = Matrix.zeros(numRows, numCols);
+                for (int r = 0; r < numRows; r++) {
+                    for (int c = 0; c < numCols; c++) {
+                        rows.set(r, c, in.readDouble());
+                    }
+                }
+                positions.add(rows);
+            }
+            return positions;
+        }
+    }
+
+    // First row with the highest value, the same tie-break as PolicyAgent.argmax.
+    private static int argmax(Matrix qValues) {
+        int best = 0;
+        for (int r = 1; r < qValues.getShape().getNumRows(); r++) {
+            if (qValues.get(r, 0) > qValues.get(best, 0)) {
+                best = r;
+            }
+        }
+        return best;
+    }
+}
@@ -0,0 +1,306 @@
+package src.pas.pokemon.training;
+
+// SYSTEM IMPORTS
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+// JAVA PROJECT IMPORTS
+import edu.bu.pas.pokemon.agents.rewards.RewardFunction;
+import edu.bu.pas.pokemon.core.Battle.BattleView;
+import edu.bu.pas.pokemon.core.Move.MoveView;
+import edu.bu.pas.pokemon.linalg.Matrix;
+import edu.bu.pas.pokemon.nn.Model;
+import edu.bu.pas.pokemon.training.data.Dataset;
+import edu.bu.pas.pokemon.training.data.ReplacementType;
+import src.pas.pokemon.agents.PolicyAgent;
+import src.pas.pokemon.nn.TargetNetwork;
+import src.pas.pokemon.senses.CustomSensorArray;
+import src.pas.pokemon.utils.RewardUtils;
+
+// Base class for replay stores that keep every transition as one fixed-width float32 record:
+//
+//   [0, 65)     CustomSensorArray row of (s, a)
+//   65          reward r(s, a, s')
+//   66          1 if s' is terminal
+//   67          number of legal actions k stored for s'
+//   [68, 133)   state block of s' (action columns 0)
+//   [133, 303)  action columns of up to MAX_NEXT_ACTIONS legal actions of s', 17 floats each
+//
+// Subclasses only decide where the records live (heap array, memory-mapped file, ...) and where the
+// random eviction index comes from. Encoding, eviction order and TD target construction live here.
+public abstract class RecordReplay implements TransitionReplay {
+
+    public static final int NUM_FEATURES = CustomSensorArray.NUM_FEATURES;
+    public static final int NUM_ACTION_FEATURES = CustomSensorArray.NUM_ACTION_FEATURES;
+    public static final int ACTION_OFFSET = CustomSensorArray.ACTION_OFFSET;
+
+    // 4 moves + 5 switches + struggle is the most a turn can offer.
+    public static final int MAX_NEXT_ACTIONS = 10;
+
+    public static final int FEATURES_OFFSET = 0;
+    public static final int REWARD_OFFSET = FEATURES_OFFSET + NUM_FEATURES;
+    public static final int TERMINAL_OFFSET = REWARD_OFFSET + 1;
+    public static final int NUM_NEXT_OFFSET = TERMINAL_OFFSET + 1;
+    public static final int NEXT_STATE_OFFSET = NUM_NEXT_OFFSET + 1;
+    public static final int NEXT_ACTIONS_OFFSET = NEXT_STATE_OFFSET + NUM_FEATURES;
+    public static final int RECORD_FLOATS = NEXT_ACTIONS_OFFSET + MAX_NEXT_ACTIONS * NUM_ACTION_FEATURES;
+
+    // Rows per forward pass when computing next-state Q-values.
+    private static final int FORWARD_BATCH_ROWS = 4096;
+
+    private final ReplacementType replacementType;
+    private final int capacity;
+    private final Random rng;
+
+    // Used to encode transitions and list the legal actions of the next state. The encoder is our own
+    // instance so its state cache is never shared with an agent that is playing.
+    private final PolicyAgent moveSource;
+    private final CustomSensorArray encoder;
+    private final RewardFunction rewardFunction;
+    private final float[] scratchRecord;
+
+    private int size;
+    private int newestSampleIdx;
+
+    // max_a' Q_target(s', a') per slot, valid only while the target network is at cachedTargetVersion.
+    // Allocated on first use; a slot is invalidated when it gets overwritten.
+    private double[] cachedMaxQ;
+    private boolean[] cachedMaxQValid;
+    private int cachedTargetVersion;
+
+    protected RecordReplay(ReplacementType replacementType, int capacity, Random rng, PolicyAgent moveSource,
+            RewardFunction rewardFunction) {
+        this.replacementType = replacementType;
+        this.capacity = capacity;
+        this.rng = rng;
+        this.moveSource = moveSource;
+        this.encoder = new CustomSensorArray();
+        this.rewardFunction = rewardFunction;
+        this.scratchRecord = new float[RECORD_FLOATS];
+        this.size = 0;
+        this.newestSampleIdx = -1;
+        this.cachedMaxQ = null;
+        this.cachedMaxQValid = null;
+        this.cachedTargetVersion = -1;
+    }
+
+    // Read one float of record idx.
+    protected abstract float read(int idx, int offset);
+
+    // Overwrite record idx with the RECORD_FLOATS values in record.
+    protected abstract void write(int idx, float[] record);
+
+    // Uniform index in [0, capacity) used for RANDOM eviction.
+    protected abstract int nextRandomIdx();
+
+    public final ReplacementType getReplacementType() {
+        return this.replacementType;
+    }
+
+    public final int getCapacity() {
+        return this.capacity;
+    }
+
+    public final Random getRandom() {
+        return this.rng;
+    }
+
+    public final int size() {
+        return this.size;
+    }
+
+    public final int getNewestSampleIdx() {
+        return this.newestSampleIdx;
+    }
+
+    protected void setSize(int i) {
+        this.size = i;
+    }
+
+    protected void setNewestSampleIdx(int i) {
+        this.newestSampleIdx = i;
+    }
+
+    public final float getReward(int idx) {
+        return this.read(idx, REWARD_OFFSET);
+    }
+
+    public final boolean isTerminal(int idx) {
+        return this.read(idx, TERMINAL_OFFSET) != 0.0f;
+    }
+
+    public final int getNumNextActions(int idx) {
+        return (int) this.read(idx, NUM_NEXT_OFFSET);
+    }
+
+    // Copy the (s, a) row of sample idx into row rowIdx of dst.
+    public void copyFeatures(int idx, Matrix dst, int rowIdx) {
+        for (int c = 0; c < NUM_FEATURES; c++) {
+            dst.set(rowIdx, c, this.read(idx, FEATURES_OFFSET + c));
+        }
+    }
+
+    // Copy the (s', a'_k) row of sample idx into row rowIdx of dst.
+    public void copyNextFeatures(int idx, int k, Matrix dst, int rowIdx) {
+        int actionBase = NEXT_ACTIONS_OFFSET + k * NUM_ACTION_FEATURES;
+        for (int c = 0; c < NUM_FEATURES; c++) {
+            boolean isActionCol = c >= ACTION_OFFSET && c < ACTION_OFFSET + NUM_ACTION_FEATURES;
+            dst.set(rowIdx, c, isActionCol
+                    ? this.read(idx, actionBase + c - ACTION_OFFSET)
+                    : this.read(idx, NEXT_STATE_OFFSET + c));
+        }
+    }
+
+    protected int chooseSampleToEvict() {
+        if (this.replacementType == ReplacementType.OLDEST) {
+            return (this.newestSampleIdx + 1) % this.capacity;
+        }
+        return this.nextRandomIdx();
+    }
+
+    public void addSample(BattleView state, MoveView action, BattleView nextState) {
+        float[] record = this.scratchRecord;
+        this.encoder.encode(state, action, record, FEATURES_OFFSET);
+        record[REWARD_OFFSET] = (float) RewardUtils.getReward(this.rewardFunction, state, action, nextState);
+        record[TERMINAL_OFFSET] = nextState.isOver() ? 1.0f : 0.0f;
+
+        int numActions = 0;
+        if (!nextState.isOver()) {
+            this.encoder.encodeState(nextState, record, NEXT_STATE_OFFSET);
+            List<MoveView> nextActions = this.moveSource.getPotentialMoves(nextState);
+            if (nextActions != null) {
+                numActions = Math.min(nextActions.size(), MAX_NEXT_ACTIONS);
+                for (int k = 0; k < numActions; k++) {
+                    this.encoder.encodeAction(nextState, nextActions.get(k), record,
+                            NEXT_ACTIONS_OFFSET + k * NUM_ACTION_FEATURES);
+                }
+            }
+        }
+        record[NUM_NEXT_OFFSET] = numActions;
+
+        int idx;
+        if (this.size < this.capacity) {
+            idx = this.size++;
+        } else {
+            idx = this.chooseSampleToEvict();
+        }
+        this.newestSampleIdx = idx;
+        this.write(idx, record);
+        if (this.cachedMaxQValid != null) {
+            this.cachedMaxQValid[idx] = false;
+        }
+        this.onSampleAdded(idx);
+    }
+
+    // Hook for subclasses that keep per-sample bookkeeping.
+    protected void onSampleAdded(int idx) {
+    }
+
+    // max_a' Q(s', a') for every sample (0 for terminal samples / samples without legal actions),
+    // computed with large batched forwards over all the stored next-state action rows.
+    public double[] computeMaxNextQ(Model model) throws Exception {
+        return this.computeMaxNextQ(model, null, this.size);
+    }
+
+    // Same as above for just the samples in idxs (e.g. a mini-batch). out[i] belongs to idxs[i].
+    public double[] computeMaxNextQ(Model model, int[] idxs) throws Exception {
+        return this.computeMaxNextQ(model, idxs, idxs.length);
+    }
+
+    private double[] computeMaxNextQ(Model model, int[] idxs, int n) throws Exception {
+        double[] maxQ = new double[n];
+        int batchRows = Math.min(FORWARD_BATCH_ROWS, Math.max(MAX_NEXT_ACTIONS, n * MAX_NEXT_ACTIONS));
+        Matrix batch = Matrix.zeros(batchRows, NUM_FEATURES);
+        int[] rowOwner = new int[batchRows];
+        int numRows = 0;
+
+        for (int i = 0; i < n; i++) {
+            int idx = (idxs == null) ? i : idxs[i];
+            maxQ[i] = Double.NEGATIVE_INFINITY;
+            int numActions = this.getNumNextActions(idx);
+            if (numActions == 0) {
+                maxQ[i] = 0.0;
+                continue;
+            }
+            if (numRows + numActions > batchRows) {
+                foldMaxQ(model.forward(batch), rowOwner, numRows, maxQ);
+                numRows = 0;
+            }
+            for (int k = 0; k < numActions; k++) {
+                this.copyNextFeatures(idx, k, batch, numRows);
+                rowOwner[numRows++] = i;
+            }
+        }
+        if (numRows > 0) {
+            // Rows past numRows hold stale data, their outputs are ignored.
+            foldMaxQ(model.forward(batch), rowOwner, numRows, maxQ);
+        }
+        return maxQ;
+    }
+
+    // max_a' Q_target(s', a') for the samples in idxs (all samples if idxs is null). Values computed earlier
+    // with the same target snapshot are reused; only the rest go through the network.
+    public double[] computeMaxNextQ(TargetNetwork target, int[] idxs) throws Exception {
+        if (this.cachedMaxQ == null) {
+            this.cachedMaxQ = new double[this.capacity];
+            this.cachedMaxQValid = new boolean[this.capacity];
+        }
+        if (this.cachedTargetVersion != target.getVersion()) {
+            Arrays.fill(this.cachedMaxQValid, false);
+            this.cachedTargetVersion = target.getVersion();
+        }
+
+        int n = (idxs == null) ? this.size : idxs.length;
+        int[] missing = new int[n];
+        int numMissing = 0;
+        // duplicates in idxs (a prioritized batch can draw a slot twice) are only computed once
+        Set<Integer> seen = (idxs == null) ? null : new HashSet<Integer>(2 * n);
+        for (int i = 0; i < n; i++) {
+            int idx = (idxs == null) ? i : idxs[i];
+            if (!this.cachedMaxQValid[idx] && (seen == null || seen.add(idx))) {
+                missing[numMissing++] = idx;
+            }
+        }
+        if (numMissing > 0) {
+            // slots only become valid once their value is in, a failed forward leaves them missing
+            double[] fresh = this.computeMaxNextQ(target.getModel(), missing, numMissing);
+            for (int j = 0; j < numMissing; j++) {
+                this.cachedMaxQ[missing[j]] = fresh[j];
+                this.cachedMaxQValid[missing[j]] = true;
+            }
+        }
+
+        double[] maxQ = new double[n];
+        for (int i = 0; i < n; i++) {
+            maxQ[i] = this.cachedMaxQ[(idxs == null) ? i : idxs[i]];
+        }
+        return maxQ;
+    }
+
+    private static void foldMaxQ(Matrix qValues, int[] rowOwner, int numRows, double[] maxQ) {
+        for (int row = 0; row < numRows; row++) {
+            int i = rowOwner[row];
+            maxQ[i] = Math.max(maxQ[i], qValues.get(row, 0));
+        }
+    }
+
+    // TD targets y = r + gamma * max_a' Q_target(s', a') (just r for terminal samples), using the agent's
+    // target network. Rewards were computed with the store's reward function when the samples were added,
+    // so the rewardFunction argument is unused.
+    public Dataset toDataset(PolicyAgent agent, double discountFactor, RewardFunction rewardFunction)
+            throws Exception {
+        TargetNetwork target = agent.getTargetNetwork();
+        target.onUpdate();
+        double[] maxQ = this.computeMaxNextQ(target, null);
+        Matrix X = Matrix.zeros(this.size, NUM_FEATURES);
+        Matrix YGt = Matrix.zeros(this.size, 1);
+        for (int idx = 0; idx < this.size; idx++) {
+            this.copyFeatures(idx, X, idx);
+            YGt.set(idx, 0, this.getReward(idx) + discountFactor * maxQ[idx]);
+        }
+        return new Dataset(X, YGt, this.rng);
+    }
+}
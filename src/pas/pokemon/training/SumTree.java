@@ -0,0 +1,63 @@
+package src.pas.pokemon.training;
+
+// SYSTEM IMPORTS
+
+// JAVA PROJECT IMPORTS
+
+// Binary sum-tree over a fixed number of non-negative priorities.
+// set() and find() are O(log n), total() is O(1). Leaves live in the second half of the array.
+public class SumTree {
+
+    private final int capacity;
+    private final int numLeaves; // capacity rounded up to a power of two
+    private final double[] tree;
+
+    public SumTree(int capacity) {
+        this.capacity = capacity;
+        int n = 1;
+        while (n < capacity) {
+            n <<= 1;
+        }
+        this.numLeaves = n;
+        this.tree = new double[2 * n];
+    }
+
+    public int getCapacity() {
+        return this.capacity;
+    }
+
+    public double total() {
+        return this.tree[1];
+    }
+
+    public double get(int idx) {
+        return this.tree[this.numLeaves + idx];
+    }
+
+    public void set(int idx, double priority) {
+        int node = this.numLeaves + idx;
+        this.tree[node] = priority;
+        // Recompute the parents from their children instead of adding deltas so rounding error can't pile up.
+        node >>= 1;
+        while (node >= 1) {
+            this.tree[node] = this.tree[2 * node] + this.tree[2 * node + 1];
+            node >>= 1;
+        }
+    }
+
+    // Index of the leaf whose cumulative range contains prefix, for prefix in [0, total()).
+    public int find(double prefix) {
+        int node = 1;
+        while (node < this.numLeaves) {
+            int left = 2 * node;
+            if (prefix < this.tree[left]) {
+                node = left;
+            } else {
+                prefix -= this.tree[left];
+                node = left + 1;
+            }
+        }
+        // Rounding can walk us onto an empty padding leaf, clamp back onto real samples.
+        return Math.min(node - this.numLeaves, this.capacity - 1);
+    }
+}
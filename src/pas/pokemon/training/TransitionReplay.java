@@ -0,0 +1,24 @@
+package src.pas.pokemon.training;
+
+// SYSTEM IMPORTS
+
+// JAVA PROJECT IMPORTS
+import edu.bu.pas.pokemon.agents.rewards.RewardFunction;
+import edu.bu.pas.pokemon.core.Battle.BattleView;
+import edu.bu.pas.pokemon.core.Move.MoveView;
+import edu.bu.pas.pokemon.training.data.Dataset;
+import src.pas.pokemon.agents.PolicyAgent;
+
+// What ParallelTrain needs from a replay store: take (s, a, s') transitions and turn them into a
+// supervised dataset of (features, TD target) rows.
+public interface TransitionReplay {
+
+    public void addSample(BattleView state, MoveView action, BattleView nextState);
+
+    public int size();
+
+    public int getCapacity();
+
+    public Dataset toDataset(PolicyAgent agent, double discountFactor, RewardFunction rewardFunction)
+            throws Exception;
+}
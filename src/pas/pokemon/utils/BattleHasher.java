@@ -0,0 +1,146 @@
+package src.pas.pokemon.utils;
+
+// SYSTEM IMPORTS
+
+// JAVA PROJECT IMPORTS
+import edu.bu.pas.pokemon.core.Battle.BattleView;
+import edu.bu.pas.pokemon.core.Move.MoveView;
+import edu.bu.pas.pokemon.core.Pokemon.PokemonView;
+import edu.bu.pas.pokemon.core.Pokemon.Substitute;
+import edu.bu.pas.pokemon.core.SwitchMove.SwitchMoveView;
+import edu.bu.pas.pokemon.core.Team.TeamView;
+import edu.bu.pas.pokemon.core.enums.Flag;
+import edu.bu.pas.pokemon.core.enums.Height;
+import edu.bu.pas.pokemon.core.enums.NonVolatileStatus;
+import edu.bu.pas.pokemon.core.enums.Stat;
+import edu.bu.pas.pokemon.core.enums.Type;
+
+// 64-bit hash over the game-relevant fields of a BattleView: per team the active index, screen turns, last
+// move used and last damage taken, per pokemon species, HP, current types, NonVolatileStatus (+ counter),
+// stat multipliers and whether they are locked, volatile flags (+ counters), substitute HP, height, the
+// move being charged / locked in, last damage dealt, last move hit by, and every move's PP and disabled turns.
+// Moves like Counter, Mirror Move or two-turn moves read the "last" fields, so states that differ only there
+// can still have different outcomes.
+//
+// The hash is Zobrist style: the XOR of one independently mixed key per (team, slot) component. Two views
+// that differ in one pokemon therefore differ in exactly one term, and a caller that knows which pokemon
+// changed can update a hash with replacePokemon() instead of rehashing the whole battle.
+public class BattleHasher {
+
+    private static final Stat[] STATS = Stat.values();
+    private static final Flag[] FLAGS = Flag.values();
+
+    private BattleHasher() {
+    }
+
+    public static long hash(BattleView view) {
+        long h = view.isOver() ? 0x6A09E667F3BCC908L : 0L;
+        for (int t = 0; t < 2; t++) {
+            TeamView team = view.getTeamView(t);
+            h ^= teamHash(t, team);
+            for (int slot = 0; slot < team.size(); slot++) {
+                h ^= pokemonHash(t, slot, team.getPokemonView(slot));
+            }
+        }
+        return h;
+    }
+
+    // h with the (teamIdx, slot) pokemon term swapped from before to after.
+    public static long replacePokemon(long h, int teamIdx, int slot, PokemonView before, PokemonView after) {
+        return h ^ pokemonHash(teamIdx, slot, before) ^ pokemonHash(teamIdx, slot, after);
+    }
+
+    public static long teamHash(int teamIdx, TeamView team) {
+        long h = seed(teamIdx, -1);
+        h = mix(h, team.getActivePokemonIdx());
+        h = mix(h, team.getNumLightScreenTurnsRemaining());
+        h = mix(h, team.getNumReflectTurnsRemaining());
+        h = mix(h, hashMoveOrNull(team.getLastMoveView()));
+        h = mix(h, team.getLastDamageTaken());
+        return finish(h);
+    }
+
+    public static long pokemonHash(int teamIdx, int slot, PokemonView p) {
+        long h = seed(teamIdx, slot);
+        if (p == null) {
+            return finish(h);
+        }
+        h = mix(h, p.getDexIdx());
+        h = mix(h, p.getCurrentStat(Stat.HP));
+        h = mix(h, typeOrdinal(p.getCurrentType1()));
+        h = mix(h, typeOrdinal(p.getCurrentType2()));
+
+        NonVolatileStatus status = p.getNonVolatileStatus();
+        boolean hasStatus = status != null && status != NonVolatileStatus.NONE;
+        h = mix(h, hasStatus ? status.ordinal() : -1);
+        h = mix(h, hasStatus ? p.getNonVolatileStatusCounter(status) : 0);
+
+        for (Stat stat : STATS) {
+            h = mix(h, p.getStatMultiplier(stat));
+        }
+        h = mix(h, p.getStatsUnchangeable() ? 1 : 0);
+        for (Flag flag : FLAGS) {
+            h = mix(h, p.getFlag(flag) ? 1 + p.getFlagCounter(flag) : 0);
+        }
+
+        Substitute substitute = p.getSubstitute();
+        h = mix(h, (substitute == null) ? -1 : substitute.getHP());
+        Height height = p.getHeight();
+        h = mix(h, (height == null) ? -1 : height.ordinal());
+        h = mix(h, hashMoveOrNull(p.getActiveMoveView()));
+        h = mix(h, p.getLastDamageDealt());
+        h = mix(h, hashMoveOrNull(p.getLastMoveHitByView()));
+
+        MoveView[] moves = p.getMoveViews();
+        if (moves != null) {
+            for (MoveView m : moves) {
+                if (m == null) {
+                    h = mix(h, -1);
+                } else {
+                    h = mix(h, hashMove(m));
+                    h = mix(h, (m.getPP() == null) ? -1 : m.getPP());
+                    h = mix(h, m.getNumDisabledTurnsRemaining());
+                }
+            }
+        }
+        return finish(h);
+    }
+
+    // Identity of a move: switches by the slot they send in (they have no name of their own), everything else
+    // by name.
+    public static long hashMove(MoveView move) {
+        if (move instanceof SwitchMoveView) {
+            return finish(mix(0x3C6EF372FE94F82BL, ((SwitchMoveView) move).getNewActiveIdx()));
+        }
+        String name = move.getName();
+        return (name == null) ? -1L : name.hashCode();
+    }
+
+    private static long hashMoveOrNull(MoveView move) {
+        return (move == null) ? 0x510E527FADE682D1L : hashMove(move);
+    }
+
+    // Key for something attached to a state (e.g. the outcomes of a move cast by a team).
+    public static long combine(long stateHash, long other) {
+        return finish(mix(stateHash, other));
+    }
+
+    private static int typeOrdinal(Type t) {
+        return (t == null) ? -1 : t.ordinal();
+    }
+
+    private static long seed(int teamIdx, int slot) {
+        return finish(0x9E3779B97F4A7C15L * (teamIdx * 64 + slot + 2));
+    }
+
+    private static long mix(long h, long v) {
+        return (h ^ v) * 0x100000001B3L + 0x9E3779B97F4A7C15L;
+    }
+
+    // SplitMix64 finalizer
+    private static long finish(long z) {
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        return z ^ (z >>> 31);
+    }
+}
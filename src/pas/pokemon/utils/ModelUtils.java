@@ -0,0 +1,43 @@
+package src.pas.pokemon.utils;
+
+// SYSTEM IMPORTS
+import java.util.List;
+
+// JAVA PROJECT IMPORTS
+import edu.bu.pas.pokemon.linalg.Matrix;
+import edu.bu.pas.pokemon.nn.Model;
+import edu.bu.pas.pokemon.nn.Parameter;
+
+// Small helpers for moving weights between models with the same architecture.
+public class ModelUtils {
+
+    private ModelUtils() {
+    }
+
+    // Copy every parameter value of src into dst (element by element, dst keeps its own matrices).
+    public static void copyParameters(Model src, Model dst) {
+        List<Parameter> srcParams = src.getParameters();
+        List<Parameter> dstParams = dst.getParameters();
+        if (srcParams.size() != dstParams.size()) {
+            throw new IllegalArgumentException("ModelUtils.copyParameters: models have "
+                    + srcParams.size() + " and " + dstParams.size() + " parameters");
+        }
+        for (int p = 0; p < srcParams.size(); p++) {
+            copyMatrix(srcParams.get(p).getValue(), dstParams.get(p).getValue());
+        }
+    }
+
+    public static void copyMatrix(Matrix src, Matrix dst) {
+        int numRows = src.getShape().getNumRows();
+        int numCols = src.getShape().getNumCols();
+        if (numRows != dst.getShape().getNumRows() || numCols != dst.getShape().getNumCols()) {
+            throw new IllegalArgumentException("ModelUtils.copyMatrix: shape " + src.getShape()
+                    + " does not match " + dst.getShape());
+        }
+        for (int r = 0; r < numRows; r++) {
+            for (int c = 0; c < numCols; c++) {
+                dst.set(r, c, src.get(r, c));
+            }
+        }
+    }
+}
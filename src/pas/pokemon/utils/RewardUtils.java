@@ -0,0 +1,42 @@
+package src.pas.pokemon.utils;
+
+// SYSTEM IMPORTS
+
+// JAVA PROJECT IMPORTS
+import edu.bu.pas.pokemon.agents.rewards.RewardFunction;
+import edu.bu.pas.pokemon.core.Battle.BattleView;
+import edu.bu.pas.pokemon.core.Move.MoveView;
+import edu.bu.pas.pokemon.training.data.ReplayBuffer;
+import src.pas.pokemon.rewards.CustomRewardFunction;
+
+// Dispatch to the right RewardFunction method for its declared RewardType.
+public class RewardUtils {
+
+    private RewardUtils() {
+    }
+
+    public static double getReward(RewardFunction rewardFunction, BattleView state, MoveView action,
+            BattleView nextState) {
+        switch (rewardFunction.getType()) {
+            case STATE:
+                return rewardFunction.getStateReward(state);
+            case STATE_ACTION:
+                return rewardFunction.getStateActionReward(state, action);
+            default:
+                return rewardFunction.getStateActionStateReward(state, action, nextState);
+        }
+    }
+
+    // getReward for every transition of buffer, through CustomRewardFunction's batch path when possible.
+    public static double[] getRewards(RewardFunction rewardFunction, ReplayBuffer buffer) {
+        if (rewardFunction instanceof CustomRewardFunction
+                && rewardFunction.getType() == RewardFunction.RewardType.STATE_ACTION_STATE) {
+            return ((CustomRewardFunction) rewardFunction).getStateActionStateRewards(buffer);
+        }
+        double[] rewards = new double[buffer.size()];
+        for (int i = 0; i < rewards.length; i++) {
+            rewards[i] = getReward(rewardFunction, buffer.getState(i), buffer.getAction(i), buffer.getNextState(i));
+        }
+        return rewards;
+    }
+}
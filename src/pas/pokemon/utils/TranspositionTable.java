@@ -0,0 +1,159 @@
+package src.pas.pokemon.utils;
+
+// SYSTEM IMPORTS
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.ToLongFunction;
+
+// JAVA PROJECT IMPORTS
+
+// Bounded map from 64-bit position hashes (see BattleHasher) to cached results, with LRU eviction.
+// The table is split into lock-striped segments (each an access-ordered LinkedHashMap with its share of
+// the capacity) so fork-join search threads can share it. Hits, misses and evictions are counted so the
+// capacity can be sized from real runs.
+//
+// By default the capacity counts entries. With a weigher it is a budget in whatever unit the weigher
+// returns (e.g. estimated bytes), for values whose size varies a lot; the least recently used entries are
+// evicted until the segment is back under its share.
+public class TranspositionTable<V> {
+
+    private static final int NUM_SEGMENTS = 16;
+
+    private final Segment<V>[] segments;
+    private final long capacity;
+    private final ToLongFunction<V> weigher;
+
+    private final LongAdder hits;
+    private final LongAdder misses;
+    private final LongAdder evictions;
+
+    public TranspositionTable(int capacity) {
+        this(capacity, v -> 1L);
+    }
+
+    // capacity is the total weight of the entries, weigher must return the same weight for a value every time.
+    @SuppressWarnings("unchecked")
+    public TranspositionTable(long capacity, ToLongFunction<V> weigher) {
+        this.capacity = Math.max(NUM_SEGMENTS, capacity);
+        this.weigher = weigher;
+        this.hits = new LongAdder();
+        this.misses = new LongAdder();
+        this.evictions = new LongAdder();
+        this.segments = (Segment<V>[]) new Segment[NUM_SEGMENTS];
+        for (int s = 0; s < NUM_SEGMENTS; s++) {
+            this.segments[s] = new Segment<V>(this.capacity / NUM_SEGMENTS);
+        }
+    }
+
+    private static class Segment<V> extends LinkedHashMap<Long, V> {
+        private final long maxWeight;
+        private long weight;
+
+        private Segment(long maxWeight) {
+            super(16, 0.75f, true); // access order = LRU
+            this.maxWeight = maxWeight;
+            this.weight = 0L;
+        }
+    }
+
+    private Segment<V> segmentFor(long key) {
+        return this.segments[(int) (key ^ (key >>> 32)) & (NUM_SEGMENTS - 1)];
+    }
+
+    // Cached value for key or null.
+    public V get(long key) {
+        Segment<V> segment = this.segmentFor(key);
+        V value;
+        synchronized (segment) {
+            value = segment.get(key);
+        }
+        if (value != null) {
+            this.hits.increment();
+        } else {
+            this.misses.increment();
+        }
+        return value;
+    }
+
+    public void put(long key, V value) {
+        Segment<V> segment = this.segmentFor(key);
+        long w = this.weigher.applyAsLong(value);
+        synchronized (segment) {
+            V old = segment.put(key, value);
+            segment.weight += w - ((old != null) ? this.weigher.applyAsLong(old) : 0L);
+            // the entry just put is the most recent one, it goes last (and stays even if it alone is too heavy)
+            Iterator<Map.Entry<Long, V>> eldest = segment.entrySet().iterator();
+            while (segment.weight > segment.maxWeight && segment.size() > 1) {
+                segment.weight -= this.weigher.applyAsLong(eldest.next().getValue());
+                eldest.remove();
+                this.evictions.increment();
+            }
+        }
+    }
+
+    // Drop every entry (e.g. when the values depend on weights that just changed). Stats are kept.
+    public void clear() {
+        for (Segment<V> segment : this.segments) {
+            synchronized (segment) {
+                segment.clear();
+                segment.weight = 0L;
+            }
+        }
+    }
+
+    public int size() {
+        int n = 0;
+        for (Segment<V> segment : this.segments) {
+            synchronized (segment) {
+                n += segment.size();
+            }
+        }
+        return n;
+    }
+
+    // Total weight of the entries, the number of entries without a weigher.
+    public long getWeight() {
+        long w = 0L;
+        for (Segment<V> segment : this.segments) {
+            synchronized (segment) {
+                w += segment.weight;
+            }
+        }
+        return w;
+    }
+
+    public long getCapacity() {
+        return this.capacity;
+    }
+
+    public long getHits() {
+        return this.hits.sum();
+    }
+
+    public long getMisses() {
+        return this.misses.sum();
+    }
+
+    public long getEvictions() {
+        return this.evictions.sum();
+    }
+
+    public double getHitRate() {
+        long h = this.getHits();
+        long total = h + this.getMisses();
+        return (total > 0) ? (double) h / total : 0.0;
+    }
+
+    public void resetStats() {
+        this.hits.reset();
+        this.misses.reset();
+        this.evictions.reset();
+    }
+
+    public String toString() {
+        return "size=" + this.size() + " weight=" + this.getWeight() + "/" + this.capacity + " hits=" + this.getHits() + " misses="
+                + this.getMisses() + " hit_rate=" + this.getHitRate() + " evictions=" + this.getEvictions();
+    }
+}
@@ -0,0 +1,62 @@
+package src.pas.pokemon.utils;
+
+// SYSTEM IMPORTS
+
+// JAVA PROJECT IMPORTS
+import edu.bu.pas.pokemon.core.enums.Type;
+
+// Precomputed type effectiveness tables so the hot paths do flat array reads instead of
+// calling Type.getEffectivenessModifier over and over. Built once when the class loads.
+public class TypeChart {
+
+    private static final Type[] TYPES = Type.values();
+    private static final int NUM_TYPES = TYPES.length;
+
+    // Slot used for a missing (null) type.
+    private static final int NONE = NUM_TYPES;
+
+    // SINGLE[atk][def] = modifier of an attacking type against one defending type.
+    private static final double[][] SINGLE = new double[NUM_TYPES][NUM_TYPES];
+
+    // DUAL[atk][def1][def2] = combined modifier against a (possibly single typed) defender.
+    // def1/def2 == NONE means that type is missing and contributes 1.0.
+    private static final double[][][] DUAL = new double[NUM_TYPES][NUM_TYPES + 1][NUM_TYPES + 1];
+
+    static {
+        for (Type atk : TYPES) {
+            for (Type def : TYPES) {
+                SINGLE[atk.ordinal()][def.ordinal()] = Type.getEffectivenessModifier(atk, def);
+            }
+        }
+        for (int atk = 0; atk < NUM_TYPES; atk++) {
+            for (int def1 = 0; def1 <= NUM_TYPES; def1++) {
+                for (int def2 = 0; def2 <= NUM_TYPES; def2++) {
+                    double effect1 = (def1 == NONE) ? 1.0 : SINGLE[atk][def1];
+                    double effect2 = (def2 == NONE) ? 1.0 : SINGLE[atk][def2];
+                    DUAL[atk][def1][def2] = effect1 * effect2;
+                }
+            }
+        }
+    }
+
+    private TypeChart() {
+    }
+
+    private static int idx(Type t) {
+        return (t == null) ? NONE : t.ordinal();
+    }
+
+    // Modifier of one attacking type against one defending type. Neither may be null.
+    public static double single(Type attackingType, Type defendingType) {
+        return SINGLE[attackingType.ordinal()][defendingType.ordinal()];
+    }
+
+    // Modifier of an attacking type against a defender with types (def1, def2). Either defending
+    // type may be null, and a null attacking type is neutral (1.0).
+    public static double modifier(Type attackingType, Type defType1, Type defType2) {
+        if (attackingType == null) {
+            return 1.0;
+        }
+        return DUAL[attackingType.ordinal()][idx(defType1)][idx(defType2)];
+    }
+}
@@ -0,0 +1,176 @@
+package test.pas.pokemon;
+
+// SYSTEM IMPORTS
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.zip.CRC32;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+// JAVA PROJECT IMPORTS
+import edu.bu.pas.pokemon.linalg.Matrix;
+import src.pas.pokemon.nn.Checkpoint;
+
+// Checkpoint save / load: exact round trips with and without Adam state, version 1 files, and rejection of
+// corrupted (CRC mismatch) or truncated files.
+//   java -cp "./lib/*:test-classes" org.junit.runner.JUnitCore test.pas.pokemon.CheckpointTest
+public class CheckpointTest {
+
+    @Rule
+    public TemporaryFolder tmp = new TemporaryFolder();
+
+    private static Matrix random(int rows, int cols, Random rng) {
+        Matrix m = Matrix.zeros(rows, cols);
+        for (int r = 0; r < rows; r++) {
+            for (int c = 0; c < cols; c++) {
+                m.set(r, c, rng.nextGaussian());
+            }
+        }
+        return m;
+    }
+
+    private static List<Matrix> randomParams(Random rng) {
+        return Arrays.asList(random(5, 3, rng), random(1, 3, rng), random(3, 1, rng), random(1, 1, rng));
+    }
+
+    private static void assertSameValues(List<Matrix> expected, List<Matrix> actual) {
+        assertEquals(expected.size(), actual.size());
+        for (int p = 0; p < expected.size(); p++) {
+            Matrix e = expected.get(p);
+            Matrix a = actual.get(p);
+            assertEquals(e.getShape().getNumRows(), a.getShape().getNumRows());
+            assertEquals(e.getShape().getNumCols(), a.getShape().getNumCols());
+            for (int r = 0; r < e.getShape().getNumRows(); r++) {
+                for (int c = 0; c < e.getShape().getNumCols(); c++) {
+                    assertEquals(Double.doubleToLongBits(e.get(r, c)), Double.doubleToLongBits(a.get(r, c)));
+                }
+            }
+        }
+    }
+
+    @Test
+    public void roundTripWithMoments() throws Exception {
+        Random rng = new Random(1L);
+        List<Matrix> values = randomParams(rng);
+        List<Matrix> mts = randomParams(rng);
+        List<Matrix> vts = randomParams(rng);
+        String path = new File(this.tmp.getRoot(), "params3.model").getPath();
+        new Checkpoint(3, 0.125, values, mts, vts, 4711L).save(path);
+
+        assertTrue(Checkpoint.isCheckpoint(path));
+        Checkpoint loaded = Checkpoint.load(path);
+        assertEquals(3, loaded.getCycle());
+        assertEquals(0.125, loaded.getEpsilon(), 0.0);
+        assertTrue(loaded.hasMoments());
+        assertEquals(4711L, loaded.getAdamStep());
+        assertSameValues(values, loaded.getValues());
+        assertSameValues(mts, loaded.getMTs());
+        assertSameValues(vts, loaded.getVTs());
+    }
+
+    @Test
+    public void roundTripWithoutMoments() throws Exception {
+        List<Matrix> values = randomParams(new Random(2L));
+        String path = new File(this.tmp.getRoot(), "params0.model").getPath();
+        new Checkpoint(0, 1.0, values, null, null, 99L).save(path);
+
+        Checkpoint loaded = Checkpoint.load(path);
+        assertFalse(loaded.hasMoments());
+        assertNull(loaded.getMTs());
+        assertEquals(-1L, loaded.getAdamStep()); // no moments, no step count
+        assertSameValues(values, loaded.getValues());
+    }
+
+    @Test
+    public void loadsVersion1Files() throws Exception {
+        List<Matrix> values = randomParams(new Random(3L));
+        File file = new File(this.tmp.getRoot(), "v1.model");
+        Files.write(file.toPath(), version1Bytes(7, 0.5, values));
+
+        Checkpoint loaded = Checkpoint.load(file.getPath());
+        assertEquals(7, loaded.getCycle());
+        assertEquals(0.5, loaded.getEpsilon(), 0.0);
+        assertEquals(-1L, loaded.getAdamStep());
+        assertSameValues(values, loaded.getValues());
+    }
+
+    @Test
+    public void rejectsAFlippedByte() throws Exception {
+        String path = new File(this.tmp.getRoot(), "params1.model").getPath();
+        new Checkpoint(1, 0.5, randomParams(new Random(4L)), null, null, -1L).save(path);
+        try (RandomAccessFile raf = new RandomAccessFile(path, "rw")) {
+            long pos = raf.length() / 2;
+            raf.seek(pos);
+            int b = raf.read();
+            raf.seek(pos);
+            raf.write(b ^ 0x01);
+        }
+        assertLoadFails(path, "checksum mismatch");
+    }
+
+    @Test
+    public void rejectsATruncatedFile() throws Exception {
+        String path = new File(this.tmp.getRoot(), "params2.model").getPath();
+        new Checkpoint(2, 0.5, randomParams(new Random(5L)), null, null, -1L).save(path);
+        try (RandomAccessFile raf = new RandomAccessFile(path, "rw")) {
+            raf.setLength(raf.length() - 16);
+        }
+        assertLoadFails(path, "checksum mismatch");
+    }
+
+    @Test
+    public void textFilesAreNotCheckpoints() throws Exception {
+        File file = new File(this.tmp.getRoot(), "params.model");
+        Files.write(file.toPath(), "0.1 0.2 0.3\n0.4 0.5 0.6\n1.0 2.0 3.0\n4.0 5.0 6.0\n".getBytes("UTF-8"));
+        assertFalse(Checkpoint.isCheckpoint(file.getPath()));
+    }
+
+    private static void assertLoadFails(String path, String reason) {
+        try {
+            Checkpoint.load(path);
+            fail("loaded a corrupted checkpoint");
+        } catch (IOException e) {
+            assertTrue(e.getMessage(), e.getMessage().contains(reason));
+        }
+    }
+
+    // A version 1 checkpoint without moments, laid out as Checkpoint wrote it before the Adam step count.
+    private static byte[] version1Bytes(int cycle, double epsilon, List<Matrix> values) {
+        int numBytes = 8 + 4 + 4 + 8 + 4 + 4 + 8;
+        for (Matrix m : values) {
+            numBytes += 8 + 8 * m.getShape().getNumRows() * m.getShape().getNumCols();
+        }
+        ByteBuffer buf = ByteBuffer.allocate(numBytes);
+        buf.putLong(Checkpoint.MAGIC);
+        buf.putInt(1);
+        buf.putInt(cycle);
+        buf.putDouble(epsilon);
+        buf.putInt(values.size());
+        buf.putInt(0);
+        for (Matrix m : values) {
+            buf.putInt(m.getShape().getNumRows());
+            buf.putInt(m.getShape().getNumCols());
+            for (int r = 0; r < m.getShape().getNumRows(); r++) {
+                for (int c = 0; c < m.getShape().getNumCols(); c++) {
+                    buf.putDouble(m.get(r, c));
+                }
+            }
+        }
+        CRC32 crc = new CRC32();
+        crc.update(buf.array(), 0, buf.position());
+        buf.putLong(crc.getValue());
+        return buf.array();
+    }
+}
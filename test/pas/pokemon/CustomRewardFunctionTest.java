@@ -0,0 +1,72 @@
+package test.pas.pokemon;
+
+// SYSTEM IMPORTS
+import java.util.Random;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import static org.junit.Assert.assertEquals;
+
+// JAVA PROJECT IMPORTS
+import bench.pas.pokemon.BattleFixtures;
+import edu.bu.pas.pokemon.core.Move.MoveView;
+import edu.bu.pas.pokemon.training.data.ReplacementType;
+import edu.bu.pas.pokemon.training.data.ReplayBuffer;
+import src.pas.pokemon.agents.PolicyAgent;
+import src.pas.pokemon.rewards.CustomRewardFunction;
+
+// The batch getStateActionStateRewards must give bit for bit the rewards of getStateActionStateReward, over
+// every transition of the benchmark fixtures (which share views between consecutive turns, the case the
+// batch version dedupes).
+//
+// Tests have their own source list and use junit-4.12 / hamcrest-2.2 from lib/:
+//   javac -cp "./lib/*:." -d test-classes @pokePA.srcs @pokePA-test.srcs
+//   java -cp "./lib/*:test-classes" org.junit.runner.JUnitCore test.pas.pokemon.CustomRewardFunctionTest
+public class CustomRewardFunctionTest {
+
+    private static BattleFixtures fixtures;
+    private static MoveView[] actions;
+
+    @BeforeClass
+    public static void setUpFixtures() throws Exception {
+        fixtures = BattleFixtures.create();
+        PolicyAgent agent = BattleFixtures.makePolicyAgent();
+        actions = new MoveView[fixtures.size()];
+        for (int i = 0; i < fixtures.size(); i++) {
+            actions[i] = agent.getPotentialMoves(fixtures.getState(i)).get(0);
+        }
+    }
+
+    private static ReplayBuffer fill(int from, int to) {
+        ReplayBuffer buffer = new ReplayBuffer(ReplacementType.RANDOM, Math.max(1, to - from), new Random(12345L));
+        for (int i = from; i < to; i++) {
+            buffer.addSample(fixtures.getState(i), actions[i], fixtures.getNextState(i));
+        }
+        return buffer;
+    }
+
+    private static void assertMatchesPerTransition(ReplayBuffer buffer) {
+        CustomRewardFunction rewardFunction = new CustomRewardFunction();
+        double[] batch = rewardFunction.getStateActionStateRewards(buffer);
+        assertEquals(buffer.size(), batch.length);
+        for (int i = 0; i < batch.length; i++) {
+            double single = rewardFunction.getStateActionStateReward(buffer.getState(i), buffer.getAction(i),
+                    buffer.getNextState(i));
+            assertEquals("transition " + i, Double.doubleToLongBits(single), Double.doubleToLongBits(batch[i]));
+        }
+    }
+
+    @Test
+    public void batchMatchesPerTransitionOnEveryFixture() {
+        assertMatchesPerTransition(fill(0, fixtures.size()));
+    }
+
+    @Test
+    public void batchMatchesPerTransitionOnOneTransition() {
+        assertMatchesPerTransition(fill(0, 1));
+    }
+
+    @Test
+    public void emptyBufferGivesNoRewards() {
+        assertEquals(0, new CustomRewardFunction().getStateActionStateRewards(fill(0, 0)).length);
+    }
+}
@@ -0,0 +1,122 @@
+package test.pas.pokemon;
+
+// SYSTEM IMPORTS
+import java.util.Random;
+import org.junit.Test;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+// JAVA PROJECT IMPORTS
+import src.pas.pokemon.training.SumTree;
+
+// SumTree totals, prefix-sum lookups and updates, checked against a plain array of priorities. Capacities
+// that aren't powers of two have padding leaves find() must never return.
+//   java -cp "./lib/*:test-classes" org.junit.runner.JUnitCore test.pas.pokemon.SumTreeTest
+public class SumTreeTest {
+
+    private static final double TOL = 1e-9;
+
+    // Leaf whose cumulative range [sum of the priorities before it, + its priority) contains prefix.
+    private static int linearFind(double[] priorities, double prefix) {
+        double cumulative = 0.0;
+        for (int i = 0; i < priorities.length; i++) {
+            cumulative += priorities[i];
+            if (prefix < cumulative) {
+                return i;
+            }
+        }
+        return priorities.length - 1;
+    }
+
+    @Test
+    public void totalIsTheSumOfThePriorities() {
+        SumTree tree = new SumTree(5);
+        double[] priorities = {1.0, 2.0, 0.5, 0.0, 4.0};
+        for (int i = 0; i < priorities.length; i++) {
+            tree.set(i, priorities[i]);
+        }
+        assertEquals(7.5, tree.total(), TOL);
+        for (int i = 0; i < priorities.length; i++) {
+            assertEquals(priorities[i], tree.get(i), 0.0);
+        }
+    }
+
+    @Test
+    public void findWalksThePrefixSums() {
+        SumTree tree = new SumTree(5);
+        double[] priorities = {1.0, 2.0, 0.5, 0.0, 4.0};
+        for (int i = 0; i < priorities.length; i++) {
+            tree.set(i, priorities[i]);
+        }
+        assertEquals(0, tree.find(0.0));
+        assertEquals(0, tree.find(0.999));
+        assertEquals(1, tree.find(1.0));
+        assertEquals(1, tree.find(2.999));
+        assertEquals(2, tree.find(3.0));
+        assertEquals(4, tree.find(3.5)); // the zero priority leaf is skipped
+        assertEquals(4, tree.find(7.499));
+    }
+
+    @Test
+    public void findNeverReturnsAPaddingLeaf() {
+        SumTree tree = new SumTree(3); // 4 leaves, the last one is padding
+        tree.set(0, 1.0);
+        tree.set(1, 1.0);
+        tree.set(2, 1.0);
+        assertEquals(2, tree.find(tree.total())); // past the end, as rounding can produce
+        assertEquals(2, tree.find(Math.nextDown(tree.total())));
+    }
+
+    @Test
+    public void updatesReplaceTheOldPriority() {
+        SumTree tree = new SumTree(4);
+        for (int i = 0; i < 4; i++) {
+            tree.set(i, 1.0);
+        }
+        tree.set(2, 5.0);
+        assertEquals(8.0, tree.total(), TOL);
+        assertEquals(2, tree.find(2.0));
+        assertEquals(2, tree.find(6.999));
+        assertEquals(3, tree.find(7.0));
+        tree.set(2, 0.0);
+        assertEquals(3.0, tree.total(), TOL);
+        assertEquals(3, tree.find(2.0));
+    }
+
+    @Test
+    public void matchesALinearScanUnderRandomUpdates() {
+        Random rng = new Random(12345L);
+        int capacity = 37;
+        SumTree tree = new SumTree(capacity);
+        double[] priorities = new double[capacity];
+        for (int step = 0; step < 2000; step++) {
+            int idx = rng.nextInt(capacity);
+            priorities[idx] = rng.nextBoolean() ? 0.0 : rng.nextDouble() * 10.0;
+            tree.set(idx, priorities[idx]);
+
+            double total = 0.0;
+            for (double p : priorities) {
+                total += p;
+            }
+            assertEquals(total, tree.total(), TOL);
+            if (total > 0.0) {
+                double prefix = rng.nextDouble() * total;
+                int expected = linearFind(priorities, prefix);
+                int actual = tree.find(prefix);
+                // rounding may land on a neighbour right at a boundary, never on a zero priority leaf
+                if (actual != expected) {
+                    assertEquals(prefix, cumulativeBefore(priorities, Math.max(actual, expected)), TOL);
+                }
+                assertTrue("zero priority leaf " + actual, priorities[actual] > 0.0);
+            }
+        }
+    }
+
+    private static double cumulativeBefore(double[] priorities, int idx) {
+        double cumulative = 0.0;
+        for (int i = 0; i < idx; i++) {
+            cumulative += priorities[i];
+        }
+        return cumulative;
+    }
+}
@@ -0,0 +1,60 @@
+package test.pas.pokemon;
+
+// SYSTEM IMPORTS
+import org.junit.Test;
+import static org.junit.Assert.assertEquals;
+
+// JAVA PROJECT IMPORTS
+import edu.bu.pas.pokemon.core.enums.Type;
+import src.pas.pokemon.utils.TypeChart;
+
+// TypeChart against Type.getEffectivenessModifier for every attacking type and every (possibly single
+// typed) defender, plus the null conventions. The tables are filled from the same calls, so the modifiers
+// must be exactly equal.
+//   java -cp "./lib/*:test-classes" org.junit.runner.JUnitCore test.pas.pokemon.TypeChartTest
+public class TypeChartTest {
+
+    @Test
+    public void singleMatchesTheFramework() {
+        for (Type atk : Type.values()) {
+            for (Type def : Type.values()) {
+                assertEquals(atk + " vs " + def, Type.getEffectivenessModifier(atk, def),
+                        TypeChart.single(atk, def), 0.0);
+            }
+        }
+    }
+
+    @Test
+    public void modifierMatchesTheFrameworkForEveryTypeTriple() {
+        for (Type atk : Type.values()) {
+            for (Type def1 : Type.values()) {
+                for (Type def2 : Type.values()) {
+                    double expected = Type.getEffectivenessModifier(atk, def1)
+                            * Type.getEffectivenessModifier(atk, def2);
+                    assertEquals(atk + " vs " + def1 + "/" + def2, expected, TypeChart.modifier(atk, def1, def2),
+                            0.0);
+                }
+            }
+        }
+    }
+
+    @Test
+    public void missingDefendingTypesAreNeutral() {
+        for (Type atk : Type.values()) {
+            for (Type def : Type.values()) {
+                double expected = Type.getEffectivenessModifier(atk, def);
+                assertEquals(expected, TypeChart.modifier(atk, def, null), 0.0);
+                assertEquals(expected, TypeChart.modifier(atk, null, def), 0.0);
+            }
+            assertEquals(1.0, TypeChart.modifier(atk, null, null), 0.0);
+        }
+    }
+
+    @Test
+    public void missingAttackingTypeIsNeutral() {
+        for (Type def : Type.values()) {
+            assertEquals(1.0, TypeChart.modifier(null, def, null), 0.0);
+            assertEquals(1.0, TypeChart.modifier(null, def, def), 0.0);
+        }
+    }
+}